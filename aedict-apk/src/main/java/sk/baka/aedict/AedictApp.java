@@ -18,18 +18,27 @@
 
 package sk.baka.aedict;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Formatter;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import sk.baka.aedict.dict.DictEntry;
 import sk.baka.aedict.dict.DictTypeEnum;
 import sk.baka.aedict.dict.Dictionary;
 import sk.baka.aedict.dict.DictionaryVersions;
 import sk.baka.aedict.dict.DownloaderService;
+import sk.baka.aedict.dict.SearcherRegistry;
 import sk.baka.aedict.kanji.RomanizationEnum;
 import sk.baka.aedict.util.BackgroundService;
+import sk.baka.aedict.util.DictEntryStore;
 import sk.baka.aedict.util.Iso6393Codes;
 import sk.baka.autils.DialogUtils;
 import sk.baka.autils.ListBuilder;
@@ -65,7 +74,7 @@ public class AedictApp extends Application implements OnSharedPreferenceChangeLi
 		PreferenceManager.setDefaultValues(this, R.xml.preferences, true);
 		PreferenceManager.getDefaultSharedPreferences(this).registerOnSharedPreferenceChangeListener(this);
 		apply(new Config(this));
-		ds = new DownloaderService();
+		ds = new DownloaderService(getConfig().getMaxConcurrentDownloads());
 		bs = new BackgroundService();
 	}
 
@@ -73,9 +82,16 @@ public class AedictApp extends Application implements OnSharedPreferenceChangeLi
 	public void onTerminate() {
 		MiscUtils.closeQuietly(ds);
 		MiscUtils.closeQuietly(bs);
+		SearcherRegistry.closeUnused();
 		super.onTerminate();
 	}
 
+	@Override
+	public void onLowMemory() {
+		SearcherRegistry.closeUnused();
+		super.onLowMemory();
+	}
+
 	private volatile DownloaderService ds;
 	private volatile BackgroundService bs;
 
@@ -161,6 +177,7 @@ public class AedictApp extends Application implements OnSharedPreferenceChangeLi
 	 */
 	public static class Config {
 		private final SharedPreferences prefs;
+		private final Context context;
 
 		/**
 		 * Constructs new config instance.
@@ -170,6 +187,60 @@ public class AedictApp extends Application implements OnSharedPreferenceChangeLi
 		 */
 		public Config(final Context context) {
 			this.prefs = PreferenceManager.getDefaultSharedPreferences(context);
+			this.context = context;
+		}
+
+		/**
+		 * Opened entry stores, maps a file name to the store. Shared by all
+		 * config instances.
+		 */
+		private static final Map<String, DictEntryStore> STORES = new HashMap<String, DictEntryStore>();
+
+		/**
+		 * Returns the entry store with given file name, located in the
+		 * application files directory. The store is migrated from the
+		 * SharedPreferences list stored by older Aedict versions if
+		 * necessary; the old value is removed afterwards.
+		 * 
+		 * @param fileName
+		 *            the store file name.
+		 * @param oldKey
+		 *            the SharedPreferences key of the
+		 *            {@link DictEntry#toExternalList(List) list} stored by
+		 *            older Aedict versions.
+		 * @param reverse
+		 *            if true the old list is stored in the reverse order.
+		 * @return the store, never null.
+		 */
+		private DictEntryStore getStore(final String fileName, final String oldKey, final boolean reverse) {
+			synchronized (STORES) {
+				DictEntryStore store = STORES.get(fileName);
+				if (store == null) {
+					store = new DictEntryStore(new File(context.getFilesDir(), fileName));
+					if (!store.exists() && prefs.contains(oldKey)) {
+						List<DictEntry> old;
+						try {
+							old = DictEntry.fromExternalList(prefs.getString(oldKey, ""));
+						} catch (Exception ex) {
+							// this may happen: earlier aedict builds stored the
+							// items in a different format
+							Log.e(AedictApp.class.getSimpleName(), "Failed to parse " + oldKey, ex);
+							old = new ArrayList<DictEntry>();
+						}
+						if (reverse) {
+							Collections.reverse(old);
+						}
+						try {
+							store.set(old);
+						} catch (IOException ex) {
+							throw new IllegalStateException("Failed to migrate " + oldKey, ex);
+						}
+						commit(prefs.edit().remove(oldKey));
+					}
+					STORES.put(fileName, store);
+				}
+				return store;
+			}
 		}
 
 		/**
@@ -225,9 +296,15 @@ public class AedictApp extends Application implements OnSharedPreferenceChangeLi
 
 		/**
 		 * The preference key of the "notepad items" configuration item.
+		 * Used by older Aedict versions, the items are migrated to
+		 * {@link DictEntryStore}s.
 		 */
 		public static final String KEY_NOTEPAD_ITEMS = "notepadItems2";
 
+		private DictEntryStore getNotepadStore(final int category) {
+			return getStore("notepad" + category + ".bin", KEY_NOTEPAD_ITEMS + (category == 0 ? "" : "" + category), false);
+		}
+
 		/**
 		 * Persisted notepad DictEntries.
 		 * 
@@ -235,13 +312,10 @@ public class AedictApp extends Application implements OnSharedPreferenceChangeLi
 		 *            the category, 0 is the default one.
 		 * @return the notepad items, never null.
 		 */
-		public synchronized List<DictEntry> getNotepadItems(final int category) {
+		public List<DictEntry> getNotepadItems(final int category) {
 			try {
-				return DictEntry.fromExternalList(prefs.getString(KEY_NOTEPAD_ITEMS + (category == 0 ? "" : "" + category), ""));
-			} catch (Exception ex) {
-				// this may happen: earlier aedict builds stored the notepad
-				// items
-				// in a different format
+				return getNotepadStore(category).get();
+			} catch (IOException ex) {
 				Log.e(AedictApp.class.getSimpleName(), "Notepad model parsing failed", ex);
 				return new ArrayList<DictEntry>();
 			}
@@ -255,8 +329,29 @@ public class AedictApp extends Application implements OnSharedPreferenceChangeLi
 		 * @param notepadItems
 		 *            the new notepad items, never null.
 		 */
-		public synchronized void setNotepadItems(final int category, final List<? extends DictEntry> notepadItems) {
-			commit(prefs.edit().putString(KEY_NOTEPAD_ITEMS + (category == 0 ? "" : "" + category), DictEntry.toExternalList(notepadItems)));
+		public void setNotepadItems(final int category, final List<? extends DictEntry> notepadItems) {
+			try {
+				getNotepadStore(category).set(notepadItems);
+			} catch (IOException ex) {
+				throw new IllegalStateException("Failed to store the notepad", ex);
+			}
+		}
+
+		/**
+		 * Appends an entry to the notepad, without rewriting the whole
+		 * category.
+		 * 
+		 * @param category
+		 *            the category, 0 is the default one.
+		 * @param entry
+		 *            the entry to add, not null.
+		 */
+		public void addNotepadItem(final int category, final DictEntry entry) {
+			try {
+				getNotepadStore(category).add(entry);
+			} catch (IOException ex) {
+				throw new IllegalStateException("Failed to store the notepad", ex);
+			}
 		}
 
 		public static final String KEY_NOTEPAD_CATEGORIES = "notepadCategories";
@@ -291,27 +386,101 @@ public class AedictApp extends Application implements OnSharedPreferenceChangeLi
 		}
 
 		/**
-		 * The preference key of the "notepad items" configuration item.
+		 * The preference key of the "recently viewed" configuration item.
+		 * Used by older Aedict versions, the items are migrated to a
+		 * {@link DictEntryStore}.
 		 */
 		public static final String KEY_RECENTLY_VIEWED_ITEMS = "recentlyViewed";
+		/**
+		 * Maximum number of recently viewed entries.
+		 */
+		public static final int MAX_RECENTLY_VIEWED = 16;
+
+		/**
+		 * The entries are stored from the oldest one, thus a viewed entry
+		 * is appended.
+		 */
+		private DictEntryStore getRecentlyViewedStore() {
+			return getStore("recentlyViewed.bin", KEY_RECENTLY_VIEWED_ITEMS, true);
+		}
 
 		/**
 		 * Recently viewed DictEntries.
 		 * 
-		 * @return the notepad items, never null.
+		 * @return the recently viewed items, the most recent one first. Never null.
 		 */
-		public synchronized List<DictEntry> getRecentlyViewed() {
-			return DictEntry.fromExternalList(prefs.getString(KEY_RECENTLY_VIEWED_ITEMS, ""));
+		public List<DictEntry> getRecentlyViewed() {
+			try {
+				final List<DictEntry> result = getRecentlyViewedStore().get();
+				Collections.reverse(result);
+				return result;
+			} catch (IOException ex) {
+				Log.e(AedictApp.class.getSimpleName(), "Recently viewed model parsing failed", ex);
+				return new ArrayList<DictEntry>();
+			}
 		}
 
 		/**
 		 * Recently viewed DictEntries.
 		 * 
 		 * @param notepadItems
-		 *            the new notepad items, never null.
+		 *            the new recently viewed items, the most recent one
+		 *            first. Never null.
+		 */
+		public void setRecentlyViewed(final List<? extends DictEntry> notepadItems) {
+			final List<DictEntry> items = new ArrayList<DictEntry>(notepadItems);
+			Collections.reverse(items);
+			try {
+				getRecentlyViewedStore().set(items);
+			} catch (IOException ex) {
+				throw new IllegalStateException("Failed to store recently viewed entries", ex);
+			}
+		}
+
+		/**
+		 * Adds given entry as the most recently viewed one. The entry is
+		 * moved if already present; the oldest entries are dropped so that
+		 * at most {@link #MAX_RECENTLY_VIEWED} entries are kept.
+		 * 
+		 * @param entry
+		 *            the entry, not null.
 		 */
-		public synchronized void setRecentlyViewed(final List<? extends DictEntry> notepadItems) {
-			commit(prefs.edit().putString(KEY_RECENTLY_VIEWED_ITEMS, DictEntry.toExternalList(notepadItems)));
+		public void addRecentlyViewed(final DictEntry entry) {
+			final DictEntryStore store = getRecentlyViewedStore();
+			try {
+				synchronized (store) {
+					final List<DictEntry> entries = store.get();
+					while (entries.size() >= MAX_RECENTLY_VIEWED) {
+						store.remove(0);
+						entries.remove(0);
+					}
+					final int index = entries.lastIndexOf(entry);
+					if (index >= 0) {
+						store.remove(index);
+					}
+					store.add(entry);
+				}
+			} catch (IOException ex) {
+				throw new IllegalStateException("Failed to store recently viewed entries", ex);
+			}
+		}
+
+		/**
+		 * Removes a recently viewed entry.
+		 * 
+		 * @param index
+		 *            the index of the entry in the
+		 *            {@link #getRecentlyViewed()} list.
+		 */
+		public void removeRecentlyViewed(final int index) {
+			final DictEntryStore store = getRecentlyViewedStore();
+			try {
+				synchronized (store) {
+					store.remove(store.size() - 1 - index);
+				}
+			} catch (IOException ex) {
+				throw new IllegalStateException("Failed to store recently viewed entries", ex);
+			}
 		}
 
 		private void commit(final Editor ed) {
@@ -381,6 +550,21 @@ public class AedictApp extends Application implements OnSharedPreferenceChangeLi
 			return prefs.getBoolean(KEY_SORT, true);
 		}
 
+		/**
+		 * The maximum number of dictionaries downloaded at the same time.
+		 * Defaults to {@link DownloaderService#DEFAULT_MAX_CONCURRENT_DOWNLOADS}.
+		 */
+		public static final String KEY_MAX_CONCURRENT_DOWNLOADS = "maxConcurrentDownloads";
+
+		/**
+		 * The maximum number of dictionaries downloaded at the same time.
+		 * 
+		 * @return the maximum number of concurrent downloads, at least 1.
+		 */
+		public synchronized int getMaxConcurrentDownloads() {
+			return Math.max(1, prefs.getInt(KEY_MAX_CONCURRENT_DOWNLOADS, DownloaderService.DEFAULT_MAX_CONCURRENT_DOWNLOADS));
+		}
+
 		/**
 		 * Returns the dictionary location on the SD card of currently selected EDICT
 		 * dictionary.
@@ -388,8 +572,44 @@ public class AedictApp extends Application implements OnSharedPreferenceChangeLi
 		 * @return absolute OS-specific location of the dictionary.
 		 */
 		public String getDictionaryLoc() {
+			return getDictionary().getDictionaryLocation().getAbsolutePath();
+		}
+
+		/**
+		 * Returns currently selected EDICT dictionary. Falls back to the
+		 * default EDICT dictionary if the selected one is not installed.
+		 * 
+		 * @return the dictionary, never null.
+		 */
+		public Dictionary getDictionary() {
 			final Dictionary d = new Dictionary(DictTypeEnum.Edict, getDictionaryName());
-			return d.exists() ? d.getDictionaryLocation().getAbsolutePath() : DictTypeEnum.Edict.getDefaultDictionaryPath();
+			return d.exists() ? d : new Dictionary(DictTypeEnum.Edict, null);
+		}
+
+		/**
+		 * True if all installed EDICT dictionaries should be searched at once,
+		 * false if only the {@link #getDictionary() selected one} is searched
+		 * (the default).
+		 * 
+		 * @return search all dictionaries
+		 */
+		public synchronized boolean isSearchAllDictionaries() {
+			return prefs.getBoolean(ConfigActivity.KEY_SEARCH_ALL_DICTIONARIES, false);
+		}
+
+		/**
+		 * Returns EDICT dictionaries to search. The selected dictionary is
+		 * always included.
+		 * 
+		 * @return the dictionaries, never null, never empty.
+		 */
+		public Set<Dictionary> getSearchDictionaries() {
+			final Set<Dictionary> result = new LinkedHashSet<Dictionary>();
+			result.add(getDictionary());
+			if (isSearchAllDictionaries()) {
+				result.addAll(Dictionary.listEdictInstalled());
+			}
+			return result;
 		}
 		
 		private static final String KEY_CURRENT_DICT_VERSIONS = "currentDictVersions";
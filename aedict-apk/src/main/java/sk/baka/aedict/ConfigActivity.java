@@ -76,6 +76,11 @@ public class ConfigActivity extends PreferenceActivity {
 	 * Which EDICT dictionary to use for search.
 	 */
 	public static final String KEY_DICTIONARY_NAME = "dictionaryName";
+	/**
+	 * Boolean. If true then all installed EDICT dictionaries are searched at
+	 * once.
+	 */
+	public static final String KEY_SEARCH_ALL_DICTIONARIES = "searchAllDictionaries";
 	/**
 	 * Performs the SDCard dictionary cleanup.
 	 */
@@ -211,7 +216,7 @@ public class ConfigActivity extends PreferenceActivity {
 			if(updatable.isEmpty()){
 				new DialogActivity.Builder(a).showInfoDialog("No updates found", "No dictionary updates has been found.");
 			}else{
-				new DialogActivity.Builder(a).setDialogListener(new UpdateDictionaries(updatable)).showYesNoDialog(
+				new DialogActivity.Builder(a).setDialogListener(new UpdateDictionaries(updatable, true)).showYesNoDialog(
 						"The following dictionaries may be updated: " + updatable + ". Perform the update now?");
 			}
 			return null;
@@ -21,7 +21,11 @@ package sk.baka.aedict;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import sk.baka.aedict.dict.DictEntry;
 import sk.baka.aedict.dict.DictTypeEnum;
@@ -31,6 +35,8 @@ import sk.baka.aedict.dict.KanjidicEntry;
 import sk.baka.aedict.dict.LuceneSearch;
 import sk.baka.aedict.dict.MatcherEnum;
 import sk.baka.aedict.dict.SearchQuery;
+import sk.baka.aedict.dict.SearcherRegistry;
+import sk.baka.aedict.dict.WordIndex;
 import sk.baka.aedict.kanji.KanjiUtils;
 import sk.baka.aedict.kanji.Radicals;
 import sk.baka.aedict.util.DictEntryListActions;
@@ -291,8 +297,10 @@ public class KanjiAnalyzeActivity extends ListActivity {
 
 		private List<DictEntry> analyzeByWords(final String sentence) throws IOException {
 			final List<DictEntry> result = new ArrayList<DictEntry>();
-			final LuceneSearch lsEdict = new LuceneSearch(DictTypeEnum.Edict, AedictApp.getConfig().getDictionaryLoc(), AedictApp.getConfig().isSorted());
+			final Dictionary dictionary = AedictApp.getConfig().getDictionary();
+			final LuceneSearch lsEdict = SearcherRegistry.acquire(dictionary, AedictApp.getConfig().isSorted());
 			try {
+				final WordIndex wordIndex = WordIndex.open(dictionary.getDictionaryLocation());
 				final String[] words = getWords(sentence);
 				final int progressMax = getNumberOfCharacters(words);
 				int currentProgress = 0;
@@ -302,7 +310,7 @@ public class KanjiAnalyzeActivity extends ListActivity {
 					}
 					String w = words[i].trim();
 					while (w.length() > 0) {
-						final MatchedWord match = findLongestWord(w, lsEdict);
+						final MatchedWord match = findLongestWord(w, lsEdict, wordIndex);
 						result.add(match.entry);
 						w = w.substring(match.wordLength);
 						currentProgress += match.wordLength;
@@ -336,15 +344,26 @@ public class KanjiAnalyzeActivity extends ListActivity {
 		 * 
 		 * @param word
 		 *            the word to analyze. Must not contain romaji.
+		 * @param wordIndex
+		 *            if not null then the longest word is looked up in the
+		 *            word index first and only the entry itself is searched
+		 *            for in the EDICT index.
 		 * @return longest word found or an entry consisting of the first
 		 *         character if we were unable to find nothing
 		 * @throws IOException
 		 *             on i/o error
 		 */
-		private MatchedWord findLongestWord(final String word, final LuceneSearch edict) throws IOException {
+		private MatchedWord findLongestWord(final String word, final LuceneSearch edict, final WordIndex wordIndex) throws IOException {
 			String w = word;
+			if (wordIndex != null) {
+				final int length = wordIndex.longestMatch(word, 0, word.length());
+				if (length == 0) {
+					return new MatchedWord(new DictEntry(word.substring(0, 1), "", ""), 1);
+				}
+				w = word.substring(0, length);
+			}
 			final int maxLength = KanjiUtils.isKanji(word.charAt(0)) ? MAX_KANJI_WORD_LENGTH : MAX_KANA_WORD_LENGTH;
-			if (w.length() > maxLength) {
+			if (w.length() > maxLength && wordIndex == null) {
 				// optimization to avoid quadratic search complexity
 				w = w.substring(0, maxLength);
 			}
@@ -364,14 +383,25 @@ public class KanjiAnalyzeActivity extends ListActivity {
 
 		private List<DictEntry> analyzeByCharacters(final String word) throws IOException {
 			final List<DictEntry> result = new ArrayList<DictEntry>(word.length());
-			final LuceneSearch lsEdict = new LuceneSearch(DictTypeEnum.Edict, AedictApp.getConfig().getDictionaryLoc(), AedictApp.getConfig().isSorted());
+			final LuceneSearch lsEdict = SearcherRegistry.acquire(AedictApp.getConfig().getDictionary(), AedictApp.getConfig().isSorted());
 			try {
 				LuceneSearch lsKanjidic = null;
 				if (AedictApp.getDownloader().isComplete(DictTypeEnum.Kanjidic)) {
-					lsKanjidic = new LuceneSearch(DictTypeEnum.Kanjidic, null, AedictApp.getConfig().isSorted());
+					lsKanjidic = SearcherRegistry.acquire(new Dictionary(DictTypeEnum.Kanjidic, null), AedictApp.getConfig().isSorted());
 				}
 				try {
 					final String w = MiscUtils.removeWhitespaces(word);
+					// look up all kanjis at once
+					Map<Character, KanjidicEntry> kanjidic = Collections.emptyMap();
+					if (lsKanjidic != null) {
+						final Set<Character> kanjis = new HashSet<Character>();
+						for (int i = 0; i < w.length(); i++) {
+							if (KanjiUtils.isKanji(w.charAt(i))) {
+								kanjis.add(w.charAt(i));
+							}
+						}
+						kanjidic = lsKanjidic.lookupKanjis(kanjis, null, null);
+					}
 					for (int i = 0; i < w.length(); i++) {
 						publish(new Progress(null, i, w.length()));
 						if (isCancelled()) {
@@ -384,18 +414,10 @@ public class KanjiAnalyzeActivity extends ListActivity {
 						} else {
 							// it is a kanji. search for it in the
 							// dictionary.
-							final SearchQuery q = SearchQuery.searchJpEdict(String.valueOf(c), MatcherEnum.Exact);
-							List<DictEntry> matches = null;
-							DictEntry ee = null;
-							if (lsKanjidic != null) {
-								matches = lsKanjidic.search(q, 1);
-								DictEntry.removeInvalid(matches);
-							}
-							if (matches != null && !matches.isEmpty()) {
-								ee = matches.get(0);
-							}
+							DictEntry ee = kanjidic.get(c);
 							if (ee == null) {
-								matches = lsEdict.search(q, 1);
+								final SearchQuery q = SearchQuery.searchJpEdict(String.valueOf(c), MatcherEnum.Exact);
+								final List<DictEntry> matches = lsEdict.search(q, 1);
 								DictEntry.removeInvalid(matches);
 								if (!matches.isEmpty()) {
 									ee = matches.get(0);
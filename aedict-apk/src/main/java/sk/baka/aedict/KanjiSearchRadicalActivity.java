@@ -21,7 +21,6 @@ package sk.baka.aedict;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -30,7 +29,7 @@ import sk.baka.aedict.dict.DictTypeEnum;
 import sk.baka.aedict.dict.Dictionary;
 import sk.baka.aedict.dict.KanjidicEntry;
 import sk.baka.aedict.dict.LuceneSearch;
-import sk.baka.aedict.dict.SearchQuery;
+import sk.baka.aedict.dict.SearcherRegistry;
 import sk.baka.aedict.kanji.Radicals;
 import sk.baka.autils.AbstractTask;
 import sk.baka.autils.AndroidUtils;
@@ -170,9 +169,14 @@ public class KanjiSearchRadicalActivity extends AbstractActivity {
 		public PushButtonListener(char radical) {
 			super();
 			this.radical = radical;
+			this.radicalIndex = Radicals.RADICAL_ORDERING.indexOf(radical);
 		}
 
 		public final char radical;
+		/**
+		 * Index of the radical in the {@link Radicals#RADICAL_ORDERING}.
+		 */
+		public final int radicalIndex;
 		private boolean pushed = false;
 
 		public boolean isPushed() {
@@ -187,11 +191,27 @@ public class KanjiSearchRadicalActivity extends AbstractActivity {
 	}
 
 	/**
-	 * Updates the activity caption to reflect selected radicals.
+	 * Updates the activity caption to reflect selected radicals. Disables
+	 * radicals which would yield no kanjis when selected.
 	 */
 	private void recomputeRadical() {
 		final String selectedRadicals = getRadicals();
 		this.setTitle(getString(R.string.kanjiRadicalLookup) + ": " + selectedRadicals);
+		final int[] candidates = Radicals.getCandidateCounts(selectedRadicals.toCharArray());
+		final TableLayout v = (TableLayout) findViewById(R.id.kanjisearchRadicals);
+		for (int i = 0; i < v.getChildCount(); i++) {
+			final TableRow tr = (TableRow) v.getChildAt(i);
+			for (int j = 0; j < tr.getChildCount(); j++) {
+				final View vv = tr.getChildAt(j);
+				final PushButtonListener pbl = (PushButtonListener) vv.getTag();
+				if (pbl == null || pbl.isPushed()) {
+					continue;
+				}
+				final boolean enabled = candidates[pbl.radicalIndex] > 0;
+				vv.setEnabled(enabled);
+				vv.setBackgroundColor(enabled ? 0x00000000 : 0xFF444444);
+			}
+		}
 	}
 
 	/**
@@ -242,41 +262,18 @@ public class KanjiSearchRadicalActivity extends AbstractActivity {
 	}
 
 	private class KanjiMatchTask extends AbstractTask<Object, List<DictEntry>> {
-		private final int REPORT_EACH_XTH_CHAR = 5;
 
 		@Override
 		public List<DictEntry> impl(Object... params) throws Exception {
 			publish(new Progress(AedictApp.getStr(R.string.searching), 0, 100));
-			int charsReportCountdown = 0;
-			int totalCharsProcessed = 0;
 			final Set<Character> matches = Radicals.getKanjisWithRadicals(((String) params[0]).toCharArray());
-			final List<DictEntry> entries = new ArrayList<DictEntry>();
 			// filter the matches based on stroke count
-			final LuceneSearch ls = new LuceneSearch(DictTypeEnum.Kanjidic, null, AedictApp.getConfig().isSorted());
+			final LuceneSearch ls = SearcherRegistry.acquire(new Dictionary(DictTypeEnum.Kanjidic, null), AedictApp.getConfig().isSorted());
 			try {
-				for (final Iterator<Character> kanjis = matches.iterator(); kanjis.hasNext();) {
-					final char kanji = kanjis.next();
-					final SearchQuery sq = SearchQuery.kanjiSearch(kanji, (Integer) params[1], (Integer) params[2]);
-					final List<DictEntry> result = ls.search(sq, 1);
-					DictEntry.removeInvalid(result);
-					if (!result.isEmpty()) {
-						// the kanji matched
-						final DictEntry entry = result.get(0);
-						entries.add(entry);
-					}
-					totalCharsProcessed++;
-					if (++charsReportCountdown >= REPORT_EACH_XTH_CHAR) {
-						charsReportCountdown = 0;
-						publish(new Progress(null, totalCharsProcessed, matches.size()));
-					}
-					if (isCancelled()) {
-						return null;
-					}
-				}
+				return new ArrayList<DictEntry>(ls.lookupKanjis(matches, (Integer) params[1], (Integer) params[2]).values());
 			} finally {
 				MiscUtils.closeQuietly(ls);
 			}
-			return entries;
 		}
 
 		@Override
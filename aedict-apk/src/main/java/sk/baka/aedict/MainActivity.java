@@ -110,9 +110,7 @@ public class MainActivity extends ListActivity {
 
 			@Override
 			protected void onDelete(int itemIndex) {
-				final List<DictEntry> rv = AedictApp.getConfig().getRecentlyViewed();
-				rv.remove(itemIndex);
-				AedictApp.getConfig().setRecentlyViewed(rv);
+				AedictApp.getConfig().removeRecentlyViewed(itemIndex);
 				invalidateModel();
 			}
 
@@ -171,13 +169,7 @@ public class MainActivity extends ListActivity {
 	 */
 	public static void recentlyViewed(final DictEntry entry) {
 		Check.checkNotNull("entry", entry);
-		final List<DictEntry> entries = AedictApp.getConfig().getRecentlyViewed();
-		while (entries.size() > 15) {
-			entries.remove(entries.size() - 1);
-		}
-		entries.remove(entry);
-		entries.add(0, entry);
-		AedictApp.getConfig().setRecentlyViewed(entries);
+		AedictApp.getConfig().addRecentlyViewed(entry);
 	}
 
 	/**
@@ -252,8 +252,7 @@ public class NotepadActivity extends Activity implements TabContentFactory {
 			final DictEntry e = (DictEntry) intent.getSerializableExtra(INTENTKEY_ADD_ENTRY);
 			final int category = intent.getIntExtra(INTENTKEY_CATEGORY, 0);
 			getModel(category).add(e);
-			final Config cfg = AedictApp.getConfig();
-			cfg.setNotepadItems(category, getModel(category));
+			AedictApp.getConfig().addNotepadItem(category, e);
 		}
 	}
 
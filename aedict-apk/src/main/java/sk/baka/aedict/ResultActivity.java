@@ -18,19 +18,28 @@
 
 package sk.baka.aedict;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import sk.baka.aedict.AedictApp.Config;
 import sk.baka.aedict.dict.DictEntry;
 import sk.baka.aedict.dict.DictTypeEnum;
+import sk.baka.aedict.dict.Dictionary;
 import sk.baka.aedict.dict.Edict;
 import sk.baka.aedict.dict.EdictEntry;
+import sk.baka.aedict.dict.FederatedSearch;
 import sk.baka.aedict.dict.LuceneSearch;
 import sk.baka.aedict.dict.MatcherEnum;
+import sk.baka.aedict.dict.SearchCursor;
 import sk.baka.aedict.dict.SearchQuery;
+import sk.baka.aedict.dict.SearcherRegistry;
 import sk.baka.aedict.dict.TanakaDictEntry;
 import sk.baka.aedict.kanji.KanjiUtils;
 import sk.baka.aedict.kanji.RomanizationEnum;
@@ -52,6 +61,7 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.ArrayAdapter;
 import android.widget.ListView;
 import android.widget.TextView;
@@ -76,6 +86,7 @@ public class ResultActivity extends ListActivity {
 	static final String INTENTKEY_SEARCH_QUERY = "QUERY";
 	static final String INTENTKEY_DEINFLECTIONS = "DEINFLECTIONS";
 	static final String INTENTKEY_RESULT_LIST = "resultList";
+	static final String INTENTKEY_CONTINUATION = "continuation";
 
 	/**
 	 * Use this method sparingly, it has many caveats.
@@ -186,7 +197,8 @@ public class ResultActivity extends ListActivity {
 			// nothing to search for
 			model = Collections.singletonList(DictEntry.newErrorMsg(getString(R.string.nothing_to_search_for)));
 		} else if (getIntent().getSerializableExtra(INTENTKEY_RESULT_LIST) != null) {
-			model = (List<DictEntry>) getIntent().getSerializableExtra(INTENTKEY_RESULT_LIST);
+			model = new ArrayList<DictEntry>((List<DictEntry>) getIntent().getSerializableExtra(INTENTKEY_RESULT_LIST));
+			continuation = (Continuation) getIntent().getSerializableExtra(INTENTKEY_CONTINUATION);
 			updateModel(false);
 		} else {
 			model = Collections.emptyList();
@@ -194,6 +206,18 @@ public class ResultActivity extends ListActivity {
 			new SearchTask().execute(AedictApp.isInstrumentation, this, queries.toArray(new SearchQuery[0]));
 		}
 		updateTopText();
+		getListView().setOnScrollListener(new AbsListView.OnScrollListener() {
+
+			public void onScrollStateChanged(AbsListView view, int scrollState) {
+				// do nothing
+			}
+
+			public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+				if (totalItemCount > 0 && firstVisibleItem + visibleItemCount >= totalItemCount) {
+					fetchNextPage();
+				}
+			}
+		});
 		new DictEntryListActions(this, true, true, false, true) {
 			@Override
 			protected void addCustomItems(ContextMenu menu, DictEntry entry,
@@ -296,7 +320,227 @@ public class ResultActivity extends ListActivity {
 		showRomaji.onResume();
 	}
 
-	private class SearchTask extends AbstractTask<SearchQuery, List<DictEntry>> {
+	/**
+	 * Number of entries fetched at once. Further entries are fetched when the
+	 * user scrolls to the end of the list.
+	 */
+	private static final int PAGE_SIZE = 30;
+
+	/**
+	 * Denotes a position in the search results where the next page starts.
+	 */
+	private static class Continuation implements Serializable {
+		private static final long serialVersionUID = 1L;
+		/**
+		 * Index of the query to continue with.
+		 */
+		public final int queryIndex;
+		/**
+		 * Position in the results of the query.
+		 */
+		public final SearchCursor.Position position;
+
+		public Continuation(int queryIndex, SearchCursor.Position position) {
+			this.queryIndex = queryIndex;
+			this.position = position;
+		}
+	}
+
+	/**
+	 * A page of results.
+	 */
+	private static class Page {
+		public final ArrayList<DictEntry> entries = new ArrayList<DictEntry>();
+		/**
+		 * Where the next page starts, null if there are no more results.
+		 */
+		public Continuation next = null;
+	}
+
+	/**
+	 * Maximum number of entries fetched for a single query when the results
+	 * are {@link Config#isSorted() sorted}.
+	 */
+	private static final int SORTED_MAX_RESULTS = 100;
+
+	/**
+	 * Fetches a page of results. If {@link Config#isSorted()} is true then
+	 * paging is turned off: the page contains up to
+	 * {@link #SORTED_MAX_RESULTS} sorted entries of each query and there is
+	 * no next page. Sorting each page on its own would leave the list
+	 * unsorted after the next page is appended.
+	 * 
+	 * @param queries
+	 *            the queries to search for, all queries must have same
+	 *            dictionary type.
+	 * @param from
+	 *            start from this position. If null then the first page is
+	 *            returned.
+	 * @param progress
+	 *            receives results of particular dictionaries of a federated
+	 *            search as soon as they are available, may be null.
+	 * @return the page, never null.
+	 * @throws IOException
+	 *             on I/O error.
+	 */
+	private static Page fetchPage(final List<SearchQuery> queries, final Continuation from, final FederatedSearch.Listener progress) throws IOException {
+		final DictTypeEnum dictType = queries.get(0).dictType;
+		if (dictType == DictTypeEnum.Edict && from == null) {
+			final Set<Dictionary> dictionaries = AedictApp.getConfig().getSearchDictionaries();
+			if (dictionaries.size() > 1) {
+				return fetchFederated(queries, dictionaries, progress);
+			}
+		}
+		final Page result = new Page();
+		final boolean sorted = AedictApp.getConfig().isSorted();
+		final LuceneSearch lucene = SearcherRegistry.acquire(dictType == DictTypeEnum.Edict ? AedictApp.getConfig().getDictionary() : new Dictionary(dictType, null), false);
+		try {
+			SearchCursor.Position position = from == null ? null : from.position;
+			for (int queryIndex = from == null ? 0 : from.queryIndex; queryIndex < queries.size(); queryIndex++) {
+				final SearchCursor cursor = lucene.openCursor(queries.get(queryIndex), position);
+				position = null;
+				if (sorted) {
+					final List<DictEntry> entries = cursor.next(SORTED_MAX_RESULTS);
+					Collections.sort(entries);
+					result.entries.addAll(entries);
+					continue;
+				}
+				result.entries.addAll(cursor.next(PAGE_SIZE - result.entries.size()));
+				if (!cursor.isExhausted()) {
+					// the page is full
+					result.next = new Continuation(queryIndex, cursor.getPosition());
+					break;
+				}
+			}
+		} finally {
+			MiscUtils.closeQuietly(lucene);
+		}
+		return result;
+	}
+
+	/**
+	 * Maximum number of entries fetched from a single dictionary by a
+	 * federated search.
+	 */
+	private static final int FEDERATED_MAX_RESULTS = 100;
+	/**
+	 * Runs per-dictionary searches of the federated search.
+	 */
+	private static final ExecutorService FEDERATED_EXECUTOR = FederatedSearch.newExecutor();
+
+	/**
+	 * Searches multiple EDICT dictionaries at once. The federated search does
+	 * not support paging: the returned page contains all results.
+	 * 
+	 * @param queries
+	 *            the EDICT queries to search for.
+	 * @param dictionaries
+	 *            the dictionaries to search.
+	 * @param progress
+	 *            receives results of particular dictionaries as soon as they
+	 *            are available, may be null. Failures are reported in the
+	 *            returned page only.
+	 * @return the page, never null.
+	 * @throws IOException
+	 *             if all dictionaries failed.
+	 */
+	private static Page fetchFederated(final List<SearchQuery> queries, final Set<Dictionary> dictionaries, final FederatedSearch.Listener progress) throws IOException {
+		final Page result = new Page();
+		final List<DictEntry> failures = new ArrayList<DictEntry>();
+		result.entries.addAll(new FederatedSearch(dictionaries, FEDERATED_EXECUTOR, false).search(queries, FEDERATED_MAX_RESULTS, new FederatedSearch.Listener() {
+
+			public void onResults(File location, List<DictEntry> entries) {
+				if (progress != null) {
+					progress.onResults(location, entries);
+				}
+			}
+
+			public void onFailure(File location, IOException ex) {
+				failures.add(DictEntry.newErrorMsg(AedictApp.format(R.string.searchFailed, location.getName() + ": " + ex)));
+			}
+		}));
+		if (AedictApp.getConfig().isSorted()) {
+			Collections.sort(result.entries);
+		}
+		result.entries.addAll(failures);
+		return result;
+	}
+
+	/**
+	 * Results of a federated search received so far. Accessed from the UI
+	 * thread only.
+	 */
+	private final List<DictEntry> partialResults = new ArrayList<DictEntry>();
+
+	/**
+	 * Shows results of a dictionary while the federated search continues.
+	 * The whole result list is shown when the search finishes.
+	 * 
+	 * @param entries
+	 *            the entries found by a dictionary, not modified afterwards.
+	 *            May be invoked from any thread.
+	 */
+	private void showPartialResults(final List<DictEntry> entries) {
+		runOnUiThread(new Runnable() {
+
+			public void run() {
+				partialResults.addAll(entries);
+				model = new ArrayList<DictEntry>(partialResults);
+				model.add(DictEntry.newErrorMsg(getString(R.string.searching)));
+				updateModel(false);
+			}
+		});
+	}
+
+	/**
+	 * Where the next page of the results starts, null if all results are
+	 * shown.
+	 */
+	private Continuation continuation = null;
+	/**
+	 * true if the next page is being fetched.
+	 */
+	private boolean fetchingNextPage = false;
+
+	private void fetchNextPage() {
+		if (continuation == null || fetchingNextPage) {
+			return;
+		}
+		fetchingNextPage = true;
+		new NextPageTask().execute(AedictApp.isInstrumentation, this, continuation);
+	}
+
+	private class NextPageTask extends AbstractTask<Continuation, Page> {
+
+		@Override
+		protected void cleanupAfterError(final Exception ex) {
+			fetchingNextPage = false;
+			if (ex != null) {
+				continuation = null;
+				getIntent().removeExtra(INTENTKEY_CONTINUATION);
+				model.add(DictEntry.newErrorMsg(AedictApp.format(R.string.searchFailed, ex.toString())));
+				((ArrayAdapter<?>) getListAdapter()).notifyDataSetChanged();
+			}
+		}
+
+		@Override
+		public Page impl(Continuation... params) throws Exception {
+			return fetchPage(queries, params[0], null);
+		}
+
+		@Override
+		protected void onSucceeded(Page result) {
+			fetchingNextPage = false;
+			model.addAll(result.entries);
+			continuation = result.next;
+			// remember the results, so that the activity does not need to search again when restarted
+			getIntent().putExtra(INTENTKEY_RESULT_LIST, (Serializable) model);
+			getIntent().putExtra(INTENTKEY_CONTINUATION, continuation);
+			((ArrayAdapter<?>) getListAdapter()).notifyDataSetChanged();
+		}
+	}
+
+	private class SearchTask extends AbstractTask<SearchQuery, Page> {
 
 		@Override
 		protected void cleanupAfterError(final Exception ex) {
@@ -310,23 +554,26 @@ public class ResultActivity extends ListActivity {
 		}
 
 		@Override
-		public List<DictEntry> impl(SearchQuery... params) throws Exception {
-			final List<DictEntry> result = new ArrayList<DictEntry>();
-			final LuceneSearch lucene = new LuceneSearch(params[0].dictType, params[0].dictType == DictTypeEnum.Edict ? AedictApp.getConfig().getDictionaryLoc() : null, AedictApp.getConfig().isSorted());
-			try {
-				for (final SearchQuery query : params) {
-					result.addAll(lucene.search(query));
+		public Page impl(SearchQuery... params) throws Exception {
+			return fetchPage(Arrays.asList(params), null, new FederatedSearch.Listener() {
+
+				public void onResults(File location, List<DictEntry> entries) {
+					if (!entries.isEmpty()) {
+						showPartialResults(entries);
+					}
 				}
-			} finally {
-				MiscUtils.closeQuietly(lucene);
-			}
-			return result;
+
+				public void onFailure(File location, IOException ex) {
+					// reported in the resulting page
+				}
+			});
 		}
 
 		@Override
-		protected void onSucceeded(List<DictEntry> result) {
+		protected void onSucceeded(Page result) {
 			final Intent i = (Intent) ResultActivity.this.getIntent().clone();
-			i.putExtra(INTENTKEY_RESULT_LIST, (Serializable) result);
+			i.putExtra(INTENTKEY_RESULT_LIST, (Serializable) result.entries);
+			i.putExtra(INTENTKEY_CONTINUATION, result.next);
 			startActivity(i);
 			ResultActivity.this.finish();
 		}
@@ -336,7 +583,14 @@ public class ResultActivity extends ListActivity {
 	private void updateTopText() {
 		final SpanStringBuilder b=new SpanStringBuilder();
 		final Config cfg = AedictApp.getConfig();
-		final String dictName = queries.get(0).dictType == DictTypeEnum.Tanaka ? DictTypeEnum.Tanaka.name() : cfg.getDictionaryName();
+		final String dictName;
+		if (queries.get(0).dictType == DictTypeEnum.Tanaka) {
+			dictName = DictTypeEnum.Tanaka.name();
+		} else if (queries.get(0).dictType == DictTypeEnum.Edict && cfg.getSearchDictionaries().size() > 1) {
+			dictName = getString(R.string.allDictionaries);
+		} else {
+			dictName = cfg.getDictionaryName();
+		}
 		b.append(AedictApp.format(R.string.searchingInDictionary, dictName));
 		final List<Deinflection> ds=(List<Deinflection>) getIntent().getSerializableExtra(INTENTKEY_DEINFLECTIONS);
 		if(ds!=null){
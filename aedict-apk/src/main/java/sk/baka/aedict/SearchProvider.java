@@ -17,14 +17,20 @@
  */
 package sk.baka.aedict;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import sk.baka.aedict.dict.DictEntry;
-import sk.baka.aedict.dict.DictTypeEnum;
+import sk.baka.aedict.dict.Dictionary;
 import sk.baka.aedict.dict.LuceneSearch;
 import sk.baka.aedict.dict.SearchQuery;
+import sk.baka.aedict.dict.SearcherRegistry;
+import sk.baka.aedict.dict.SuggestionIndex;
 import sk.baka.aedict.kanji.RomanizationEnum;
 import sk.baka.aedict.kanji.VerbDeinflection;
 import sk.baka.autils.MiscUtils;
@@ -50,6 +56,10 @@ public class SearchProvider extends ContentProvider {
 
 	private static final String[] COLUMN_NAMES = new String[] { "_id", SearchManager.SUGGEST_COLUMN_TEXT_1, SearchManager.SUGGEST_COLUMN_TEXT_2, SearchManager.SUGGEST_COLUMN_INTENT_EXTRA_DATA };
 	private static final int SEARCH_SUGGEST = 0;
+	/**
+	 * Maximum number of suggestions offered by the suggestion index.
+	 */
+	private static final int MAX_SUGGESTIONS = 20;
 
 	private static UriMatcher uriMatcher;
 	static {
@@ -62,10 +72,87 @@ public class SearchProvider extends ContentProvider {
 		return true;
 	}
 
+	/**
+	 * The suggestion index of the current dictionary, opened lazily. Guarded
+	 * by the class lock.
+	 */
+	private static SuggestionIndex suggestionIndex;
+	/**
+	 * The suggestion index file {@link #suggestionIndex} was opened from,
+	 * together with its modification time. The index is re-opened when the
+	 * dictionary changes.
+	 */
+	private static File suggestionIndexFile;
+	private static long suggestionIndexModified;
+
+	/**
+	 * Returns the suggestion index of given dictionary.
+	 * 
+	 * @param dictionary
+	 *            the dictionary, not null.
+	 * @return the suggestion index, null if the dictionary does not have one.
+	 * @throws IOException
+	 *             on I/O error.
+	 */
+	private static synchronized SuggestionIndex getSuggestionIndex(final Dictionary dictionary) throws IOException {
+		final File file = new File(dictionary.getDictionaryLocation(), SuggestionIndex.FILE_NAME);
+		final long modified = file.lastModified();
+		if (!file.equals(suggestionIndexFile) || modified != suggestionIndexModified) {
+			suggestionIndex = modified == 0 ? null : SuggestionIndex.open(dictionary.getDictionaryLocation());
+			suggestionIndexFile = file;
+			suggestionIndexModified = modified;
+		}
+		return suggestionIndex;
+	}
+
+	/**
+	 * Strips the trailing romaji which did not convert to a kana, e.g. the
+	 * "k" of a half-typed "tok".
+	 */
+	private static String stripRomaji(final String kana) {
+		int end = kana.length();
+		while (end > 0 && kana.charAt(end - 1) < 128) {
+			end--;
+		}
+		return kana.substring(0, end);
+	}
+
+	/**
+	 * Provides suggestions for a partially typed query: common EDICT entries
+	 * whose kanji, reading or English gloss starts with the query. The query
+	 * is also tried as a romaji.
+	 * 
+	 * @param query
+	 *            the query, not null.
+	 * @return suggested entries, null if the current dictionary does not have
+	 *         a suggestion index.
+	 * @throws IOException
+	 *             on I/O error.
+	 */
+	private static List<DictEntry> suggest(final String query) throws IOException {
+		final Dictionary dictionary = AedictApp.getConfig().getDictionary();
+		final SuggestionIndex index = getSuggestionIndex(dictionary);
+		if (index == null) {
+			return null;
+		}
+		final String prefix = query.trim().toLowerCase();
+		final RomanizationEnum r = AedictApp.getConfig().getRomanization();
+		final Set<String> prefixes = new LinkedHashSet<String>();
+		prefixes.add(prefix);
+		prefixes.add(stripRomaji(r.toHiragana(prefix)));
+		prefixes.add(stripRomaji(r.toKatakana(prefix)));
+		final LuceneSearch lucene = SearcherRegistry.acquire(dictionary, false);
+		try {
+			return index.suggest(lucene, prefixes, MAX_SUGGESTIONS);
+		} finally {
+			MiscUtils.closeQuietly(lucene);
+		}
+	}
+
 	public static List<DictEntry> searchForQuery(final String query) {
 		final List<DictEntry> entries = new ArrayList<DictEntry>();
 		try {
-			final LuceneSearch lucene = new LuceneSearch(DictTypeEnum.Edict, AedictApp.getConfig().getDictionaryLoc(), AedictApp.getConfig().isSorted());
+			final LuceneSearch lucene = SearcherRegistry.acquire(AedictApp.getConfig().getDictionary(), AedictApp.getConfig().isSorted());
 			try {
 				entries.addAll(lucene.search(VerbDeinflection.searchJpDeinflected(query, AedictApp.getConfig().getRomanization()).query));
 				entries.addAll(lucene.search(SearchQuery.searchEnEdict(query, true)));
@@ -87,7 +174,16 @@ public class SearchProvider extends ContentProvider {
 		final RomanizationEnum romanize = AedictApp.getConfig().isUseRomaji() ? AedictApp.getConfig().getRomanization() : null;
 		final String searchString = uri.getLastPathSegment();
 		final MatrixCursor cursor = new MatrixCursor(COLUMN_NAMES);
-		final List<DictEntry> entries = searchForQuery(searchString);
+		List<DictEntry> entries = null;
+		try {
+			entries = suggest(searchString);
+		} catch (Exception ex) {
+			Log.e(SearchProvider.class.getSimpleName(), ex.getMessage(), ex);
+		}
+		if (entries == null) {
+			// no suggestion index (an older dictionary)
+			entries = searchForQuery(searchString);
+		}
 		int i = 0;
 		for (final DictEntry entry : entries) {
 			Object[] rowObject = new Object[] { i++, entry.formatJapanese(romanize), entry.english, entry.toExternal() };
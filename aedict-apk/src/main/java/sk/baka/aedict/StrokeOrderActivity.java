@@ -76,7 +76,7 @@ public class StrokeOrderActivity extends ListActivity {
 				model.add(c);
 			}
 			try {
-				sodLoader = new SodLoader();
+				sodLoader = SodLoader.getInstance();
 			} catch (IOException e) {
 				throw new RuntimeException(e);
 			}
@@ -21,6 +21,7 @@ package sk.baka.aedict.dict;
 import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -28,8 +29,9 @@ import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -37,6 +39,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -46,6 +49,7 @@ import sk.baka.aedict.DownloadActivity;
 import sk.baka.aedict.R;
 import sk.baka.aedict.util.DialogActivity;
 import sk.baka.aedict.util.IOExceptionWithCause;
+import sk.baka.aedict.util.ResumableDownload;
 import sk.baka.aedict.util.SodLoader;
 import sk.baka.autils.MiscUtils;
 import android.app.Activity;
@@ -54,12 +58,41 @@ import android.os.StatFs;
 import android.util.Log;
 
 /**
- * Downloads an EDICT/KANJIDIC dictionary.
+ * Downloads an EDICT/KANJIDIC dictionary. The archives are downloaded by a
+ * {@link ResumableDownload} next to the target directory, thus a failed or
+ * canceled download continues where it stopped. Up to given number of queued
+ * dictionaries are downloaded concurrently.
  * 
  * @author Martin Vysny
  */
 public class DownloaderService implements Closeable {
-	private final ExecutorService downloader = Executors.newSingleThreadExecutor();
+	/**
+	 * The default maximum number of concurrent downloads.
+	 */
+	public static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 2;
+	private final ExecutorService downloader;
+
+	/**
+	 * Creates the service with the
+	 * {@link #DEFAULT_MAX_CONCURRENT_DOWNLOADS default} concurrency limit.
+	 */
+	public DownloaderService() {
+		this(DEFAULT_MAX_CONCURRENT_DOWNLOADS);
+	}
+
+	/**
+	 * Creates the service.
+	 * 
+	 * @param maxConcurrentDownloads
+	 *            the maximum number of dictionaries downloaded at the same
+	 *            time, at least 1. Further downloads are queued.
+	 */
+	public DownloaderService(final int maxConcurrentDownloads) {
+		if (maxConcurrentDownloads < 1) {
+			throw new IllegalArgumentException("Parameter maxConcurrentDownloads: invalid value " + maxConcurrentDownloads + ": must be at least 1");
+		}
+		downloader = Executors.newFixedThreadPool(maxConcurrentDownloads);
+	}
 
 	public void close() throws IOException {
 		downloader.shutdownNow();
@@ -100,16 +133,32 @@ public class DownloaderService implements Closeable {
 		 * message is stored in {@link #msg}.
 		 */
 		public final boolean isError;
+
+		/**
+		 * Combines states of two concurrent downloads.
+		 * 
+		 * @param other
+		 *            the other state, not null.
+		 * @return the combined state, an error only if both states are
+		 *         errors.
+		 */
+		State combine(final State other) {
+			return new State(msg + "\n" + other.msg, null, downloaded + other.downloaded, total + other.total, isError && other.isError);
+		}
 	}
 
 	/**
 	 * Returns current download state or null if no download is currently
-	 * active.
+	 * active. States of concurrent downloads are combined.
 	 * 
 	 * @return a state of a download or null.
 	 */
 	public State getState() {
-		return state;
+		State result = null;
+		for (final State s : states.values()) {
+			result = result == null ? s : result.combine(s);
+		}
+		return result;
 	}
 
 	/**
@@ -134,7 +183,7 @@ public class DownloaderService implements Closeable {
 		final Set<Dictionary> needsUpdate = AedictApp.getConfig().getCurrentDictVersions().getOlderThan(AedictApp.MIN_REQUIRED);
 		if (!needsUpdate.isEmpty()) {
 			Log.i("Aedict-DictionaryVersionChecker", "Comparing current versions "+AedictApp.getConfig().getCurrentDictVersions().versions+" and "+AedictApp.MIN_REQUIRED.versions);
-			new DialogActivity.Builder(activity).setDialogListener(new UpdateDictionaries(needsUpdate)).showYesNoDialog(
+			new DialogActivity.Builder(activity).setDialogListener(new UpdateDictionaries(needsUpdate, false)).showYesNoDialog(
 					"The following dictionaries are no longer compatible with this version of Aedict and needs to be updated: " + needsUpdate + ". Perform the update now?");
 		}
 		return needsUpdate.isEmpty();
@@ -143,18 +192,38 @@ public class DownloaderService implements Closeable {
 	public static class UpdateDictionaries implements DialogActivity.IDialogListener {
 		private static final long serialVersionUID = 1L;
 		public final Set<Dictionary> dictionariesToUpdate;
-		public UpdateDictionaries(Set<Dictionary> dictionariesToUpdate) {
+		/**
+		 * If true then EDICT dictionaries are updated in place by a
+		 * {@link DeltaDownloader} if possible. Must be false if the installed
+		 * index format is no longer compatible: a delta rewrites only the
+		 * changed entries.
+		 */
+		public final boolean allowDeltas;
+		/**
+		 * Creates the listener.
+		 * 
+		 * @param dictionariesToUpdate
+		 *            the dictionaries to update.
+		 * @param allowDeltas
+		 *            if true then EDICT dictionaries are updated by a delta
+		 *            if possible.
+		 */
+		public UpdateDictionaries(Set<Dictionary> dictionariesToUpdate, boolean allowDeltas) {
 			super();
 			this.dictionariesToUpdate = dictionariesToUpdate;
+			this.allowDeltas = allowDeltas;
 		}
 		public void onPositiveClick(DialogActivity activity) {
+			final DictionaryVersions current = AedictApp.getConfig().getCurrentDictVersions();
 			for(final Dictionary dict: dictionariesToUpdate) {
-				try {
-					dict.delete();
-				} catch (IOException e) {
-					throw new RuntimeException(e);
+				final String version = current.versions.get(dict);
+				if (allowDeltas && dict.dte == DictTypeEnum.Edict && version != null && dict.getDictionaryLocation().exists()) {
+					// try to update the index in place first
+					AedictApp.getDownloader().download(new DeltaDownloader(dict, version));
+					continue;
 				}
-				AedictApp.getDownloader().download(new DictDownloader(dict, dict.getDownloadSite(), dict.getDictionaryLocation().getAbsolutePath(), dict.getName(), dict.dte.luceneFileSize()));
+				// the old dictionary stays searchable until the new one is installed
+				AedictApp.getDownloader().download(DictDownloader.update(dict));
 			}
 			activity.startActivity(new Intent(activity, DownloadActivity.class));
 		}
@@ -223,10 +292,13 @@ public class DownloaderService implements Closeable {
 			throw new IllegalArgumentException("Not absolute: " + download.targetDir);
 		}
 		queueDictNames.put(download.dictName, new Object());
-		currentDownload = downloader.submit(download);
+		downloads.put(download.dictName, downloader.submit(download));
 	}
 
-	private volatile Future<?> currentDownload = null;
+	/**
+	 * Maps dictionary name to its queued or active download.
+	 */
+	private final ConcurrentMap<String, Future<?>> downloads = new ConcurrentHashMap<String, Future<?>>();
 
 	/**
 	 * Downloads a dictionary, no questions asked. If the dictionary is already
@@ -243,8 +315,12 @@ public class DownloaderService implements Closeable {
 		download(new SodDownloader());
 	}
 
-	private volatile boolean isDownloading = false;
-	private volatile State state = null;
+	private final AtomicInteger activeDownloads = new AtomicInteger();
+	/**
+	 * Maps dictionary name to the state of its download. Contains active
+	 * downloads and failed downloads.
+	 */
+	private final ConcurrentMap<String, State> states = new ConcurrentHashMap<String, State>();
 	private final ConcurrentMap<String, Object> queueDictNames = new ConcurrentHashMap<String, Object>();
 
 	/**
@@ -253,7 +329,7 @@ public class DownloaderService implements Closeable {
 	 * @return true if the service is downloading a dictionary, false otherwise.
 	 */
 	public boolean isDownloading() {
-		return isDownloading;
+		return activeDownloads.get() > 0;
 	}
 
 	public Set<String> getDownloadQueue() {
@@ -262,6 +338,10 @@ public class DownloaderService implements Closeable {
 
 	abstract static class AbstractDownloader implements Runnable, Serializable {
 		private static final long serialVersionUID = 1L;
+		/**
+		 * The directory where partially downloaded archives are stored.
+		 */
+		static final File DOWNLOAD_DIR = new File(DictTypeEnum.BASE_DIR, ".downloads");
 		protected final URL source;
 		protected final String targetDir;
 		protected final String dictName;
@@ -274,32 +354,72 @@ public class DownloaderService implements Closeable {
 			this.expectedSize = expectedSize;
 		}
 
-		private DownloaderService s() {
+		final DownloaderService s() {
 			return AedictApp.getDownloader();
 		}
-		
+
+		/**
+		 * Publishes the state of this download.
+		 * 
+		 * @param state
+		 *            the state, null if the download is no longer active.
+		 */
+		protected final void setState(final State state) {
+			if (state == null) {
+				s().states.remove(dictName);
+			} else {
+				s().states.put(dictName, state);
+			}
+		}
+
 		public void run() {
 			s().queueDictNames.remove(dictName);
-			s().state = null;
-			if (s().isComplete(targetDir)) {
+			// a new download clears errors of previous downloads
+			for (final Iterator<Map.Entry<String, State>> i = s().states.entrySet().iterator(); i.hasNext();) {
+				if (i.next().getValue().isError) {
+					i.remove();
+				}
+			}
+			if (isUpToDate()) {
 				return;
 			}
 			try {
-				s().isDownloading = true;
+				s().activeDownloads.incrementAndGet();
 				try {
 					download();
 				} finally {
-					s().state = null;
-					s().isDownloading = false;
+					setState(null);
+					s().activeDownloads.decrementAndGet();
 				}
 			} catch (Throwable t) {
 				Log.e(DownloaderService.class.getSimpleName(), "Error downloading a dictionary", t);
-				s().state = new State(t.getClass().getName() + ": " + t.getMessage(), null, 0, 1, true);
-				deleteDirQuietly(new File(targetDir));
+				onFailure(t);
 			}
 		}
 
-		private void deleteDirQuietly(final File dir) {
+		/**
+		 * Checks if the download is needed.
+		 * 
+		 * @return true if the target directory already contains the files,
+		 *         false if the download is needed.
+		 */
+		protected boolean isUpToDate() {
+			return s().isComplete(targetDir);
+		}
+
+		/**
+		 * Invoked when the download fails. By default, the error is reported
+		 * and the partially downloaded files are deleted.
+		 * 
+		 * @param t
+		 *            the failure
+		 */
+		protected void onFailure(final Throwable t) {
+			setState(new State(t.getClass().getName() + ": " + t.getMessage(), null, 0, 1, true));
+			deleteDirQuietly(new File(targetDir));
+		}
+
+		protected final void deleteDirQuietly(final File dir) {
 			try {
 				MiscUtils.deleteDir(dir);
 			} catch (IOException e) {
@@ -307,19 +427,41 @@ public class DownloaderService implements Closeable {
 			}
 		}
 
+		/**
+		 * Returns the file the archive is downloaded to. The file is stored
+		 * in the {@link #DOWNLOAD_DIR} rather than in the target directory,
+		 * thus it survives the deletion of the directory on failure and the
+		 * download may be resumed. The archive and its journal are not
+		 * mistaken for an installed dictionary.
+		 * 
+		 * @return the archive file.
+		 */
+		protected File getArchiveFile() {
+			return new File(DOWNLOAD_DIR, new File(targetDir).getName() + "-" + new File(source.getPath()).getName());
+		}
+
 		private void download() throws Exception {
-			final URLConnection conn = source.openConnection();
-			// this is the unpacked edict file size.
 			final File dir = new File(targetDir);
 			if (!dir.exists() && !dir.mkdirs()) {
 				throw new IOException("Failed to create directory '" + targetDir + "'. Please make sure that the sdcard is inserted in the phone, mounted and is not write-protected.");
 			}
-			final InputStream in = new BufferedInputStream(conn.getInputStream());
+			final String msg = AedictApp.format(R.string.downloading_dictionary, dictName);
+			final ResumableDownload download = new ResumableDownload(source, getArchiveFile());
+			setState(new State(msg, targetDir, (int) (download.getResumableLength() / 1024L), 100, false));
+			final File archive = download.download(new ResumableDownload.ProgressListener() {
+
+				public void onProgress(long downloaded, long total) {
+					setState(new State(msg, targetDir, (int) (downloaded / 1024L), (int) ((total < 0 ? expectedSize : total) / 1024L), false));
+				}
+			});
+			final InputStream in = new BufferedInputStream(new FileInputStream(archive));
 			try {
-				s().state = new State(AedictApp.format(R.string.downloading_dictionary, dictName), targetDir, 0, 100, false);
 				copy(in);
 			} finally {
 				MiscUtils.closeQuietly(in);
+				// the archive is no longer needed; an archive which failed to
+				// unpack must not be resumed
+				download.discard();
 			}
 		}
 
@@ -357,7 +499,7 @@ public class DownloaderService implements Closeable {
 			}
 			final int max = (int) (size / 1024L);
 			long downloaded = downloadedUntilNow;
-			s().state = new State(AedictApp.format(R.string.downloading_dictionary, dictName), targetDir, (int) (downloaded / 1024L), max, false);
+			setState(new State(AedictApp.format(R.string.downloading_dictionary, dictName), targetDir, (int) (downloaded / 1024L), max, false));
 			int reportCountdown = REPORT_EACH_XTH_BYTE;
 			final byte[] buf = new byte[BUFFER_SIZE];
 			int bufLen;
@@ -370,7 +512,7 @@ public class DownloaderService implements Closeable {
 				reportCountdown -= bufLen;
 				if (reportCountdown <= 0) {
 					final int progress = (int) (downloaded / 1024L);
-					s().state = new State(AedictApp.format(R.string.downloading_dictionary, dictName), targetDir, progress, max, false);
+					setState(new State(AedictApp.format(R.string.downloading_dictionary, dictName), targetDir, progress, max, false));
 					reportCountdown = REPORT_EACH_XTH_BYTE;
 				}
 			}
@@ -381,9 +523,23 @@ public class DownloaderService implements Closeable {
 		private static final int REPORT_EACH_XTH_BYTE = BUFFER_SIZE * 8;
 	}
 
+	/**
+	 * Downloads a zipped Lucene index. The index is unpacked to a hidden sibling
+	 * staging directory and installed by
+	 * {@link SearcherRegistry#install(File, File)} only when it is complete,
+	 * thus an installed dictionary stays searchable during an update and is
+	 * left untouched if the update fails.
+	 * 
+	 * @author Martin Vysny
+	 */
 	static class DictDownloader extends AbstractDownloader {
 		private static final long serialVersionUID = 1L;
 		private final Dictionary dictionary;
+		/**
+		 * If true then an installed dictionary is replaced.
+		 */
+		private final boolean isUpdate;
+
 		/**
 		 * Creates new dictionary downloader.
 		 * 
@@ -398,16 +554,74 @@ public class DownloaderService implements Closeable {
 		 *            the expected file size of unpacked dictionary.
 		 */
 		public DictDownloader(Dictionary dictionary, URL source, String targetDir, String dictName, long expectedSize) {
+			this(dictionary, source, targetDir, dictName, expectedSize, false);
+		}
+
+		/**
+		 * Creates new dictionary downloader.
+		 * 
+		 * @param source
+		 *            download the dictionary files from here. A zipped Lucene
+		 *            index file is expected.
+		 * @param targetDir
+		 *            unzip the files here
+		 * @param dictName
+		 *            the dictionary name.
+		 * @param expectedSize
+		 *            the expected file size of unpacked dictionary.
+		 * @param isUpdate
+		 *            if true then the dictionary is downloaded even if it is
+		 *            already installed, and the installed dictionary is
+		 *            replaced.
+		 */
+		public DictDownloader(Dictionary dictionary, URL source, String targetDir, String dictName, long expectedSize, boolean isUpdate) {
 			super(source, targetDir, dictName, expectedSize);
 			this.dictionary = dictionary;
+			this.isUpdate = isUpdate;
+		}
+
+		/**
+		 * Creates a downloader which replaces an installed dictionary.
+		 * 
+		 * @param dictionary
+		 *            the dictionary to update.
+		 * @return the downloader.
+		 */
+		static DictDownloader update(final Dictionary dictionary) {
+			return new DictDownloader(dictionary, dictionary.getDownloadSite(), dictionary.getDictionaryLocation().getAbsolutePath(), dictionary.getName(), dictionary.dte.luceneFileSize(), true);
+		}
+
+		@Override
+		protected boolean isUpToDate() {
+			return !isUpdate && super.isUpToDate();
+		}
+
+		/**
+		 * Returns the directory the index is unpacked to. The directory is a
+		 * hidden sibling of the target directory, thus it is not listed as
+		 * an installed dictionary.
+		 * 
+		 * @return the staging directory.
+		 */
+		private File getStagingDir() {
+			final File dir = new File(targetDir);
+			return new File(dir.getParentFile(), "." + dir.getName() + ".staging");
 		}
 
 		@Override
 		protected void copy(final InputStream in) throws IOException {
+			final File staging = getStagingDir();
+			if (staging.exists()) {
+				// a leftover of a failed install
+				MiscUtils.deleteDir(staging);
+			}
+			if (!staging.mkdirs()) {
+				throw new IOException("Failed to create directory '" + staging + "'. Please make sure that the sdcard is inserted in the phone, mounted and is not write-protected.");
+			}
 			final ZipInputStream zip = new ZipInputStream(in);
 			long downloaded = 0;
 			for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
-				final OutputStream out = new FileOutputStream(targetDir + "/" + entry.getName());
+				final OutputStream out = new FileOutputStream(new File(staging, entry.getName()));
 				try {
 					downloaded = copy(downloaded, entry.getSize(), zip, out);
 				} finally {
@@ -415,12 +629,86 @@ public class DownloaderService implements Closeable {
 				}
 				zip.closeEntry();
 			}
+			// searchers which are already opened keep using the old index
+			SearcherRegistry.install(staging, new File(targetDir));
 			// update the version
 			final String version = dictionary.downloadVersion();
 			final DictionaryVersions versions = AedictApp.getConfig().getCurrentDictVersions();
 			versions.versions.put(dictionary, version);
 			AedictApp.getConfig().setCurrentDictVersions(versions);
 		}
+
+		@Override
+		protected void onFailure(final Throwable t) {
+			setState(new State(t.getClass().getName() + ": " + t.getMessage(), null, 0, 1, true));
+			deleteDirQuietly(getStagingDir());
+			// keep the installed dictionary, delete just the empty directory
+			final File dir = new File(targetDir);
+			final String[] files = dir.list();
+			if (files != null && files.length == 0) {
+				dir.delete();
+			}
+		}
+	}
+
+	/**
+	 * Updates an installed EDICT index in place, by applying an
+	 * {@link EdictDelta}. If the delta is not available (e.g. the installed
+	 * version is too old) the dictionary is downloaded again and swapped in
+	 * when complete.
+	 * 
+	 * @author Martin Vysny
+	 */
+	static class DeltaDownloader extends AbstractDownloader {
+		private static final long serialVersionUID = 1L;
+		private final Dictionary dictionary;
+		private final String fromVersion;
+
+		/**
+		 * Creates new delta downloader.
+		 * 
+		 * @param dictionary
+		 *            the EDICT dictionary to update, must be installed.
+		 * @param fromVersion
+		 *            the version of the installed dictionary.
+		 */
+		public DeltaDownloader(Dictionary dictionary, String fromVersion) {
+			super(dictionary.getDeltaURL(fromVersion), dictionary.getDictionaryLocation().getAbsolutePath(), dictionary.getName(), dictionary.dte.luceneFileSize());
+			this.dictionary = dictionary;
+			this.fromVersion = fromVersion;
+		}
+
+		@Override
+		protected boolean isUpToDate() {
+			// the index is complete, it is just old
+			return false;
+		}
+
+		@Override
+		protected void copy(final InputStream in) throws IOException {
+			final EdictDelta delta = EdictDelta.read(in);
+			if (!delta.fromVersion.equals(fromVersion.trim())) {
+				throw new IOException("The delta updates version " + delta.fromVersion + " but " + fromVersion + " is installed");
+			}
+			// a stale delta must not mark the dictionary as up-to-date
+			final String version = dictionary.downloadVersion().trim();
+			if (!delta.toVersion.equals(version)) {
+				throw new IOException("The delta updates to version " + delta.toVersion + " but " + version + " is published");
+			}
+			setState(new State(AedictApp.format(R.string.downloading_dictionary, dictName), targetDir, 0, 1, false));
+			// opened searchers keep seeing the old index, the SearcherRegistry re-opens the index when the files change
+			delta.apply(new File(targetDir));
+			final DictionaryVersions versions = AedictApp.getConfig().getCurrentDictVersions();
+			versions.versions.put(dictionary, version);
+			AedictApp.getConfig().setCurrentDictVersions(versions);
+		}
+
+		@Override
+		protected void onFailure(final Throwable t) {
+			// the index is left unchanged; fall back to the full download
+			// which replaces the index when complete
+			s().download(DictDownloader.update(dictionary));
+		}
 	}
 
 	static class SodDownloader extends AbstractDownloader {
@@ -437,12 +725,20 @@ public class DownloaderService implements Closeable {
 		protected void copy(InputStream in) throws IOException {
 			// we have to ungzip the input stream
 			final InputStream gzipped = new GZIPInputStream(in);
-			final OutputStream out = new FileOutputStream(SodLoader.SDCARD_LOCATION);
+			// the installed file may be memory-mapped by the SodLoader, it
+			// must not be overwritten in place. The loader keeps the old
+			// file mapped and re-opens the new file after the rename.
+			final File tmp = new File(SodLoader.SDCARD_LOCATION.getPath() + ".tmp");
+			final OutputStream out = new FileOutputStream(tmp);
 			try {
 				copy(0L, -1, gzipped, out);
 			} finally {
 				MiscUtils.closeQuietly(out);
 			}
+			if (!tmp.renameTo(SodLoader.SDCARD_LOCATION)) {
+				tmp.delete();
+				throw new IOException("Failed to rename '" + tmp + "' to '" + SodLoader.SDCARD_LOCATION + "'");
+			}
 		}
 	}
 
@@ -477,19 +773,28 @@ public class DownloaderService implements Closeable {
 		if (f.listFiles().length == 0) {
 			return false;
 		}
-		final State s = getState();
-		if (s != null && indexDir.equals(s.downloadPath) && !s.isError) {
-			// the dictionary is currently being downloaded.
-			return false;
+		for (final State s : states.values()) {
+			if (indexDir.equals(s.downloadPath) && !s.isError) {
+				// the dictionary is currently being downloaded.
+				return false;
+			}
 		}
 		return true;
 	}
 
+	/**
+	 * Cancels all active downloads. Queued downloads are not affected. The
+	 * downloaded data is kept, the download continues when the dictionary is
+	 * downloaded again.
+	 */
 	public void cancelCurrentDownload() {
-		final Future<?> c = currentDownload;
-		if (c == null || c.isDone()) {
-			return;
+		for (final Iterator<Map.Entry<String, Future<?>>> i = downloads.entrySet().iterator(); i.hasNext();) {
+			final Map.Entry<String, Future<?>> e = i.next();
+			if (e.getValue().isDone()) {
+				i.remove();
+			} else if (!queueDictNames.containsKey(e.getKey())) {
+				e.getValue().cancel(true);
+			}
 		}
-		c.cancel(true);
 	}
 }
@@ -18,6 +18,7 @@
 
 package sk.baka.aedict.kanji;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -93,29 +94,112 @@ public final class Radicals {
 	 *         may be empty.
 	 */
 	public static Set<Character> getKanjisWithRadicals(final char[] radicals) {
+		final long[] matchedKanjis = intersect(radicals);
+		final Set<Character> result = new HashSet<Character>();
+		for (int word = 0; word < matchedKanjis.length; word++) {
+			for (long bits = matchedKanjis[word]; bits != 0; bits &= bits - 1) {
+				result.add(Index.KANJIS[(word << 6) + Long.numberOfTrailingZeros(bits)]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Computes a bitset of kanjis which contain all given radicals.
+	 * 
+	 * @param radicals
+	 *            a list of radical, must not be null nor empty.
+	 * @return a bitset of kanji ordinals, see {@link Index#KANJIS}.
+	 */
+	private static long[] intersect(final char[] radicals) {
 		if (radicals.length == 0) {
 			throw new IllegalArgumentException("The radicals array must not be empty");
 		}
-		Set<Character> matchedKanjis = null;
-		for (final char radical : radicals) {
-			Set<Character> kanjis = toSet(getRadical(radical).kanjis);
-			if (matchedKanjis == null) {
-				matchedKanjis = kanjis;
-			} else {
-				matchedKanjis.retainAll(kanjis);
+		final long[] result = Index.getKanjis(radicals[0]).clone();
+		for (int i = 1; i < radicals.length; i++) {
+			final long[] kanjis = Index.getKanjis(radicals[i]);
+			for (int word = 0; word < result.length; word++) {
+				result[word] &= kanjis[word];
 			}
 		}
-		return matchedKanjis;
+		return result;
 	}
 
-	private static Set<Character> toSet(final String str) {
-		final Set<Character> result = new HashSet<Character>(str.length());
-		for (final char c : str.toCharArray()) {
-			result.add(c);
+	/**
+	 * For each radical computes the number of kanjis which would be matched if
+	 * the radical was selected in addition to given radicals. A radical with a
+	 * zero count would yield no results.
+	 * 
+	 * @param radicals
+	 *            currently selected radicals, not null, may be empty.
+	 * @return the candidate counts, indexed in the {@link #RADICAL_ORDERING}
+	 *         order.
+	 */
+	public static int[] getCandidateCounts(final char[] radicals) {
+		final long[] matchedKanjis = radicals.length == 0 ? null : intersect(radicals);
+		final int[] result = new int[RADICAL_ORDERING.length()];
+		for (int i = 0; i < result.length; i++) {
+			final long[] kanjis = Index.RADICAL_KANJIS[i];
+			int count = 0;
+			for (int word = 0; word < kanjis.length; word++) {
+				count += Long.bitCount(matchedKanjis == null ? kanjis[word] : kanjis[word] & matchedKanjis[word]);
+			}
+			result[i] = count;
 		}
 		return result;
 	}
 
+	/**
+	 * A bitmap index of the radicals: each kanji is assigned an ordinal, and
+	 * each radical has a bitset of ordinals of kanjis which contain the
+	 * radical. Multiple radicals are thus matched by a word-wise AND. The
+	 * index is built when first used.
+	 */
+	private static final class Index {
+		/**
+		 * All kanjis contained in any radical, sorted. The index to this array
+		 * is the kanji ordinal.
+		 */
+		static final char[] KANJIS;
+		/**
+		 * The kanji bitsets, indexed in the {@link #RADICAL_ORDERING} order.
+		 */
+		static final long[][] RADICAL_KANJIS = new long[RADICAL_ORDERING.length()][];
+		static {
+			final StringBuilder all = new StringBuilder();
+			for (final Radical radical : RADICAL_TO_KANJILIST.values()) {
+				all.append(radical.kanjis);
+			}
+			final char[] sorted = all.toString().toCharArray();
+			Arrays.sort(sorted);
+			int count = 0;
+			for (int i = 0; i < sorted.length; i++) {
+				if (count == 0 || sorted[count - 1] != sorted[i]) {
+					sorted[count++] = sorted[i];
+				}
+			}
+			KANJIS = new char[count];
+			System.arraycopy(sorted, 0, KANJIS, 0, count);
+			for (int i = 0; i < RADICAL_KANJIS.length; i++) {
+				final String kanjis = getRadical(RADICAL_ORDERING.charAt(i)).kanjis;
+				final long[] bitset = new long[(count + 63) >>> 6];
+				for (int j = 0; j < kanjis.length(); j++) {
+					final int ordinal = Arrays.binarySearch(KANJIS, kanjis.charAt(j));
+					bitset[ordinal >>> 6] |= 1L << ordinal;
+				}
+				RADICAL_KANJIS[i] = bitset;
+			}
+		}
+
+		static long[] getKanjis(final char radical) {
+			final int index = RADICAL_ORDERING.indexOf(radical);
+			if (index < 0) {
+				throw new IllegalArgumentException("Not a radical: " + radical);
+			}
+			return RADICAL_KANJIS[index];
+		}
+	}
+
 	/**
 	 * Finds information about a radical.
 	 * @param radical the radical character.
@@ -18,9 +18,13 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package sk.baka.aedict.kanji;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import sk.baka.aedict.dict.DictTypeEnum;
 import sk.baka.aedict.dict.MatcherEnum;
@@ -42,13 +46,18 @@ public final class VerbDeinflection {
         }
     }
 
-    private static class EndsWithDeinflector extends AbstractDeinflector {
+    private static class EndsWithDeinflector {
 
         private final String endsWith;
         private final String[] replaceBy;
         private final boolean isAllowEntireWordMatch;
         private final boolean isStopIfMatch;
         private final Form form;
+        /**
+         * The rule is not applied to verbs ending with this string, may be
+         * null.
+         */
+        private final String exceptEndsWith;
 
         /**
          * Deinflects a verb if it ends with one of the following strings.
@@ -82,111 +91,153 @@ public final class VerbDeinflection {
          *            the ending is replaced by this string.
          */
         public EndsWithDeinflector(final String endsWith, final boolean isAllowEntireWordMatch, final boolean isStopIfMatch, final Form form, final String... replaceBy) {
+            this(endsWith, null, isAllowEntireWordMatch, isStopIfMatch, form, replaceBy);
+        }
+
+        protected EndsWithDeinflector(final String endsWith, final String exceptEndsWith, final boolean isAllowEntireWordMatch, final boolean isStopIfMatch, final Form form, final String... replaceBy) {
             this.endsWith = endsWith;
+            this.exceptEndsWith = exceptEndsWith;
             this.replaceBy = replaceBy;
             this.isAllowEntireWordMatch = isAllowEntireWordMatch;
             this.isStopIfMatch = isStopIfMatch;
             this.form = form;
         }
 
-        @Override
-        public Set<String> deinflect(String romaji) {
-            final String ending = isMatch(romaji);
-            if (ending == null) {
-                // nothing matched
+        /**
+         * Tries to deinflect a verb.
+         *
+         * @param romaji
+         *            a verb in lower-case, trimmed romaji, which ends with
+         *            {@link #endsWith}.
+         * @return deinflected verb, or a multiple verbs if there are multiple
+         *         possibilities to deinflect. If this rule cannot be applied to
+         *         deinflect the verb, null is returned.
+         */
+        public String[] deinflect(String romaji) {
+            if (!isMatch(romaji)) {
                 return null;
             }
-            final Set<String> result = new HashSet<String>(replaceBy.length);
-            final String verbPart = romaji.substring(0, romaji.length() - ending.length());
+            final String verbPart = romaji.substring(0, romaji.length() - endsWith.length());
+            final Set<String> result = new LinkedHashSet<String>(replaceBy.length * 2);
             for (final String rb : replaceBy) {
                 result.add(verbPart + rb);
             }
-            return result;
+            return result.toArray(new String[result.size()]);
         }
 
-        private String isMatch(final String romaji) {
-            final String ending = endsWith;
-                if (isAllowEntireWordMatch && romaji.equals(ending)) {
-                    return ending;
-                }
-                if (!isAllowEntireWordMatch) {
-                    if (romaji.endsWith(ending) && !romaji.equals(ending)) {
-                        return ending;
-                    }
-                }
-            return null;
+        private boolean isMatch(final String romaji) {
+            if (romaji.length() == endsWith.length()) {
+                return isAllowEntireWordMatch;
+            }
+            return !isAllowEntireWordMatch && (exceptEndsWith == null || !romaji.endsWith(exceptEndsWith));
         }
 
-        @Override
+        /**
+         * If true then there is nothing more to deinflect and the process can
+         * be safely stopped.
+         *
+         * @return true if there is nothing more to deinflect, false if the
+         *         deinflection should continue.
+         */
         public boolean stopIfMatch() {
             return isStopIfMatch;
         }
 
-		@Override
+        /**
+         * Returns the originating form.
+         * @return originating form.
+         */
 		public Form getForm() {
 			return form;
 		}
     }
 
-    private static class EruDeinflector extends AbstractDeinflector {
+    private static class EruDeinflector extends EndsWithDeinflector {
         // this rule is also required, to correctly deinflect e.g.
         // aetai. list as a last rule. Make the rule produce the old verb and
-        // also the deinflected one.
+        // also the deinflected one. Do not deinflect -rareru; if the -eru is
+        // deinflected, there is nothing more to match.
 
-        private final AbstractDeinflector eruDeinflector = new EndsWithDeinflector("eru", Form.ABLE_TO_DO2, "eru", "u");
-
-        @Override
-        public Set<String> deinflect(String romaji) {
-            // do not deinflect -rareru
-            if (romaji.endsWith("rareru")) {
-                return null;
-            }
-            return eruDeinflector.deinflect(romaji);
+        public EruDeinflector() {
+            super("eru", "rareru", false, true, Form.ABLE_TO_DO2, "eru", "u");
         }
-
-        @Override
-        public boolean stopIfMatch() {
-            // if the -eru is deinflected, there is nothing more to match
-            return true;
-        }
-
-		@Override
-		public Form getForm() {
-			return Form.ABLE_TO_DO2;
-		}
     }
 
-    private static abstract class AbstractDeinflector {
+    /**
+     * The {@link #DEINFLECTORS} compiled into a trie of reversed endings: all
+     * rules whose ending matches a verb are found by a single walk from the
+     * end of the verb.
+     */
+    private static final class SuffixTrie {
 
+        private char[] chars = new char[0];
+        private SuffixTrie[] children = new SuffixTrie[0];
         /**
-         * Tries to deinflect a verb.
-         *
-         * @param romaji
-         *            a verb in lower-case, trimmed romaji.
-         * @return deinflected verb, or a multiple verbs if there are multiple
-         *         possibilities to deinflect. If this rule cannot be applied to
-         *         deinflect the verb, null or an empty array should be
-         *         returned.
+         * Indices of the rules whose ending ends at this node.
          */
-        public abstract Set<String> deinflect(String romaji);
+        private int[] rules = new int[0];
+
+        private SuffixTrie getOrAddChild(final char c) {
+            final int pos = Arrays.binarySearch(chars, c);
+            if (pos >= 0) {
+                return children[pos];
+            }
+            final int insertAt = -pos - 1;
+            final char[] c2 = new char[chars.length + 1];
+            final SuffixTrie[] n2 = new SuffixTrie[chars.length + 1];
+            System.arraycopy(chars, 0, c2, 0, insertAt);
+            System.arraycopy(children, 0, n2, 0, insertAt);
+            c2[insertAt] = c;
+            n2[insertAt] = new SuffixTrie();
+            System.arraycopy(chars, insertAt, c2, insertAt + 1, chars.length - insertAt);
+            System.arraycopy(children, insertAt, n2, insertAt + 1, chars.length - insertAt);
+            chars = c2;
+            children = n2;
+            return n2[insertAt];
+        }
+
+        void add(final String endsWith, final int rule) {
+            SuffixTrie node = this;
+            for (int i = endsWith.length() - 1; i >= 0; i--) {
+                node = node.getOrAddChild(endsWith.charAt(i));
+            }
+            final int[] r2 = new int[node.rules.length + 1];
+            System.arraycopy(node.rules, 0, r2, 0, node.rules.length);
+            r2[node.rules.length] = rule;
+            node.rules = r2;
+        }
 
         /**
-         * If true then there is nothing more to deinflect and the process can
-         * be safely stopped.
+         * Finds the first rule with given or greater index which deinflects
+         * given verb.
          *
-         * @return true if there is nothing more to deinflect, false if the
-         *         deinflection should continue.
-         */
-        public abstract boolean stopIfMatch();
-        
-        /**
-         * Returns the originating form.
-         * @return originating form.
+         * @param romaji
+         *            the verb
+         * @param fromRule
+         *            the minimum rule index.
+         * @return the rule index, or {@link #DEINFLECTORS} size if no rule
+         *         applies.
          */
-        public abstract Form getForm();
+        int findRule(final String romaji, final int fromRule) {
+            int result = DEINFLECTORS.size();
+            SuffixTrie node = this;
+            for (int i = romaji.length() - 1; i >= 0; i--) {
+                final int pos = Arrays.binarySearch(node.chars, romaji.charAt(i));
+                if (pos < 0) {
+                    break;
+                }
+                node = node.children[pos];
+                for (final int rule : node.rules) {
+                    if (rule >= fromRule && rule < result && DEINFLECTORS.get(rule).isMatch(romaji)) {
+                        result = rule;
+                    }
+                }
+            }
+            return result;
+        }
     }
 
-    private static AbstractDeinflector basicSuffix(final String endsWith, final Form form, final String... replaceBy) {
+    private static EndsWithDeinflector basicSuffix(final String endsWith, final Form form, final String... replaceBy) {
         return new EndsWithDeinflector(endsWith, false, true, form, replaceBy);
     }
 
@@ -198,10 +249,14 @@ public final class VerbDeinflection {
     	return result;
     }
     
-    private final static List<? extends AbstractDeinflector> DEINFLECTORS;
+    /**
+     * The rules, in the order of application.
+     */
+    private final static List<EndsWithDeinflector> DEINFLECTORS;
+    private final static SuffixTrie TRIE = new SuffixTrie();
 
     static {
-        final List<AbstractDeinflector> d = new ArrayList<AbstractDeinflector>();
+        final List<EndsWithDeinflector> d = new ArrayList<EndsWithDeinflector>();
         d.addAll(irregular(new String[]{"dewaarimasen", "dehaarimasen", "de wa arimasen", "de ha arimasen", "zya arimasen", "zyaarimasen"}, Form.POLITE_NEGATIVE, "desu"));
         d.addAll(irregular(new String[]{"dewaarimasendesita", "dehaarimasendesita", "de wa arimasen desita", "de ha arimasen desita", "zya arimasen desita", "zyaarimasendesita"}, Form.POLITE_PAST_NEGATIVE, "desu"));
         // the -masu deinflector
@@ -283,10 +338,20 @@ public final class VerbDeinflection {
         d.add(basicSuffix("nda", Form.PAST_TENSE, "nu", "bu", "mu"));
         d.add(basicSuffix("nde",Form.CONTINUATION, "nu", "bu", "mu"));
         DEINFLECTORS = d;
+        for (int i = 0; i < d.size(); i++) {
+            TRIE.add(d.get(i).endsWith, i);
+        }
     }
 
     /**
-     * Attempts to deinflect given verb.
+     * Attempts to deinflect given verb. The rules are applied in the order of
+     * {@link #DEINFLECTORS}: a rule applies to the verb and to all verbs
+     * produced by earlier rules. A deinflected verb is replaced by the
+     * deinflection products, which are only processed by the following rules.
+     * <p/>
+     * Instead of running every rule over every verb, the first applicable rule
+     * of each verb is looked up in the {@link #TRIE}; verbs are then processed
+     * rule by rule, skipping the rules which apply to no verb.
      *
      * @param japanese
      *            {@link RomanizationEnum#NihonShiki} romaji or hiragana.
@@ -294,32 +359,56 @@ public final class VerbDeinflection {
      */
     public static Deinflections deinflect(final String japanese) {
         final Deinflections result = new Deinflections();
-        result.deinflections=new ArrayList<Deinflection>();
+        result.deinflections = new ArrayList<Deinflection>();
         result.deinflectedVerbs = new HashSet<String>();
-        Set<String> finalDeinflect = new HashSet<String>();
-        result.deinflectedVerbs.add(RomanizationEnum.NihonShiki.toRomaji(japanese).trim());
-        for (final AbstractDeinflector deinflector : DEINFLECTORS) {
-            final Set<String> newResult = new HashSet<String>(result.deinflectedVerbs);
-            for (final String romaji : result.deinflectedVerbs) {
-                final Set<String> deinflected = deinflector.deinflect(romaji);
-                if (deinflected != null && !deinflected.isEmpty()) {
-                    // successfully deinflected. remove the old verb and add the
-                    // deinflected one.
-                    newResult.remove(romaji);
-                    if (deinflector.stopIfMatch()) {
-                        finalDeinflect.addAll(deinflected);
-                    } else {
-                        newResult.addAll(deinflected);
-                    }
-                    result.deinflections.add(new Deinflection(romaji, deinflector.getForm(), deinflected.toArray(new String[0])));
+        // verbs which were not deinflected (yet)
+        final Set<String> verbs = new LinkedHashSet<String>();
+        // maps the rule index to verbs it applies to
+        final SortedMap<Integer, List<String>> agenda = new TreeMap<Integer, List<String>>();
+        addVerb(RomanizationEnum.NihonShiki.toRomaji(japanese).trim(), 0, verbs, agenda);
+        while (!agenda.isEmpty()) {
+            final int rule = agenda.firstKey();
+            final EndsWithDeinflector deinflector = DEINFLECTORS.get(rule);
+            final List<String> newVerbs = new ArrayList<String>();
+            for (final String romaji : agenda.remove(rule)) {
+                final String[] deinflected = deinflector.deinflect(romaji);
+                // successfully deinflected. remove the old verb and add the
+                // deinflected one.
+                verbs.remove(romaji);
+                if (deinflector.stopIfMatch()) {
+                    result.deinflectedVerbs.addAll(Arrays.asList(deinflected));
+                } else {
+                    newVerbs.addAll(Arrays.asList(deinflected));
                 }
+                result.deinflections.add(new Deinflection(romaji, deinflector.getForm(), deinflected));
+            }
+            for (final String romaji : newVerbs) {
+                addVerb(romaji, rule + 1, verbs, agenda);
             }
-            result.deinflectedVerbs = newResult;
         }
-        result.deinflectedVerbs.addAll(finalDeinflect);
+        result.deinflectedVerbs.addAll(verbs);
         return result;
     }
 
+    /**
+     * Schedules a verb for deinflection by the first rule which applies to it.
+     */
+    private static void addVerb(final String romaji, final int fromRule, final Set<String> verbs, final SortedMap<Integer, List<String>> agenda) {
+        if (!verbs.add(romaji)) {
+            // already scheduled; no rule applied to the verb since then
+            return;
+        }
+        final int rule = TRIE.findRule(romaji, fromRule);
+        if (rule < DEINFLECTORS.size()) {
+            List<String> list = agenda.get(rule);
+            if (list == null) {
+                list = new ArrayList<String>();
+                agenda.put(rule, list);
+            }
+            list.add(romaji);
+        }
+    }
+
     private VerbDeinflection() {
         throw new AssertionError();
     }
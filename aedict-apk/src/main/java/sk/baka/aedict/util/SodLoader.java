@@ -18,65 +18,109 @@
 
 package sk.baka.aedict.util;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import sk.baka.aedict.dict.DictTypeEnum;
 import sk.baka.autils.MiscUtils;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 
 /**
  * Loads the <a href="http://www.kanjicafe.com/license.htm">SOD</a> images from
- * a custom binary format. The format is gzipped, with the following structure:
+ * a custom binary format. The format is gzipped for download and stored
+ * unpacked, with the following structure:
  * <h4>The header:</h4> 4 byte int - number of kanji entries; for each entry:
  * 2-byte UTF-16 kanji character, 4-byte png offset in the file. The entries are
  * ordered by the "offset" value, ascending. <h4>The contents:</h4> Basically
  * just a streams of PNG images, one after another.
  * <p/>
- * Not thread safe.
+ * The loader memory-maps the unpacked file once and keeps the header in sorted
+ * primitive arrays. Decoded images are kept in
+ * a LRU cache bounded by {@link #MAX_CACHE_BYTES}.
+ * <p/>
+ * Thread safe.
  * 
  * @author Martin Vysny
  */
 public class SodLoader {
 	/**
-	 * Creates new loader. The loader is initialized immediately, by reading the
-	 * binary format header. The constructor fails if the file is not available.
+	 * Creates new loader. The loader is initialized immediately, by mapping
+	 * the file and reading the binary format header. The constructor fails if
+	 * the file is not available.
 	 * 
 	 * @throws IOException
 	 *             if the file fails to load.
 	 */
 	public SodLoader() throws IOException {
-		// parse the header
-		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(SDCARD_LOCATION)));
+		this(SDCARD_LOCATION);
+	}
+
+	/**
+	 * Creates new loader. The loader is initialized immediately, by mapping
+	 * the file and reading the binary format header.
+	 * 
+	 * @param file
+	 *            the unpacked SOD file.
+	 * @throws IOException
+	 *             if the file fails to load.
+	 */
+	SodLoader(final File file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			// the mapping stays valid after the channel is closed
+			data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			MiscUtils.closeQuietly(raf);
+		}
 		try {
-			try {
-				final int numberOfKanjis = in.readInt();
-				Character lastKanji = null;
-				for (int i = 0; i < numberOfKanjis; i++) {
-					final Character kanji = in.readChar();
-					final int offset = in.readInt();
-					startOffset.put(kanji, offset);
-					if (lastKanji != null) {
-						final int length = offset - startOffset.get(lastKanji);
-						this.length.put(lastKanji, length);
-					}
-					lastKanji = kanji;
+			// parse the header
+			final int numberOfKanjis = data.getInt(0);
+			// computed as long: a corrupted count must not overflow into a
+			// seemingly valid header size
+			final long headerEnd = 4 + numberOfKanjis * 6L;
+			if (numberOfKanjis < 0 || headerEnd > data.limit()) {
+				throw new IOException("Invalid number of kanjis: " + numberOfKanjis);
+			}
+			// sort the entries by the kanji: the kanji is the upper part of
+			// the key, the entry index the lower part
+			final long[] keys = new long[numberOfKanjis];
+			for (int i = 0; i < numberOfKanjis; i++) {
+				keys[i] = ((long) data.getChar(4 + i * 6) << 32) | i;
+			}
+			Arrays.sort(keys);
+			kanjis = new char[numberOfKanjis];
+			startOffset = new int[numberOfKanjis];
+			length = new int[numberOfKanjis];
+			for (int i = 0; i < numberOfKanjis; i++) {
+				final int entry = (int) keys[i];
+				kanjis[i] = (char) (keys[i] >>> 32);
+				startOffset[i] = data.getInt(4 + entry * 6 + 2);
+				// the entries are ordered by the offset, the image ends where
+				// the next one starts
+				final int end = entry == numberOfKanjis - 1 ? data.limit() : data.getInt(4 + (entry + 1) * 6 + 2);
+				length[i] = end - startOffset[i];
+				if (startOffset[i] < headerEnd || length[i] < 0 || end > data.limit()) {
+					throw new IOException("Invalid image offset for " + kanjis[i] + ": " + startOffset[i] + ".." + end);
 				}
-				length.put(lastKanji, (int) (SDCARD_LOCATION.length() - startOffset.get(lastKanji)));
-			} catch (IOException ex) {
-				tnio(ex);
 			}
-		} finally {
-			MiscUtils.closeQuietly(in);
+		} catch (IOException ex) {
+			tnio(ex);
+			throw new AssertionError();
+		} catch (RuntimeException ex) {
+			// BufferUnderflow or IndexOutOfBounds - the file is truncated
+			tnio(ex);
+			throw new AssertionError();
 		}
 	}
 
@@ -87,13 +131,24 @@ public class SodLoader {
 	}
 
 	/**
-	 * Maps a character to the starting offset of the image in the file.
+	 * The mapped file. Never modified (the position and limit are not
+	 * changed), thus may be read concurrently by absolute gets and
+	 * {@link ByteBuffer#duplicate() duplicates}.
+	 */
+	private final ByteBuffer data;
+	/**
+	 * Kanjis present in the file, sorted.
 	 */
-	private final Map<Character, Integer> startOffset = new HashMap<Character, Integer>();
+	private final char[] kanjis;
 	/**
-	 * Maps a character to the length of the image data in the file.
+	 * The starting offset of the image in the file, in the {@link #kanjis}
+	 * order.
 	 */
-	private final Map<Character, Integer> length = new HashMap<Character, Integer>();
+	private final int[] startOffset;
+	/**
+	 * The length of the image data in the file, in the {@link #kanjis} order.
+	 */
+	private final int[] length;
 
 	/**
 	 * The file can be obtained from this URL.
@@ -111,6 +166,41 @@ public class SodLoader {
 	 */
 	public static final File SDCARD_LOCATION = new File(DictTypeEnum.BASE_DIR + "/sod", "sod.dat");
 	public static final long UNPACKED_SIZE = 4584605L;
+	/**
+	 * Maximum size of the decoded images kept in the cache, in bytes.
+	 */
+	public static final int MAX_CACHE_BYTES = 2 * 1024 * 1024;
+
+	private static SodLoader instance = null;
+	private static long instanceModified = 0;
+
+	/**
+	 * Returns a loader shared by all activities. The loader is re-created when
+	 * the file is downloaded again.
+	 * 
+	 * @return the loader, never null.
+	 * @throws IOException
+	 *             if the file fails to load.
+	 */
+	public static synchronized SodLoader getInstance() throws IOException {
+		final long modified = SDCARD_LOCATION.lastModified();
+		if (instance == null || modified != instanceModified) {
+			instance = new SodLoader();
+			instanceModified = modified;
+		}
+		return instance;
+	}
+
+	/**
+	 * Checks if there is an image for given kanji.
+	 * 
+	 * @param kanji
+	 *            the kanji
+	 * @return true if there is an image, false otherwise.
+	 */
+	public boolean contains(final char kanji) {
+		return Arrays.binarySearch(kanjis, kanji) >= 0;
+	}
 
 	/**
 	 * Loads a SOD image for given kanji character. Returns null if there is no
@@ -118,57 +208,77 @@ public class SodLoader {
 	 * 
 	 * @param kanji
 	 *            the kanji
-	 * @return a bitmap instance or null if there is no such image.
-	 * @throws IOException
-	 *             if the file is not available.
+	 * @return PNG image data or null if there is no such image.
 	 */
-	private byte[] load(final Character kanji) throws IOException {
-		final Integer offset = startOffset.get(kanji);
-		if (offset == null) {
+	byte[] load(final char kanji) {
+		final int index = Arrays.binarySearch(kanjis, kanji);
+		if (index < 0) {
 			return null;
 		}
-		final int length = this.length.get(kanji);
-		final RandomAccessFile file = new RandomAccessFile(SDCARD_LOCATION, "r");
-		try {
-			try {
-				file.seek(offset);
-				final byte[] result = new byte[length];
-				file.readFully(result);
-				return result;
-			} catch (IOException ex) {
-				tnio(ex);
-				throw new AssertionError();
-			}
-		} finally {
-			MiscUtils.closeQuietly(file);
-		}
+		final ByteBuffer buffer = data.duplicate();
+		buffer.position(startOffset[index]);
+		final byte[] result = new byte[length[index]];
+		buffer.get(result);
+		return result;
 	}
 
 	/**
-	 * The cached images.
+	 * The cached images, the least recently used first. Guarded by itself.
 	 */
-	private final Map<Character, BitmapDrawable> cachedImages = new HashMap<Character, BitmapDrawable>();
+	private final Map<Character, Bitmap> cachedImages = new LinkedHashMap<Character, Bitmap>(16, 0.75f, true);
+	/**
+	 * Total size of {@link #cachedImages}, in bytes. Guarded by
+	 * {@link #cachedImages}.
+	 */
+	private int cachedBytes = 0;
+
+	private static int sizeOf(final Bitmap bitmap) {
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
 
 	/**
 	 * Loads a SOD image for given kanji character. Returns null if there is no
-	 * image for given kanji. The image is cached in this instance of the
-	 * loader.
+	 * image for given kanji. The decoded image is cached in this instance of
+	 * the loader.
 	 * 
 	 * @param kanji
 	 *            the kanji
-	 * @return a bitmap instance or null if there is no such image.
+	 * @return a new drawable instance or null if there is no such image.
 	 * @throws IOException
-	 *             if the file is not available.
+	 *             if the image fails to decode.
 	 */
 	public BitmapDrawable loadBitmap(final Character kanji) throws IOException {
-		BitmapDrawable result = cachedImages.get(kanji);
+		Bitmap result;
+		synchronized (cachedImages) {
+			result = cachedImages.get(kanji);
+		}
 		if (result == null) {
 			final byte[] img = load(kanji);
-			if (img != null) {
-				result = new BitmapDrawable(new ByteArrayInputStream(img));
-				cachedImages.put(kanji, result);
+			if (img == null) {
+				return null;
+			}
+			// decode outside of the lock; two threads may decode the same
+			// image, that is harmless
+			result = BitmapFactory.decodeByteArray(img, 0, img.length);
+			if (result == null) {
+				tnio(new IOException("Failed to decode the image for " + kanji));
+			}
+			synchronized (cachedImages) {
+				final Bitmap previous = cachedImages.put(kanji, result);
+				if (previous != null) {
+					cachedBytes -= sizeOf(previous);
+				}
+				cachedBytes += sizeOf(result);
+				// evict the least recently used images, keep at least the
+				// image just loaded
+				for (final Iterator<Bitmap> i = cachedImages.values().iterator(); cachedBytes > MAX_CACHE_BYTES && cachedImages.size() > 1;) {
+					cachedBytes -= sizeOf(i.next());
+					i.remove();
+				}
 			}
 		}
-		return result;
+		// drawables are not shared: a drawable keeps a reference to the view
+		// it is attached to
+		return new BitmapDrawable(result);
 	}
 }
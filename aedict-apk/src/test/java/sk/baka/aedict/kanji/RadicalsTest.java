@@ -0,0 +1,108 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.kanji;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link Radicals} class.
+ * 
+ * @author Martin Vysny
+ */
+public class RadicalsTest {
+	/**
+	 * Computes the kanjis containing all given radicals by a plain set
+	 * intersection.
+	 */
+	private static Set<Character> intersect(final char... radicals) {
+		Set<Character> result = null;
+		for (final char radical : radicals) {
+			final Set<Character> kanjis = new HashSet<Character>();
+			for (final char kanji : Radicals.getRadical(radical).kanjis.toCharArray()) {
+				kanjis.add(kanji);
+			}
+			if (result == null) {
+				result = kanjis;
+			} else {
+				result.retainAll(kanjis);
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testSingleRadical() {
+		for (final char radical : Radicals.RADICAL_ORDERING.toCharArray()) {
+			assertEquals("Radical " + radical, intersect(radical), Radicals.getKanjisWithRadicals(new char[] { radical }));
+		}
+	}
+
+	@Test
+	public void testRadicalPairs() {
+		final String radicals = Radicals.RADICAL_ORDERING;
+		for (int i = 0; i < radicals.length(); i++) {
+			for (int j = i + 1; j < radicals.length(); j++) {
+				final char[] pair = new char[] { radicals.charAt(i), radicals.charAt(j) };
+				assertEquals("Radicals " + new String(pair), intersect(pair), Radicals.getKanjisWithRadicals(pair));
+			}
+		}
+	}
+
+	@Test
+	public void testMultipleRadicals() {
+		final char[] radicals = new char[] { '口', '木', '日' };
+		final Set<Character> kanjis = Radicals.getKanjisWithRadicals(radicals);
+		assertEquals(intersect(radicals), kanjis);
+		assertTrue(Radicals.getKanjisWithRadicals(new char[] { '口', '木' }).containsAll(kanjis));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoRadicals() {
+		Radicals.getKanjisWithRadicals(new char[0]);
+	}
+
+	@Test
+	public void testCandidateCountsWithoutSelection() {
+		final int[] counts = Radicals.getCandidateCounts(new char[0]);
+		assertEquals(Radicals.RADICAL_ORDERING.length(), counts.length);
+		for (int i = 0; i < counts.length; i++) {
+			final char radical = Radicals.RADICAL_ORDERING.charAt(i);
+			assertEquals("Radical " + radical, intersect(radical).size(), counts[i]);
+		}
+	}
+
+	@Test
+	public void testCandidateCounts() {
+		for (final char[] selected : new char[][] { { '口' }, { '木' }, { '口', '木' }, { '龠' } }) {
+			final int[] counts = Radicals.getCandidateCounts(selected);
+			for (int i = 0; i < counts.length; i++) {
+				final char[] radicals = new char[selected.length + 1];
+				System.arraycopy(selected, 0, radicals, 0, selected.length);
+				radicals[selected.length] = Radicals.RADICAL_ORDERING.charAt(i);
+				final Set<Character> expected = intersect(radicals);
+				assertEquals(new String(radicals), expected.size(), counts[i]);
+				assertEquals(new String(radicals), expected.isEmpty(), counts[i] == 0);
+			}
+		}
+	}
+}
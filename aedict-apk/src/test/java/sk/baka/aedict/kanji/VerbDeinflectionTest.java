@@ -17,6 +17,7 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 package sk.baka.aedict.kanji;
 
+import static org.junit.Assert.assertEquals;
 import static sk.baka.tools.test.Assert.assertArrayEqualsNoOrder;
 import static sk.baka.tools.test.Assert.assertUtilityClass;
 
@@ -166,6 +167,18 @@ public class VerbDeinflectionTest {
         assertDeinflected(Arrays.asList("kaeru", "kaeu", "kaetu"), "kaetta", "kaette");
     }
 
+    @Test
+    public void testDeinflectionChain() {
+        final List<Deinflections.Deinflection> chain = VerbDeinflection.deinflect("kakanakatta").deinflections;
+        assertEquals(2, chain.size());
+        assertEquals("kakanakatta", chain.get(0).inflected);
+        assertEquals(VerbInflection.Form.NEGATIVE_PAST, chain.get(0).inflectedForm);
+        Assert.assertArrayEquals(new String[]{"kakanai"}, chain.get(0).deinflected);
+        assertEquals("kakanai", chain.get(1).inflected);
+        assertEquals(VerbInflection.Form.NEGATIVE, chain.get(1).inflectedForm);
+        Assert.assertArrayEquals(new String[]{"kaku"}, chain.get(1).deinflected);
+    }
+
     private void assertDeinflected(final String expected, final String... deinflects) {
         assertDeinflected(Arrays.asList(expected), deinflects);
     }
@@ -0,0 +1,86 @@
+/**
+ *     Aedict - an EDICT browser for Android
+ Copyright (C) 2009 Martin Vysny
+ 
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link SodLoader} class.
+ * 
+ * @author Martin Vysny
+ */
+public class SodLoaderTest {
+	/**
+	 * Writes a SOD file with given images. The header is ordered by the
+	 * offset only, as written by older packers.
+	 */
+	private static File write(final char[] kanjis, final byte[][] images) throws IOException {
+		final File file = File.createTempFile("sod", ".dat");
+		file.deleteOnExit();
+		final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			int offset = kanjis.length * 6 + 4;
+			out.writeInt(kanjis.length);
+			for (int i = 0; i < kanjis.length; i++) {
+				out.writeChar(kanjis[i]);
+				out.writeInt(offset);
+				offset += images[i].length;
+			}
+			for (final byte[] image : images) {
+				out.write(image);
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	@Test
+	public void testLoadFromUnsortedHeader() throws IOException {
+		final SodLoader loader = new SodLoader(write(new char[] { '日', '一', '本' }, new byte[][] { { 1, 2, 3 }, {}, { 4, 5 } }));
+		assertArrayEquals(new byte[] { 1, 2, 3 }, loader.load('日'));
+		assertArrayEquals(new byte[0], loader.load('一'));
+		assertArrayEquals(new byte[] { 4, 5 }, loader.load('本'));
+		assertTrue(loader.contains('本'));
+		assertFalse(loader.contains('人'));
+		assertNull(loader.load('人'));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedFileFails() throws IOException {
+		final File file = write(new char[] { '日' }, new byte[][] { { 1 } });
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(7);
+		} finally {
+			raf.close();
+		}
+		new SodLoader(file);
+	}
+}
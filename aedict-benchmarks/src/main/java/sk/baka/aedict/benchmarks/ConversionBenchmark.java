@@ -0,0 +1,87 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sk.baka.aedict.dict.DictTypeEnum;
+import sk.baka.aedict.dict.EdictEntry;
+import sk.baka.aedict.kanji.KanjiUtils;
+import sk.baka.aedict.kanji.RomanizationEnum;
+
+/**
+ * Benchmarks the EDICT line parser and the kana/romaji conversions, which
+ * run for each search keystroke and for each displayed result.
+ * @author Martin Vysny
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionBenchmark {
+
+    @Param({"Hepburn", "NihonShiki"})
+    public RomanizationEnum romanization;
+    public String edictLine = "母 [はは] /(n) (hum) mother/(P)/";
+    public String edictLineComplex = "今日 [きょう(P);こんにち(P)] /(n-t) (1) today/this day/(n-adv) (2) these days/recently/nowadays/(P)/";
+    public String romaji = "kyouhaiitenkidesune";
+    public String hiragana = "きょうはいいてんきですね";
+    public String katakana = "コンピューターゲーム";
+    public String halfwidth = "ｺﾝﾋﾟｭｰﾀｰｹﾞｰﾑ";
+
+    @Benchmark
+    public EdictEntry parseEdictEntry() {
+        return DictTypeEnum.parseEdictEntry(edictLine);
+    }
+
+    @Benchmark
+    public EdictEntry parseEdictEntryComplex() {
+        return DictTypeEnum.parseEdictEntry(edictLineComplex);
+    }
+
+    @Benchmark
+    public String toHiragana() {
+        return romanization.toHiragana(romaji);
+    }
+
+    @Benchmark
+    public String hiraganaToRomaji() {
+        return romanization.toRomaji(hiragana);
+    }
+
+    @Benchmark
+    public String katakanaToRomaji() {
+        return romanization.toRomaji(katakana);
+    }
+
+    @Benchmark
+    public String halfwidthToKatakana() {
+        return KanjiUtils.halfwidthToKatakana(halfwidth);
+    }
+}
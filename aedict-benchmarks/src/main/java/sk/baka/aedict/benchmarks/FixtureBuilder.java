@@ -0,0 +1,85 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.commons.io.FileUtils;
+import sk.baka.aedict.dict.DictTypeEnum;
+import sk.baka.aedict.dict.LuceneSearch;
+import sk.baka.aedict.indexer.FileTypeEnum;
+import sk.baka.aedict.indexer.Main;
+
+/**
+ * Indexes the test dictionaries with the indexer, producing the fixture the
+ * benchmarks search in. Invoked during the build.
+ * @author Martin Vysny
+ */
+public class FixtureBuilder {
+
+    /**
+     * Builds the fixture.
+     * @param args the directory with edict.gz and kanjidic.gz, the directory with examples.txt, the target directory.
+     * @throws Exception if indexing fails.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            throw new IllegalArgumentException("Expected arguments: sources-dir fixtures-dir target-dir");
+        }
+        final File sources = new File(args[0]);
+        final File fixtures = new File(args[1]);
+        final File target = new File(args[2]);
+        FileUtils.deleteDirectory(target);
+        index(target, DictTypeEnum.Edict, FileTypeEnum.Edict, "-f", new File(sources, "edict.gz").getPath(), "-g");
+        index(target, DictTypeEnum.Kanjidic, FileTypeEnum.Kanjidic, "-k", "-f", new File(sources, "kanjidic.gz").getPath(), "-g");
+        index(target, DictTypeEnum.Tanaka, FileTypeEnum.Tanaka, "-t", "-f", new File(fixtures, "examples.txt").getPath(), "-e", "UTF-8");
+    }
+
+    private static void index(final File target, final DictTypeEnum dictType, final FileTypeEnum fileType, final String... args) throws IOException {
+        Main.main(args);
+        // the indexer always writes to Main.LUCENE_INDEX and zips the index to the current directory
+        FileUtils.moveDirectory(new File(Main.LUCENE_INDEX), getIndex(target, dictType));
+        FileUtils.forceDelete(new File(fileType.getTargetFileName(null)));
+    }
+
+    /**
+     * Opens the fixture index of given dictionary. The fixture location may
+     * be overridden by the <code>aedict.fixture</code> system property.
+     * @param dictType the dictionary type
+     * @return the searcher, never null.
+     * @throws IOException if the index cannot be opened.
+     */
+    public static LuceneSearch open(final DictTypeEnum dictType) throws IOException {
+        final File fixture = new File(System.getProperty("aedict.fixture", "target/fixture"));
+        final File index = getIndex(fixture, dictType);
+        if (!index.exists()) {
+            throw new IllegalStateException("The fixture " + index.getAbsolutePath() + " is missing, please build the aedict-benchmarks module first");
+        }
+        return new LuceneSearch(dictType, index.getPath(), false);
+    }
+
+    /**
+     * Returns the fixture index directory of given dictionary.
+     * @param fixture the fixture directory
+     * @param dictType the dictionary type
+     * @return the index directory.
+     */
+    public static File getIndex(final File fixture, final DictTypeEnum dictType) {
+        return new File(fixture, dictType.getDefaultDictionaryLoc());
+    }
+}
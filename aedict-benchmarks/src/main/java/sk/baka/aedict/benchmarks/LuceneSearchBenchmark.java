@@ -0,0 +1,119 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import sk.baka.aedict.dict.DictEntry;
+import sk.baka.aedict.dict.DictTypeEnum;
+import sk.baka.aedict.dict.LuceneSearch;
+import sk.baka.aedict.dict.MatcherEnum;
+import sk.baka.aedict.dict.SearchQuery;
+import sk.baka.aedict.kanji.RomanizationEnum;
+
+/**
+ * Benchmarks {@link LuceneSearch#search(SearchQuery)} for each dictionary
+ * type, language and matcher which can be searched for, against the fixture
+ * built by the {@link FixtureBuilder}. The fixture location may be
+ * overridden by the <code>aedict.fixture</code> system property. Kanjidic
+ * has no matchers, it is benchmarked by the {@link KanjidicSearchBenchmark}.
+ * Tatoeba is not benchmarked as it requires the complete Tatoeba export to
+ * index.
+ * @author Martin Vysny
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LuceneSearchBenchmark {
+
+    /**
+     * The benchmarked searches. English EDICT searches are either exact or
+     * substring searches.
+     */
+    public static enum SearchCase {
+
+        EdictJapaneseExact(DictTypeEnum.Edict, true, MatcherEnum.Exact),
+        EdictJapaneseStartsWith(DictTypeEnum.Edict, true, MatcherEnum.StartsWith),
+        EdictJapaneseEndsWith(DictTypeEnum.Edict, true, MatcherEnum.EndsWith),
+        EdictJapaneseSubstring(DictTypeEnum.Edict, true, MatcherEnum.Substring),
+        EdictEnglishExact(DictTypeEnum.Edict, false, MatcherEnum.Exact),
+        EdictEnglishSubstring(DictTypeEnum.Edict, false, MatcherEnum.Substring),
+        TanakaJapaneseExact(DictTypeEnum.Tanaka, true, MatcherEnum.Exact),
+        TanakaJapaneseStartsWith(DictTypeEnum.Tanaka, true, MatcherEnum.StartsWith),
+        TanakaJapaneseEndsWith(DictTypeEnum.Tanaka, true, MatcherEnum.EndsWith),
+        TanakaJapaneseSubstring(DictTypeEnum.Tanaka, true, MatcherEnum.Substring),
+        TanakaEnglishExact(DictTypeEnum.Tanaka, false, MatcherEnum.Exact),
+        TanakaEnglishStartsWith(DictTypeEnum.Tanaka, false, MatcherEnum.StartsWith),
+        TanakaEnglishEndsWith(DictTypeEnum.Tanaka, false, MatcherEnum.EndsWith),
+        TanakaEnglishSubstring(DictTypeEnum.Tanaka, false, MatcherEnum.Substring);
+        final DictTypeEnum dictType;
+        final boolean isJapanese;
+        final MatcherEnum matcher;
+
+        private SearchCase(final DictTypeEnum dictType, final boolean isJapanese, final MatcherEnum matcher) {
+            this.dictType = dictType;
+            this.isJapanese = isJapanese;
+            this.matcher = matcher;
+        }
+
+        SearchQuery newQuery() {
+            if (dictType == DictTypeEnum.Edict) {
+                return isJapanese ? SearchQuery.searchJpEdict("はは", matcher) : SearchQuery.searchEnEdict("mother", matcher == MatcherEnum.Exact);
+            }
+            final SearchQuery result = SearchQuery.searchTanaka(dictType, isJapanese ? "花" : "flower", isJapanese, RomanizationEnum.Hepburn, null);
+            result.matcher = matcher;
+            return result;
+        }
+    }
+    @Param
+    public SearchCase searchCase;
+    private LuceneSearch search;
+    private SearchQuery query;
+
+    @Setup
+    public void setup() throws IOException {
+        search = FixtureBuilder.open(searchCase.dictType);
+        query = searchCase.newQuery();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        search.close();
+    }
+
+    @Benchmark
+    public List<DictEntry> search() throws IOException {
+        return search.search(query);
+    }
+}
@@ -19,12 +19,27 @@ package sk.baka.aedict.dict;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.zip.DataFormatException;
 import org.apache.lucene.document.CompressionTools;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.SetBasedFieldSelector;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
 import sk.baka.aedict.util.Iso6393Codes;
 import sk.baka.autils.ListBuilder;
 import sk.baka.autils.MiscUtils;
@@ -52,30 +67,57 @@ public enum DictTypeEnum {
         }
 
         @Override
-        public String[] getLuceneQuery(SearchQuery query) {
-            final ListBuilder sb = new ListBuilder(" OR ");
+        protected Query[] newQueries(SearchQuery query) {
+            final boolean exact = usesExactTerms(query);
+            final List<Query> alternatives = new ArrayList<Query>();
             for (final String q : query.query) {
+                if (exact) {
+                    final String[] exactTerms = q.trim().split("\\s+AND\\s+");
+                    final List<Query> terms = new ArrayList<Query>();
+                    for (final String term : exactTerms) {
+                        terms.add(new TermQuery(new Term(EDICT_ENGLISH_EXACT, term.trim().toLowerCase())));
+                    }
+                    // the exact field has no norms, all hits would score the
+                    // same: score the hits by the analyzed contents instead
+                    alternatives.add(QueryBuilder.scored(QueryBuilder.all(terms), QueryBuilder.allTerms("contents", exactTerms)));
+                    continue;
+                }
+                final String[] terms = q.trim().split(" AND ");
                 if (query.isJapanese) {
-                    if (q.contains(" AND ")) {
-                        final ListBuilder lb = new ListBuilder(" AND ");
-                        for (final String term : q.split(" AND ")) {
-                            lb.add("jp:" + getJpSearchTerm(term.trim(), query.matcher));
-                        }
-                        sb.add("(" + lb + ")");
-                    } else {
-                        sb.add("jp:\"" + getJpSearchTerm(q.trim(), query.matcher) + "\"");
+                    for (int i = 0; i < terms.length; i++) {
+                        terms[i] = getJpSearchTerm(terms[i].trim(), query.matcher);
                     }
+                    alternatives.add(QueryBuilder.allTerms("jp", terms));
                 } else {
-                    if (q.contains(" AND ")) {
-                        sb.add("(" + q.trim() + ")");
-                    } else {
-                        sb.add("\"" + q.trim() + "\"");
+                    alternatives.add(QueryBuilder.allTerms("contents", terms));
+                }
+            }
+            // the common:t / common:f split is handled by getPreferredTerm()
+            return new Query[]{QueryBuilder.any(alternatives)};
+        }
+
+        @Override
+        public boolean usesExactTerms(SearchQuery query) {
+            if (query.isJapanese || query.matcher != MatcherEnum.Exact) {
+                return false;
+            }
+            for (final String q : query.query) {
+                for (final String term : q.trim().split("\\s+AND\\s+")) {
+                    if (!isEnglishExactTerm(term.trim().toLowerCase())) {
+                        return false;
                     }
                 }
             }
+            return true;
+        }
+
+        private final Term commonTerm = new Term("common", "t");
+
+        @Override
+        public Term getPreferredTerm() {
             // first the common words are returned, then return all the rest
             // fixes http://code.google.com/p/aedict/issues/detail?id=47
-            return new String[]{"(" + sb + ") AND common:t", "(" + sb + ") AND common:f"};
+            return commonTerm;
         }
 
         @Override
@@ -99,7 +141,8 @@ public enum DictTypeEnum {
 
         @Override
         public DictEntry getEntry(Document doc, String langCode) {
-            return parseEdictEntry(doc.get("contents"));
+            // indexes created by an older indexer lack the senses field
+            return EdictLine.parse(doc.get("contents")).toEntry(doc.getBinaryValue(EDICT_SENSES));
         }
 
         @Override
@@ -112,23 +155,17 @@ public enum DictTypeEnum {
             }
             // check the special English Edict processing, see MatcherEnum.Exact
             // for details.
-            int lastIndex = 0;
-            final String _line = entry.english.toLowerCase();
-            int indexOfQuery = _line.indexOf(query, lastIndex);
+            final String line = entry.english;
+            int indexOfQuery = MatcherEnum.indexOfIgnoreCase(line, query, 0);
             while (indexOfQuery >= 0) {
-                if (!isWordPart(skipWhitespaces(_line, indexOfQuery - 1, -1)) && !isWordPart(skipWhitespaces(_line, indexOfQuery + query.length(), 1))) {
+                if (!isEnglishWordPart(skipWhitespaces(line, indexOfQuery - 1, -1)) && !isEnglishWordPart(skipWhitespaces(line, indexOfQuery + query.length(), 1))) {
                     return true;
                 }
-                lastIndex = indexOfQuery + 1;
-                indexOfQuery = _line.indexOf(query, lastIndex);
+                indexOfQuery = MatcherEnum.indexOfIgnoreCase(line, query, indexOfQuery + 1);
             }
             return false;
         }
 
-        private boolean isWordPart(final char c) {
-            return c == '-' || c == '\'' || c == '.' || c == ',' || Character.isLetter(c);
-        }
-
         private char skipWhitespaces(final String line, final int charIndex, final int direction) {
             for (int i = charIndex; i >= 0 && i < line.length(); i += direction) {
                 final char c = line.charAt(i);
@@ -145,36 +182,32 @@ public enum DictTypeEnum {
     Kanjidic {
 
         @Override
-        public String[] getLuceneQuery(SearchQuery q) {
-            // q.query can be null in case we are performing e.g. a pure SKIP
-            // lookup (see the SkipActivity for details)
-            final ListBuilder qb = new ListBuilder(" AND ");
+        protected Query[] newQueries(SearchQuery q) {
+            final List<Query> qb = new ArrayList<Query>();
             if (q.query != null) {
                 if (q.query.length != 1) {
                     throw new IllegalStateException("Kanjidic search requires a single kanji character search");
                 }
-                qb.add("kanji:\"" + q.query[0].trim() + "\"");
+                qb.add(QueryBuilder.field("kanji", q.query[0].trim()));
             }
             if (q.strokeCount != null) {
                 final int plusMinus = q.strokesPlusMinus == null ? 0 : q.strokesPlusMinus;
                 if ((plusMinus > 3) || (plusMinus < 0)) {
                     throw new IllegalStateException("Invalid value: " + q.strokesPlusMinus);
                 }
-                final String sc;
                 if (plusMinus > 0) {
-                    sc = "[" + (q.strokeCount - plusMinus) + " TO " + (q.strokeCount + plusMinus) +"]";
+                    qb.add(new TermRangeQuery("strokes", String.valueOf(q.strokeCount - plusMinus), String.valueOf(q.strokeCount + plusMinus), true, true));
                 } else {
-                    sc = String.valueOf(q.strokeCount);
+                    qb.add(QueryBuilder.field("strokes", String.valueOf(q.strokeCount)));
                 }
-                qb.add("(strokes:" + sc + ")");
             }
             if (q.skip != null) {
-                qb.add("skip:" + q.skip);
+                qb.add(QueryBuilder.field("skip", q.skip));
             }
             if (q.radical != null) {
-                qb.add("radical:" + q.radical);
+                qb.add(QueryBuilder.field("radical", String.valueOf(q.radical)));
             }
-            return new String[]{qb.toString()};
+            return new Query[]{QueryBuilder.all(qb)};
         }
 
         @Override
@@ -202,8 +235,7 @@ public enum DictTypeEnum {
             // http://www.csse.monash.edu.au/~jwb/kanjidic.html
             try {
                 final char kanji = doc.get("kanji").charAt(0);
-                String reading = CompressionTools.decompressString(doc.getBinaryValue("reading"));
-                final String namereading = CompressionTools.decompressString(doc.getBinaryValue("namereading"));
+                final String reading = getReading(doc);
                 final int radicalNumber = Integer.parseInt(doc.get("radical"));
                 // the strokes count is a space-separated list of strokes. First
                 // number denotes a correct number of strokes, following numbers
@@ -215,15 +247,31 @@ public enum DictTypeEnum {
                 }
                 final String skip = doc.get("skip");
                 final String english = CompressionTools.decompressString(doc.getBinaryValue("english"));
+                return new KanjidicEntry(String.valueOf(kanji), reading, english, radicalNumber, strokeCount, skip, grade);
+            } catch (DataFormatException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        @Override
+        String getReading(Document doc) {
+            try {
+                final String reading = CompressionTools.decompressString(doc.getBinaryValue("reading"));
+                final String namereading = CompressionTools.decompressString(doc.getBinaryValue("namereading"));
                 if (namereading.length() != 0) {
-                    reading = reading + ", [" + namereading + "]";
+                    return reading + ", [" + namereading + "]";
                 }
-                return new KanjidicEntry(String.valueOf(kanji), reading, english, radicalNumber, strokeCount, skip, grade);
+                return reading;
             } catch (DataFormatException ex) {
                 throw new RuntimeException(ex);
             }
         }
 
+        @Override
+        public FieldSelector getFieldSelector() {
+            return KANJIDIC_FIELDS;
+        }
+
         @Override
         public boolean matches(DictEntry entry, boolean isJapanese, String string, MatcherEnum matcher) {
             // just ignore the substring matching, it should be never used with
@@ -232,7 +280,7 @@ public enum DictTypeEnum {
             if (isJapanese) {
                 return entry.kanji.equals(string);
             }
-            return entry.english.toLowerCase().contains(string);
+            return MatcherEnum.indexOfIgnoreCase(entry.english, string, 0) >= 0;
         }
     },
     /**
@@ -241,28 +289,20 @@ public enum DictTypeEnum {
     Tanaka {
 
         @Override
-        public String[] getLuceneQuery(SearchQuery query) {
-            final ListBuilder result = new ListBuilder(" OR ");
-            for (final String q : query.trim().query) {
-		final String[] qs = q.split("\\s+AND\\s+");
+        protected Query[] newQueries(SearchQuery query) {
+            final List<Query> result = new ArrayList<Query>();
+            for (final String q : query.query) {
+                final String[] qs = q.trim().split("\\s+AND\\s+");
                 if (query.isJapanese) {
-		    add(result, "japanese", qs);
-		    add(result, "jp-deinflected", qs);
+                    result.add(QueryBuilder.allTerms("japanese", qs));
+                    result.add(QueryBuilder.allTerms("jp-deinflected", qs));
                 } else {
-		    add(result, "english", qs);
+                    result.add(QueryBuilder.allTerms("english", qs));
                 }
             }
-            return new String[]{result.toString()};
+            return new Query[]{QueryBuilder.any(result)};
         }
 
-	private void add(final ListBuilder bu, final String prefix, final String[] andTerms) {
-	    final ListBuilder b = new ListBuilder(" AND ");
-	    for(final String term: andTerms) {
-		b.add(prefix+":\""+term.trim()+"\"");
-	    }
-	    bu.add("("+b.toString()+")");
-	}
-
         @Override
         public String getDefaultDictionaryLoc() {
             return "index-tanaka";
@@ -286,13 +326,17 @@ public enum DictTypeEnum {
         public DictEntry getEntry(Document doc, String langCode) {
             final String japanese = doc.get("japanese");
             final String english = doc.get("english");
-            final byte[] b = doc.getBinaryValue("kana");
-            try {
-                final String reading = b == null ? null : CompressionTools.decompressString(b);
-                return new TanakaDictEntry(japanese, reading, english, doc.get("jp-deinflected"));
-            } catch (DataFormatException ex) {
-                throw new RuntimeException(ex);
-            }
+            return new TanakaDictEntry(japanese, getReading(doc), english, doc.get("jp-deinflected"));
+        }
+
+        @Override
+        String getReading(Document doc) {
+            return decompressKana(doc);
+        }
+
+        @Override
+        public FieldSelector getFieldSelector() {
+            return TANAKA_FIELDS;
         }
 
         @Override
@@ -307,28 +351,20 @@ public enum DictTypeEnum {
     Tatoeba {
 
         @Override
-        public String[] getLuceneQuery(SearchQuery query) {
-            final ListBuilder result = new ListBuilder(" OR ");
-            for (final String q : query.trim().query) {
-		final String[] qs = q.split("\\s+AND\\s+");
+        protected Query[] newQueries(SearchQuery query) {
+            final List<Query> result = new ArrayList<Query>();
+            for (final String q : query.query) {
+                final String[] qs = q.trim().split("\\s+AND\\s+");
                 if (query.isJapanese) {
-		    add(result, "japanese", qs);
-		    add(result, "jp-deinflected", qs);
+                    result.add(QueryBuilder.allTerms("japanese", qs));
+                    result.add(QueryBuilder.allTerms("jp-deinflected", qs));
                 } else {
-		    add(result, "translations", qs);
+                    result.add(QueryBuilder.allTerms("translations", qs));
                 }
             }
-            return new String[]{result.toString()};
+            return new Query[]{QueryBuilder.any(result)};
         }
 
-	private void add(final ListBuilder bu, final String prefix, final String[] andTerms) {
-	    final ListBuilder b = new ListBuilder(" AND ");
-	    for(final String term: andTerms) {
-		b.add(prefix+":\""+term.trim()+"\"");
-	    }
-	    bu.add("("+b.toString()+")");
-	}
-
         @Override
         public String getDefaultDictionaryLoc() {
             return "index-tatoeba";
@@ -368,13 +404,17 @@ public enum DictTypeEnum {
             if (english == null) {
                 english = translations;
             }
-            final byte[] b = doc.getBinaryValue("kana");
-            try {
-                final String reading = b == null ? null : CompressionTools.decompressString(b);
-                return new TanakaDictEntry(japanese, reading, english, doc.get("jp-deinflected"));
-            } catch (DataFormatException ex) {
-                throw new RuntimeException(ex);
-            }
+            return new TanakaDictEntry(japanese, getReading(doc), english, doc.get("jp-deinflected"));
+        }
+
+        @Override
+        String getReading(Document doc) {
+            return decompressKana(doc);
+        }
+
+        @Override
+        public FieldSelector getFieldSelector() {
+            return TATOEBA_FIELDS;
         }
 
         @Override
@@ -387,17 +427,130 @@ public enum DictTypeEnum {
      * A base http:// location of the dictionary files.
      */
     public static final String DICT_BASE_LOCATION_URL = "http://baka.sk/aedict/dictionaries/";
+    /**
+     * Loads the KANJIDIC fields.
+     */
+    private static final FieldSelector KANJIDIC_FIELDS = newFieldSelector("kanji", "strokes", "radical", "skip", "grade", "reading", "namereading", "english");
+    /**
+     * Loads the Tanaka Corpus fields.
+     */
+    private static final FieldSelector TANAKA_FIELDS = newFieldSelector("japanese", "english", "jp-deinflected", "kana");
+    /**
+     * Loads the Tatoeba fields.
+     */
+    private static final FieldSelector TATOEBA_FIELDS = newFieldSelector("japanese", "translations", "jp-deinflected", "kana");
+
+    private static FieldSelector newFieldSelector(final String... fields) {
+        // the fields are loaded eagerly: every caller builds the entry right
+        // away, a lazy field would only cost an extra seek
+        return new SetBasedFieldSelector(new HashSet<String>(Arrays.asList(fields)), Collections.<String>emptySet());
+    }
+
+    /**
+     * Decompresses the "kana" field of the Tanaka and Tatoeba documents.
+     *
+     * @param doc
+     *            the document
+     * @return the kana reading, null if the document has none.
+     */
+    private static String decompressKana(final Document doc) {
+        final byte[] b = doc.getBinaryValue("kana");
+        try {
+            return b == null ? null : CompressionTools.decompressString(b);
+        } catch (DataFormatException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Builds Lucene queries which match given query as close as possible.
+     * The {@link #getPreferredTerm() preferred term} restriction is not part
+     * of the queries.
+     *
+     * @param query
+     *            the query.
+     * @return the list of queries, never null nor empty. If multiple queries
+     *         are returned they have to be executed in given order. An item
+     *         is null if the query has nothing to search for (e.g. an English
+     *         stop word).
+     */
+    protected abstract Query[] newQueries(final SearchQuery query);
+    /**
+     * Checks if given query is answered by matching whole
+     * {@link #getEnglishExactTerms(String) exact terms} stored in the index.
+     * Such query retrieves only documents which really match the query, thus
+     * there is no need to retrieve more documents than the number of results
+     * requested.
+     *
+     * @param query
+     *            the query.
+     * @return true if {@link #getQueries(SearchQuery)} searches the
+     *         {@link #EDICT_ENGLISH_EXACT} field.
+     */
+    public boolean usesExactTerms(final SearchQuery query) {
+        return false;
+    }
+
+    /**
+     * Documents containing this term are listed before all other matching
+     * documents, regardless of their score.
+     *
+     * @return the term, null if the documents are ordered by score only.
+     */
+    public Term getPreferredTerm() {
+        return null;
+    }
 
     /**
-     * Returns a Lucene query which matches given query as close as possible.
+     * Maximum number of cached queries.
+     */
+    private static final int QUERY_CACHE_SIZE = 64;
+    /**
+     * Caches recently built queries. Maps {@link #queryKey(SearchQuery)} to
+     * the result of {@link #newQueries(SearchQuery)}. Access must be
+     * synchronized on the map itself.
+     */
+    private static final Map<List<Object>, Query[]> QUERY_CACHE = new LinkedHashMap<List<Object>, Query[]>(QUERY_CACHE_SIZE, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, Query[]> eldest) {
+            return size() > QUERY_CACHE_SIZE;
+        }
+    };
+
+    private static List<Object> queryKey(final SearchQuery q) {
+        // copy the query array: the key must not change when the query is
+        // modified later on
+        return Arrays.asList(q.dictType, q.query == null ? null : Arrays.asList(q.query.clone()), q.isJapanese, q.matcher, q.strokeCount, q.strokesPlusMinus, q.skip, q.radical);
+    }
+
+    /**
+     * Returns Lucene queries which match given query as close as possible.
+     * The queries are cached - repeating a search does not build the queries
+     * again.
      *
      * @param query
      *            the query.
-     * @return the Apache Lucene query, or a list of queries. Must not be null
-     *         nor empty. If multiple queries are returned they have to be
-     *         executed in given order.
+     * @return the list of queries, never null nor empty. If multiple queries
+     *         are returned they have to be executed in given order. An item
+     *         is null if the query has nothing to search for (e.g. an English
+     *         stop word). The returned queries must not be modified.
      */
-    public abstract String[] getLuceneQuery(final SearchQuery query);
+    public final Query[] getQueries(final SearchQuery query) {
+        final List<Object> key = queryKey(query);
+        synchronized (QUERY_CACHE) {
+            final Query[] cached = QUERY_CACHE.get(key);
+            if (cached != null) {
+                return cached.clone();
+            }
+        }
+        final Query[] result = newQueries(query);
+        synchronized (QUERY_CACHE) {
+            QUERY_CACHE.put(key, result);
+        }
+        return result.clone();
+    }
 
     /**
      * The default dictionary location. A directory name without the
@@ -449,6 +602,28 @@ public enum DictTypeEnum {
      */
     public abstract DictEntry getEntry(final Document doc, final String langCode);
 
+    /**
+     * Selects stored fields loaded by the searcher. Fields which are not
+     * needed to construct the entry are not loaded at all.
+     *
+     * @return the field selector, null if all fields are loaded.
+     */
+    public FieldSelector getFieldSelector() {
+        return null;
+    }
+
+    /**
+     * Returns the reading of given document, without decompressing other
+     * fields.
+     *
+     * @param doc
+     *            the lucene document, not null.
+     * @return the {@link DictEntry#reading} value.
+     */
+    String getReading(final Document doc) {
+        return getEntry(doc, null).reading;
+    }
+
     /**
      * Returns a dictionary entry from a Lucene document, from a proper
      * dictionary file.
@@ -478,26 +653,25 @@ public enum DictTypeEnum {
      *         case of a parsing error.
      */
     public DictEntry tryGetEntry(final Document doc, final SearchQuery query) {
-        final DictEntry entry = tryGetEntry(doc, query.langCode);
-        if (!entry.isValid() || MiscUtils.isBlank(query.query)) {
-            return entry;
-        }
-	for (final String q : query.query) {
-	    if (matchesHandlesAnd(entry, query.isJapanese, q, query.matcher)) {
-		return entry;
-	    }
-	}
-        return null;
+        return tryGetEntry(doc, query.langCode, new QueryMatcher(this, query));
     }
 
-    protected final boolean matchesHandlesAnd(final DictEntry entry, final boolean isJapanese, final String query, final MatcherEnum matcher){
-	    final String[] qt = query.split("\\s+AND\\s+");
-	    for (final String term : qt) {
-		if (!matches(entry, isJapanese, term.trim().toLowerCase(), matcher)) {
-		    return false;
-		}
-	    }
-	    return true;
+    /**
+     * Returns a parsed entry from given document, if it matches given
+     * compiled query.
+     *
+     * @param doc
+     *            the Lucene document.
+     * @param langCode
+     *            the language code, see {@link SearchQuery#langCode}.
+     * @param matcher
+     *            the compiled query.
+     * @return an entry instance if matched, null if unmatched, error entry in
+     *         case of a parsing error.
+     */
+    DictEntry tryGetEntry(final Document doc, final String langCode, final QueryMatcher matcher) {
+        final DictEntry entry = tryGetEntry(doc, langCode);
+        return matcher.matches(entry) ? entry : null;
     }
 
     /**
@@ -518,35 +692,158 @@ public enum DictTypeEnum {
      */
     protected abstract boolean matches(final DictEntry entry, final boolean isJapanese, final String query, final MatcherEnum matcher);
 
-    public static EdictEntry parseEdictEntry(final String edictEntry) {
-        // the entry is in one of the two following formats:
-        // KANJI [hiragana] / english meaning
-        // katakana / english meaning
-        final int firstSlash = edictEntry.indexOf('/');
-        if (firstSlash < 0) {
-            throw new IllegalArgumentException("Failed to parse " + edictEntry + ": missing slash");
-        }
-        String englishPart = edictEntry.substring(firstSlash + 1).trim();
-        while (englishPart.endsWith("/")) {
-            // drop trailing slashes
-            englishPart = englishPart.substring(0, englishPart.length() - 1);
-        }
-        final String jpPart = edictEntry.substring(0, firstSlash).trim();
-        final int openSquareBracket = jpPart.indexOf('[');
-        final String kanji;
-        final String reading;
-        if (openSquareBracket < 0) {
-            // just a katakana reading, no kanji
-            kanji = null;
-            reading = jpPart;
-        } else {
-            kanji = jpPart.substring(0, openSquareBracket).trim();
-            final int closingSquareBracket = jpPart.indexOf(']', openSquareBracket);
-            if (closingSquareBracket < 0) {
-                throw new IllegalArgumentException("Parameter edictEntry: invalid value " + edictEntry + ": missing ']'");
+    /**
+     * EDICT only: the field containing {@link #getEnglishExactTerms(String)
+     * exact terms} of the English part of the entry.
+     */
+    public static final String EDICT_ENGLISH_EXACT = "english-exact";
+
+    private static boolean isEnglishWordPart(final char c) {
+        return c == '-' || c == '\'' || c == '.' || c == ',' || Character.isLetter(c);
+    }
+
+    /**
+     * Splits the English part of an EDICT entry into terms which can be
+     * matched by an exact English search. The exact search matches a query
+     * which is surrounded by non-word characters (e.g. a slash, a semicolon
+     * or a parenthesis), thus a query matches exactly when it is equal to one
+     * of these terms.
+     *
+     * @param english
+     *            the English part of the EDICT entry.
+     * @return a set of lower-case terms, never null.
+     */
+    public static Set<String> getEnglishExactTerms(final String english) {
+        final Set<String> result = new HashSet<String>();
+        final String line = english.toLowerCase();
+        int start = -1;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (isEnglishWordPart(c) || Character.isWhitespace(c)) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                addTrimmed(result, line, start, i);
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            addTrimmed(result, line, start, line.length());
+        }
+        return result;
+    }
+
+    private static void addTrimmed(final Set<String> result, final String line, int start, int end) {
+        while (start < end && Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        if (start < end) {
+            result.add(line.substring(start, end));
+        }
+    }
+
+    /**
+     * Checks if given lower-case query may be equal to one of the
+     * {@link #getEnglishExactTerms(String) exact terms}.
+     *
+     * @param term
+     *            the query, trimmed and lower-case.
+     * @return true if the query consists of word characters and whitespaces
+     *         only.
+     */
+    static boolean isEnglishExactTerm(final String term) {
+        if (term.length() == 0 || !isEnglishWordPart(term.charAt(0)) || !isEnglishWordPart(term.charAt(term.length() - 1))) {
+            return false;
+        }
+        for (int i = 0; i < term.length(); i++) {
+            final char c = term.charAt(i);
+            if (!isEnglishWordPart(c) && !Character.isWhitespace(c)) {
+                return false;
             }
-            reading = jpPart.substring(openSquareBracket + 1, closingSquareBracket).trim();
         }
-        return new EdictEntry(kanji, reading, englishPart);
+        return true;
+    }
+
+    /**
+     * EDICT only: the field containing a stable {@link #getEdictEntryId(String) id} of the entry.
+     * Allows to update the index in place, see {@link EdictDelta}.
+     */
+    public static final String EDICT_ID = "id";
+    /**
+     * EDICT only: the stored field containing the parsed markings and senses
+     * of the entry, see {@link EdictEntry#getSenses()}.
+     */
+    public static final String EDICT_SENSES = "senses";
+
+    /**
+     * Computes a stable id of an EDICT entry. The id depends on the entry
+     * line only, thus a modified line gets a new id.
+     *
+     * @param edictLine
+     *            the EDICT line, not null.
+     * @return the id, a hexadecimal string.
+     */
+    public static String getEdictEntryId(final String edictLine) {
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(edictLine.getBytes("UTF-8"));
+        } catch (Exception ex) {
+            // MD5 and UTF-8 are always available
+            throw new RuntimeException(ex);
+        }
+        final StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (final byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0x0F, 16));
+            sb.append(Character.forDigit(b & 0x0F, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates a Lucene document for given EDICT line.
+     *
+     * @param edictLine
+     *            the EDICT line, not null.
+     * @return the document, never null.
+     * @throws RuntimeException
+     *             if the line cannot be parsed.
+     */
+    public static Document newEdictDocument(final String edictLine) {
+        final EdictLine entry = EdictLine.parse(edictLine);
+        final Document doc = new Document();
+        doc.add(new Field("contents", edictLine, Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field("common", entry.isCommon() ? "t" : "f", Field.Store.NO, Field.Index.NOT_ANALYZED));
+        final ListBuilder jp = new ListBuilder(" ");
+        final String kanji = entry.getKanji();
+        if (kanji != null) {
+            jp.add("W" + kanji + "W");
+        }
+        jp.add("W" + entry.getReading() + "W");
+        doc.add(new Field("jp", jp.toString(), Field.Store.NO, Field.Index.ANALYZED));
+        // allows exact English search without filtering out substring matches
+        final String english = entry.getEnglish();
+        for (final String term : getEnglishExactTerms(english)) {
+            doc.add(new Field(EDICT_ENGLISH_EXACT, term, Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+        }
+        doc.add(new Field(EDICT_ID, getEdictEntryId(edictLine), Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+        doc.add(new Field(EDICT_SENSES, EdictSenses.parse(english, entry.isCommon()).encode(), Field.Store.YES));
+        return doc;
+    }
+
+    /**
+     * Parses given EDICT line, see {@link EdictLine} for details.
+     *
+     * @param edictEntry
+     *            the EDICT line, not null.
+     * @return the entry, never null.
+     * @throws IllegalArgumentException
+     *             if the line cannot be parsed.
+     */
+    public static EdictEntry parseEdictEntry(final String edictEntry) {
+        return EdictLine.parse(edictEntry).toEntry();
     }
 }
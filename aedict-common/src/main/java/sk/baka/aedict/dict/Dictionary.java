@@ -132,6 +132,7 @@ public class Dictionary implements Serializable {
 	 * Deletes this dictionary from the SD Card.
 	 */
 	public void delete() throws IOException {
+		SearcherRegistry.invalidate(this);
 		MiscUtils.deleteDir(getDictionaryLocation());
 	}
 
@@ -163,7 +164,7 @@ public class Dictionary implements Serializable {
 			final String[] dictionaries = aedict.list(new FilenameFilter() {
 
 				public boolean accept(File dir, String filename) {
-					return filename.toLowerCase().startsWith("index");
+					return filename.toLowerCase().startsWith("index") && new File(dir, filename).isDirectory();
 				}
 			});
 			for (final String dict : dictionaries) {
@@ -203,6 +204,25 @@ public class Dictionary implements Serializable {
 		return downloadURL + ".version";
 	}
 
+	/**
+	 * Returns an URL of the {@link EdictDelta delta file} which updates the
+	 * dictionary from given version to the current version.
+	 * 
+	 * @param fromVersion
+	 *            the version of the installed dictionary, not null.
+	 * @return the URL, never null. The file may not exist on the server.
+	 */
+	public URL getDeltaURL(final String fromVersion) {
+		final String versionURL = getVersionFileURL();
+		// strip the ending .zip.version
+		final String base = versionURL.substring(0, versionURL.length() - ".zip.version".length());
+		try {
+			return new URL(base + "-" + fromVersion.trim() + ".delta");
+		} catch (MalformedURLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	public String downloadVersion() throws IOException {
 		return new String(MiscUtils.readFully(new URL(getVersionFileURL()).openStream()), "UTF-8");
 	}
@@ -73,7 +73,8 @@ public class DictionaryVersions {
             if (!other.versions.containsKey(d)) {
                 continue;
             }
-            if (versions.get(d).compareTo(other.versions.get(d)) < 0) {
+            // the published .version files end with a newline
+            if (versions.get(d).trim().compareTo(other.versions.get(d).trim()) < 0) {
                 dict.add(d);
             }
         }
@@ -0,0 +1,328 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.dict;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import sk.baka.aedict.util.Check;
+import sk.baka.autils.MiscUtils;
+
+/**
+ * Differences between two EDICT snapshots. Allows to update an installed
+ * EDICT index in place, instead of downloading the whole index again. The
+ * entries are identified by {@link DictTypeEnum#getEdictEntryId(String)}: a
+ * modified entry is removed and added again.
+ * <p/>
+ * The delta is stored as a gzipped UTF-8 text file. The first line is a
+ * header <code>AEDICT-DELTA 1 fromVersion toVersion</code>, each following
+ * line is either <code>-id</code> (a removed entry) or <code>+line</code>
+ * (an added EDICT line).
+ *
+ * @author Martin Vysny
+ */
+public final class EdictDelta {
+
+    private static final String HEADER = "AEDICT-DELTA 1";
+    /**
+     * Version of the EDICT snapshot this delta applies to.
+     */
+    public final String fromVersion;
+    /**
+     * Version of the EDICT snapshot produced by this delta.
+     */
+    public final String toVersion;
+    /**
+     * Ids of removed entries.
+     */
+    public final Set<String> removed = new LinkedHashSet<String>();
+    /**
+     * Added EDICT lines.
+     */
+    public final List<String> added = new ArrayList<String>();
+
+    /**
+     * Creates an empty delta.
+     *
+     * @param fromVersion
+     *            version of the EDICT snapshot this delta applies to, not
+     *            null, must not contain whitespaces.
+     * @param toVersion
+     *            version of the EDICT snapshot produced by this delta, not
+     *            null, must not contain whitespaces.
+     */
+    public EdictDelta(final String fromVersion, final String toVersion) {
+        Check.checkNotNull("fromVersion", fromVersion);
+        Check.checkNotNull("toVersion", toVersion);
+        this.fromVersion = fromVersion.trim();
+        this.toVersion = toVersion.trim();
+    }
+
+    /**
+     * Checks if given EDICT line is indexed.
+     *
+     * @param line
+     *            the line
+     * @return true if the line is an entry, false if it is a comment, a blank
+     *         line or the "？？？" placeholder.
+     */
+    private static boolean isEntry(final String line) {
+        return !line.startsWith("#") && !MiscUtils.isBlank(line) && !line.startsWith("　？？？");
+    }
+
+    /**
+     * Computes differences between two EDICT snapshots.
+     *
+     * @param from
+     *            the older snapshot.
+     * @param fromVersion
+     *            version of the older snapshot.
+     * @param to
+     *            the newer snapshot.
+     * @param toVersion
+     *            version of the newer snapshot.
+     * @return the delta, never null.
+     * @throws IOException
+     *             on i/o error.
+     */
+    public static EdictDelta diff(final BufferedReader from, final String fromVersion, final BufferedReader to, final String toVersion) throws IOException {
+        final EdictDelta result = new EdictDelta(fromVersion, toVersion);
+        final Map<String, String> old = new LinkedHashMap<String, String>();
+        for (String line = from.readLine(); line != null; line = from.readLine()) {
+            if (isEntry(line)) {
+                old.put(DictTypeEnum.getEdictEntryId(line), line);
+            }
+        }
+        for (String line = to.readLine(); line != null; line = to.readLine()) {
+            if (isEntry(line) && old.remove(DictTypeEnum.getEdictEntryId(line)) == null) {
+                result.added.add(line);
+            }
+        }
+        result.removed.addAll(old.keySet());
+        return result;
+    }
+
+    /**
+     * Writes the delta. The stream is not closed.
+     *
+     * @param out
+     *            the stream to write to.
+     * @throws IOException
+     *             on i/o error.
+     */
+    public void write(final OutputStream out) throws IOException {
+        final GZIPOutputStream gz = new GZIPOutputStream(out);
+        final Writer w = new BufferedWriter(new OutputStreamWriter(gz, "UTF-8"));
+        w.write(HEADER + " " + fromVersion + " " + toVersion + "\n");
+        for (final String id : removed) {
+            w.write("-" + id + "\n");
+        }
+        for (final String line : added) {
+            w.write("+" + line + "\n");
+        }
+        w.flush();
+        gz.finish();
+    }
+
+    /**
+     * Reads a delta written by {@link #write(OutputStream)}. The stream is
+     * not closed.
+     *
+     * @param in
+     *            the stream to read.
+     * @return the delta, never null.
+     * @throws IOException
+     *             on i/o error or if the stream does not contain a delta.
+     */
+    public static EdictDelta read(final InputStream in) throws IOException {
+        final BufferedReader r = new BufferedReader(new InputStreamReader(new GZIPInputStream(in), "UTF-8"));
+        final String header = r.readLine();
+        if (header == null || !header.startsWith(HEADER + " ")) {
+            throw new IOException("Not an EDICT delta: " + header);
+        }
+        final String[] versions = header.substring(HEADER.length()).trim().split("\\s+");
+        if (versions.length != 2) {
+            throw new IOException("Invalid EDICT delta header: " + header);
+        }
+        final EdictDelta result = new EdictDelta(versions[0], versions[1]);
+        for (String line = r.readLine(); line != null; line = r.readLine()) {
+            if (line.length() == 0) {
+                continue;
+            }
+            switch (line.charAt(0)) {
+                case '-':
+                    result.removed.add(line.substring(1));
+                    break;
+                case '+':
+                    result.added.add(line.substring(1));
+                    break;
+                default:
+                    throw new IOException("Invalid EDICT delta line: " + line);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks if given index can be updated by a delta.
+     *
+     * @param reader
+     *            the index reader
+     * @return true if the index contains the {@link DictTypeEnum#EDICT_ID}
+     *         field, false if it was created by an older indexer.
+     */
+    private static boolean hasIds(final IndexReader reader) {
+        return reader.getFieldNames(IndexReader.FieldOption.INDEXED).contains(DictTypeEnum.EDICT_ID);
+    }
+
+    /**
+     * Updates the EDICT index stored in given directory. Searchers which are
+     * already opened keep seeing the old index contents; the
+     * {@link SearcherRegistry} re-opens the index on the next acquire. The
+     * {@link WordIndex} and the {@link SuggestionIndex} are rebuilt from the
+     * updated index.
+     *
+     * @param indexDir
+     *            the EDICT index directory.
+     * @throws IOException
+     *             on i/o error or if the index does not support in-place
+     *             updates (it was created by an older indexer). The index is
+     *             left unchanged in such case.
+     */
+    public void apply(final File indexDir) throws IOException {
+        final Directory directory = FSDirectory.open(indexDir);
+        try {
+            final IndexReader reader = IndexReader.open(directory, true);
+            try {
+                if (!hasIds(reader)) {
+                    throw new IOException("The index in " + indexDir + " does not contain entry ids, a full download is required");
+                }
+            } finally {
+                MiscUtils.closeQuietly(reader);
+            }
+            final IndexWriter writer = new IndexWriter(directory, new StandardAnalyzer(LuceneSearch.LUCENE_VERSION), false, IndexWriter.MaxFieldLength.UNLIMITED);
+            boolean committed = false;
+            try {
+                for (final String id : removed) {
+                    writer.deleteDocuments(new Term(DictTypeEnum.EDICT_ID, id));
+                }
+                for (final String line : added) {
+                    writer.addDocument(DictTypeEnum.newEdictDocument(line));
+                }
+                writer.commit();
+                committed = true;
+                // the word and suggestion indexes do not reflect the changes
+                for (final String name : INDEX_FILES) {
+                    final File file = new File(indexDir, name);
+                    if (file.exists() && !file.delete()) {
+                        throw new IOException("Failed to delete " + file);
+                    }
+                }
+            } finally {
+                if (committed) {
+                    writer.close();
+                } else {
+                    // leave the index unchanged
+                    writer.rollback();
+                }
+            }
+            // closing the writer may merge segments and renumber documents,
+            // thus a fresh reader is required
+            final IndexReader updated = IndexReader.open(directory, true);
+            try {
+                rebuild(updated, indexDir);
+            } finally {
+                MiscUtils.closeQuietly(updated);
+            }
+        } finally {
+            MiscUtils.closeQuietly(directory);
+        }
+    }
+
+    /**
+     * The files derived from the EDICT index contents.
+     */
+    private static final String[] INDEX_FILES = {WordIndex.FILE_NAME, SuggestionIndex.FILE_NAME};
+
+    /**
+     * Rebuilds the {@link WordIndex} and the {@link SuggestionIndex}. The
+     * files are written to a temporary directory and renamed into the index
+     * directory when complete, thus a half-written file is never opened.
+     *
+     * @param reader
+     *            the updated index.
+     * @param indexDir
+     *            the EDICT index directory.
+     * @throws IOException
+     *             on i/o error.
+     */
+    private static void rebuild(final IndexReader reader, final File indexDir) throws IOException {
+        final File tmp = new File(indexDir.getAbsoluteFile().getParentFile(), "." + indexDir.getName() + ".rebuild");
+        if (tmp.exists()) {
+            // a leftover of an interrupted update
+            MiscUtils.deleteDir(tmp);
+        }
+        if (!tmp.mkdirs()) {
+            throw new IOException("Failed to create " + tmp);
+        }
+        try {
+            WordIndex.write(reader, tmp);
+            SuggestionIndex.write(reader, tmp);
+            for (final String name : INDEX_FILES) {
+                final File file = new File(tmp, name);
+                final File target = new File(indexDir, name);
+                if (!file.renameTo(target)) {
+                    throw new IOException("Failed to rename " + file + " to " + target);
+                }
+            }
+        } finally {
+            try {
+                MiscUtils.deleteDir(tmp);
+            } catch (IOException ex) {
+                // ignore, the directory is deleted by the next update
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EdictDelta{" + fromVersion + ".." + toVersion + ": -" + removed.size() + " +" + added.size() + "}";
+    }
+}
@@ -22,8 +22,6 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.StringTokenizer;
-import sk.baka.autils.MiscUtils;
 
 /**
  * An EDICT entry. The EDICT entry format is described at http://www.csse.monash.edu.au/~jwb/edict_doc.html
@@ -36,6 +34,11 @@ import sk.baka.autils.MiscUtils;
 public final class EdictEntry extends DictEntry {
 
     private static final long serialVersionUID = 1L;
+    /**
+     * The parsed structure of the English part. Loaded from the index or
+     * parsed on demand.
+     */
+    private volatile EdictSenses senses;
 
     /**
      * Creates new entry instance.
@@ -54,6 +57,28 @@ public final class EdictEntry extends DictEntry {
         super(kanji, reading, english, isCommon);
     }
 
+    /**
+     * Creates new entry instance.
+     *
+     * @param kanji
+     *            the kanji expression, may be null if the entry does not
+     *            contain any kanji
+     * @param reading
+     *            the reading, in hiragana or katakana.
+     * @param english
+     *            the English translation
+     * @param isCommon
+     *            if true then this word is a common one.
+     * @param senses
+     *            the structure of the English part stored in the index, see
+     *            {@link EdictSenses#encode()}. If null or invalid then the
+     *            English part is parsed on demand.
+     */
+    EdictEntry(final String kanji, final String reading, final String english, final boolean isCommon, final byte[] senses) {
+        super(kanji, reading, english, isCommon);
+        this.senses = EdictSenses.decode(senses, english);
+    }
+
     /**
      * Creates new entry instance.
      *
@@ -92,7 +117,7 @@ public final class EdictEntry extends DictEntry {
      * @return true if this entry is a ichidan verb, false otherwise.
      */
     public boolean isIchidan() {
-        return isValid() && getMarkings().contains("v1");
+        return isValid() && senses().hasMarking("v1");
     }
 
     /**
@@ -101,7 +126,7 @@ public final class EdictEntry extends DictEntry {
      * @return true if this entry is a godan verb, false otherwise.
      */
     public boolean isGodan() {
-        return isValid() && english.contains("v5");
+        return isValid() && senses().isGodan();
     }
 
     /**
@@ -119,7 +144,8 @@ public final class EdictEntry extends DictEntry {
      * @return true if this entry describes the "suru" irregular verb.
      */
     public boolean isSuru() {
-        return getMarkings().contains("vs-i") || getMarkings().contains("vs-s");
+        final EdictSenses s = senses();
+        return s.hasMarking("vs-i") || s.hasMarking("vs-s");
     }
 
     /**
@@ -128,7 +154,7 @@ public final class EdictEntry extends DictEntry {
      * @return true if this entry describes the "kuru" irregular verb.
      */
     public boolean isKuru() {
-        return getMarkings().contains("vk");
+        return senses().hasMarking("vk");
     }
 
     /**
@@ -138,7 +164,22 @@ public final class EdictEntry extends DictEntry {
      * @return a list of markings, never null, may be empty.
      */
     public List<String> getMarkings() {
-        return getMarkings(english);
+        return senses().getMarkings();
+    }
+
+    /**
+     * Returns the structure of the English part, parsing it on the first
+     * invocation if it was not loaded from the index.
+     *
+     * @return the structure, never null.
+     */
+    private EdictSenses senses() {
+        EdictSenses result = senses;
+        if (result == null) {
+            result = EdictSenses.parse(english, isCommon);
+            senses = result;
+        }
+        return result;
     }
 
     /**
@@ -155,7 +196,7 @@ public final class EdictEntry extends DictEntry {
         findMarkings(str, result);
         return result;
     }
-    private static final String[] MARKING_LIST = new String[]{"adj-i", "adj-na", "adj-no", "adj-pn", "adj-t",
+    static final String[] MARKING_LIST = new String[]{"adj-i", "adj-na", "adj-no", "adj-pn", "adj-t",
         "adj-f", "adj", "adv", "adv-n", "adv-to", "aux",
         "aux-v", "aux-adj", "conj", "ctr", "exp", "id",
         "int", "iv", "n", "n-adv", "n-pref", "n-suf", "n-t",
@@ -209,30 +250,14 @@ public final class EdictEntry extends DictEntry {
         return str.length();
     }
 
+    /**
+     * Returns the senses of this entry.
+     *
+     * @return a list of senses, each sense is a list of glosses. Never null,
+     *         may be empty.
+     */
     public List<List<String>> getSenses() {
-        final List<List<String>> result = new ArrayList<List<String>>();
-        int currentSense = 1;
-        // remove the initial markings part
-        final String e = english.substring(findMarkings(english, new ArrayList<String>()));
-        for (final StringTokenizer senses = new StringTokenizer(e, ";/"); senses.hasMoreTokens();) {
-            final String sense = senses.nextToken();
-            if (MiscUtils.isBlank(sense)) {
-                continue;
-            }
-            int[] newCurrentSense = findSenseNumber(sense);
-            if (newCurrentSense != null) {
-                currentSense = newCurrentSense[0];
-            }
-            while (result.size() < currentSense) {
-                result.add(new ArrayList<String>());
-            }
-            if ("(P)".equalsIgnoreCase(sense)) {
-                // skip the trailing (P) mark
-                continue;
-            }
-            result.get(currentSense - 1).add(newCurrentSense != null ? sense.substring(newCurrentSense[1]).trim() : sense.trim());
-        }
-        return result;
+        return senses().getSenses(english);
     }
 
     static int[] findSenseNumber(String str) {
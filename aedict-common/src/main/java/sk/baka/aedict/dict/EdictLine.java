@@ -0,0 +1,201 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.dict;
+
+/**
+ * A parsed EDICT line. The line is parsed in a single pass which records
+ * just the boundaries of the kanji expression, the reading and the English
+ * part as offsets into the original line; the strings are created only when
+ * requested. The line is in one of the two following formats:
+ * <ul>
+ * <li><code>KANJI [hiragana] /english meaning/</code></li>
+ * <li><code>katakana /english meaning/</code></li>
+ * </ul>
+ * The fields are trimmed; trailing slashes of the English part are dropped.
+ * The object is immutable and thread-safe.
+ *
+ * @author Martin Vysny
+ */
+public final class EdictLine {
+
+    private final String line;
+    /**
+     * The kanji expression range, <code>kanjiStart</code> is -1 if the line
+     * contains no kanji.
+     */
+    private final int kanjiStart;
+    private final int kanjiEnd;
+    private final int readingStart;
+    private final int readingEnd;
+    private final int englishStart;
+    private final int englishEnd;
+
+    private EdictLine(final String line, final int kanjiStart, final int kanjiEnd, final int readingStart, final int readingEnd, final int englishStart, final int englishEnd) {
+        this.line = line;
+        this.kanjiStart = kanjiStart;
+        this.kanjiEnd = kanjiEnd;
+        this.readingStart = readingStart;
+        this.readingEnd = readingEnd;
+        this.englishStart = englishStart;
+        this.englishEnd = englishEnd;
+    }
+
+    /**
+     * Parses given EDICT line.
+     *
+     * @param line
+     *            the line, not null.
+     * @return the parsed line, never null.
+     * @throws IllegalArgumentException
+     *             if the line is not a valid EDICT entry.
+     */
+    public static EdictLine parse(final String line) {
+        final int firstSlash = line.indexOf('/');
+        if (firstSlash < 0) {
+            throw new IllegalArgumentException("Failed to parse " + line + ": missing slash");
+        }
+        // the English part, without trailing slashes
+        final int englishStart = skipSpaces(line, firstSlash + 1, line.length());
+        int englishEnd = trimEnd(line, englishStart, line.length());
+        while (englishEnd > englishStart && line.charAt(englishEnd - 1) == '/') {
+            englishEnd--;
+        }
+        // the japanese part
+        final int jpStart = skipSpaces(line, 0, firstSlash);
+        final int jpEnd = trimEnd(line, jpStart, firstSlash);
+        int openSquareBracket = -1;
+        for (int i = jpStart; i < jpEnd; i++) {
+            if (line.charAt(i) == '[') {
+                openSquareBracket = i;
+                break;
+            }
+        }
+        if (openSquareBracket < 0) {
+            // just a katakana reading, no kanji
+            return new EdictLine(line, -1, -1, jpStart, jpEnd, englishStart, englishEnd);
+        }
+        int closingSquareBracket = -1;
+        for (int i = openSquareBracket; i < jpEnd; i++) {
+            if (line.charAt(i) == ']') {
+                closingSquareBracket = i;
+                break;
+            }
+        }
+        if (closingSquareBracket < 0) {
+            throw new IllegalArgumentException("Parameter edictEntry: invalid value " + line + ": missing ']'");
+        }
+        final int readingStart = skipSpaces(line, openSquareBracket + 1, closingSquareBracket);
+        return new EdictLine(line, jpStart, trimEnd(line, jpStart, openSquareBracket), readingStart, trimEnd(line, readingStart, closingSquareBracket), englishStart, englishEnd);
+    }
+
+    /**
+     * Skips characters removed by {@link String#trim()} at the beginning of
+     * given range.
+     */
+    private static int skipSpaces(final String line, int start, final int end) {
+        while (start < end && line.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Skips characters removed by {@link String#trim()} at the end of given
+     * range.
+     */
+    private static int trimEnd(final String line, final int start, int end) {
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the original line.
+     *
+     * @return the line, never null.
+     */
+    public String getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the kanji expression.
+     *
+     * @return the kanji expression, null if the line contains no kanji.
+     */
+    public String getKanji() {
+        return kanjiStart < 0 ? null : line.substring(kanjiStart, kanjiEnd);
+    }
+
+    /**
+     * Returns the reading.
+     *
+     * @return the reading in hiragana or katakana, never null.
+     */
+    public String getReading() {
+        return line.substring(readingStart, readingEnd);
+    }
+
+    /**
+     * Returns the English part, including the POS markings and the sense
+     * numbers, senses separated by slashes.
+     *
+     * @return the English part, never null.
+     */
+    public String getEnglish() {
+        return line.substring(englishStart, englishEnd);
+    }
+
+    /**
+     * Checks if the entry is a common one, that is, the English part
+     * contains the <code>(P)</code> marking.
+     *
+     * @return true if the entry is common, false otherwise.
+     */
+    public boolean isCommon() {
+        final int index = line.indexOf("(P)", englishStart);
+        return index >= 0 && index + 3 <= englishEnd;
+    }
+
+    /**
+     * Creates an EDICT entry from this line.
+     *
+     * @return the entry, never null.
+     */
+    public EdictEntry toEntry() {
+        return new EdictEntry(getKanji(), getReading(), getEnglish(), isCommon());
+    }
+
+    /**
+     * Creates an EDICT entry from this line.
+     *
+     * @param senses
+     *            the structure of the English part stored in the index,
+     *            may be null.
+     * @return the entry, never null.
+     */
+    EdictEntry toEntry(final byte[] senses) {
+        return new EdictEntry(getKanji(), getReading(), getEnglish(), isCommon(), senses);
+    }
+
+    @Override
+    public String toString() {
+        return line;
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.dict;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sk.baka.autils.MiscUtils;
+
+/**
+ * The parsed structure of the English part of an {@link EdictEntry}: the
+ * part-of-speech and other markings, and the senses with their glosses. The
+ * glosses are stored as offsets into the English part, the strings are
+ * created only when {@link #getSenses(String)} is called.
+ * <p/>
+ * The indexer stores the {@link #encode() encoded} structure in the
+ * {@link DictTypeEnum#EDICT_SENSES} field, thus the English part need not
+ * be parsed at runtime. The encoding is a version byte followed by unsigned
+ * variable-length integers: the flags, the marking count, indices of the
+ * markings in {@link EdictEntry#MARKING_LIST}, the end of the markings, the
+ * sense count, the gloss count and a (sense, start, end) triple for each
+ * gloss. The object is immutable and thread-safe.
+ *
+ * @author Martin Vysny
+ */
+final class EdictSenses implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int VERSION = 1;
+    /**
+     * The English part contains "v5", see {@link EdictEntry#isGodan()}.
+     */
+    private static final int FLAG_GODAN = 1;
+    private static final Map<String, Integer> MARKING_INDEX = new HashMap<String, Integer>();
+
+    static {
+        for (int i = EdictEntry.MARKING_LIST.length - 1; i >= 0; i--) {
+            MARKING_INDEX.put(EdictEntry.MARKING_LIST[i], i);
+        }
+    }
+    /**
+     * Indices of the markings in {@link EdictEntry#MARKING_LIST}, in the
+     * order of appearance.
+     */
+    private final byte[] markings;
+    /**
+     * A bit set of the markings, indexed by the marking index.
+     */
+    private final long[] markingBits = new long[(EdictEntry.MARKING_LIST.length + 63) / 64];
+    private final int flags;
+    private final int markingsEnd;
+    private final int senseCount;
+    /**
+     * (sense number, start, end) triples, one for each gloss.
+     */
+    private final int[] glosses;
+
+    private EdictSenses(final byte[] markings, final int flags, final int markingsEnd, final int senseCount, final int[] glosses) {
+        this.markings = markings;
+        this.flags = flags;
+        this.markingsEnd = markingsEnd;
+        this.senseCount = senseCount;
+        this.glosses = glosses;
+        for (final byte m : markings) {
+            markingBits[m >> 6] |= 1L << (m & 63);
+        }
+    }
+
+    /**
+     * Parses the English part of an EDICT entry.
+     *
+     * @param english
+     *            the English part, not null.
+     * @param isCommon
+     *            if true then the entry is common and the "P" marking is
+     *            listed first.
+     * @return the structure, never null.
+     */
+    static EdictSenses parse(final String english, final boolean isCommon) {
+        final List<String> markingList = new ArrayList<String>();
+        if (isCommon) {
+            markingList.add("P");
+        }
+        final int markingsEnd = EdictEntry.findMarkings(english, markingList);
+        final byte[] markings = new byte[markingList.size()];
+        for (int i = 0; i < markings.length; i++) {
+            markings[i] = (byte) MARKING_INDEX.get(markingList.get(i)).intValue();
+        }
+        // the senses are separated by slashes and semicolons
+        int[] glosses = new int[24];
+        int glossCount = 0;
+        int senseCount = 0;
+        int currentSense = 1;
+        for (int start = markingsEnd; start < english.length();) {
+            if (isSenseDelimiter(english.charAt(start))) {
+                start++;
+                continue;
+            }
+            int end = start;
+            while (end < english.length() && !isSenseDelimiter(english.charAt(end))) {
+                end++;
+            }
+            final String sense = english.substring(start, end);
+            final int glossStart = start;
+            start = end;
+            if (MiscUtils.isBlank(sense)) {
+                continue;
+            }
+            final int[] newCurrentSense = EdictEntry.findSenseNumber(sense);
+            if (newCurrentSense != null) {
+                currentSense = newCurrentSense[0];
+            }
+            senseCount = Math.max(senseCount, currentSense);
+            if ("(P)".equalsIgnoreCase(sense)) {
+                // skip the trailing (P) mark
+                continue;
+            }
+            int s = newCurrentSense != null ? Math.min(glossStart + newCurrentSense[1], end) : glossStart;
+            int e = end;
+            while (s < e && english.charAt(s) <= ' ') {
+                s++;
+            }
+            while (e > s && english.charAt(e - 1) <= ' ') {
+                e--;
+            }
+            if (glossCount * 3 + 3 > glosses.length) {
+                final int[] g = new int[glosses.length * 2];
+                System.arraycopy(glosses, 0, g, 0, glosses.length);
+                glosses = g;
+            }
+            glosses[glossCount * 3] = currentSense;
+            glosses[glossCount * 3 + 1] = s;
+            glosses[glossCount * 3 + 2] = e;
+            glossCount++;
+        }
+        final int[] g = new int[glossCount * 3];
+        System.arraycopy(glosses, 0, g, 0, g.length);
+        return new EdictSenses(markings, english.contains("v5") ? FLAG_GODAN : 0, markingsEnd, senseCount, g);
+    }
+
+    private static boolean isSenseDelimiter(final char c) {
+        return c == '/' || c == ';';
+    }
+
+    /**
+     * Encodes the structure for storing in the index.
+     *
+     * @return the encoded structure, never null.
+     */
+    byte[] encode() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(16 + glosses.length * 2);
+        out.write(VERSION);
+        writeVInt(out, flags);
+        writeVInt(out, markings.length);
+        out.write(markings, 0, markings.length);
+        writeVInt(out, markingsEnd);
+        writeVInt(out, senseCount);
+        writeVInt(out, glosses.length / 3);
+        for (final int i : glosses) {
+            writeVInt(out, i);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeVInt(final ByteArrayOutputStream out, int i) {
+        while ((i & ~0x7F) != 0) {
+            out.write((i & 0x7F) | 0x80);
+            i >>>= 7;
+        }
+        out.write(i);
+    }
+
+    /**
+     * Decodes a structure produced by {@link #encode()}.
+     *
+     * @param data
+     *            the encoded structure, may be null.
+     * @param english
+     *            the English part the structure was created for.
+     * @return the structure, null if the data is null, was encoded by an
+     *         unsupported version or does not match the English part.
+     */
+    static EdictSenses decode(final byte[] data, final String english) {
+        if (data == null || data.length == 0 || data[0] != VERSION) {
+            return null;
+        }
+        try {
+            final int[] position = new int[]{1};
+            final int flags = readVInt(data, position);
+            final byte[] markings = new byte[readVInt(data, position)];
+            for (int i = 0; i < markings.length; i++) {
+                markings[i] = data[position[0]++];
+                if (markings[i] < 0 || markings[i] >= EdictEntry.MARKING_LIST.length) {
+                    return null;
+                }
+            }
+            final int markingsEnd = readVInt(data, position);
+            final int senseCount = readVInt(data, position);
+            final int[] glosses = new int[readVInt(data, position) * 3];
+            for (int i = 0; i < glosses.length; i++) {
+                glosses[i] = readVInt(data, position);
+            }
+            if (markingsEnd > english.length()) {
+                return null;
+            }
+            for (int i = 0; i < glosses.length; i += 3) {
+                if (glosses[i] < 1 || glosses[i] > senseCount || glosses[i + 1] > glosses[i + 2] || glosses[i + 2] > english.length()) {
+                    return null;
+                }
+            }
+            return new EdictSenses(markings, flags, markingsEnd, senseCount, glosses);
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            // truncated data
+            return null;
+        }
+    }
+
+    private static int readVInt(final byte[] data, final int[] position) {
+        int result = 0;
+        for (int shift = 0;; shift += 7) {
+            final byte b = data[position[0]++];
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Returns the markings.
+     *
+     * @return a new list of markings, in the order of appearance.
+     */
+    List<String> getMarkings() {
+        final List<String> result = new ArrayList<String>(markings.length);
+        for (final byte m : markings) {
+            result.add(EdictEntry.MARKING_LIST[m]);
+        }
+        return result;
+    }
+
+    /**
+     * Checks if the entry is annotated with given marking.
+     *
+     * @param marking
+     *            the marking, not null.
+     * @return true if the marking is present, false otherwise.
+     */
+    boolean hasMarking(final String marking) {
+        final Integer index = MARKING_INDEX.get(marking);
+        return index != null && (markingBits[index >> 6] & (1L << (index & 63))) != 0;
+    }
+
+    /**
+     * Checks if the English part contains the "v5" string.
+     *
+     * @return true if the entry is a godan verb.
+     */
+    boolean isGodan() {
+        return (flags & FLAG_GODAN) != 0;
+    }
+
+    /**
+     * Returns the senses.
+     *
+     * @param english
+     *            the English part this structure was created for.
+     * @return a list of senses, each sense is a list of glosses.
+     */
+    List<List<String>> getSenses(final String english) {
+        final List<List<String>> result = new ArrayList<List<String>>(senseCount);
+        for (int i = 0; i < senseCount; i++) {
+            result.add(new ArrayList<String>());
+        }
+        for (int i = 0; i < glosses.length; i += 3) {
+            result.get(glosses[i] - 1).add(english.substring(glosses[i + 1], glosses[i + 2]));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import sk.baka.aedict.util.Check;
+import sk.baka.aedict.util.IOExceptionWithCause;
+import sk.baka.autils.MiscUtils;
+
+/**
+ * Searches multiple dictionaries of the same type at once, for example all
+ * {@link Dictionary#listEdictInstalled() installed EDICT dictionaries}. Each
+ * dictionary is searched by its own {@link SearcherRegistry#acquire(DictTypeEnum, File, boolean) searcher}
+ * on a bounded executor. The results are merged in the order the
+ * dictionaries finish, thus a slow dictionary does not delay results of the
+ * fast ones; an entry with the same kanji and reading as an entry of an
+ * already merged dictionary is dropped. Entries of a single dictionary and
+ * error entries are never dropped.
+ * <p/>
+ * The object is thread-safe, provided that the executor is.
+ *
+ * @author Martin Vysny
+ */
+public final class FederatedSearch {
+
+    /**
+     * Receives results of particular dictionaries, as soon as they are
+     * available. Invoked in the thread which performs the search.
+     *
+     * @author Martin Vysny
+     */
+    public static interface Listener {
+
+        /**
+         * A dictionary has finished the search.
+         *
+         * @param location
+         *            the dictionary index directory.
+         * @param entries
+         *            the entries found by the dictionary, without entries
+         *            already reported by other dictionaries. Never null, may
+         *            be empty.
+         */
+        void onResults(File location, List<DictEntry> entries);
+
+        /**
+         * A dictionary has failed to search.
+         *
+         * @param location
+         *            the dictionary index directory.
+         * @param ex
+         *            the failure cause.
+         */
+        void onFailure(File location, IOException ex);
+    }
+    /**
+     * Maximum number of threads of an executor created by
+     * {@link #newExecutor()}. Searches are I/O bound, more threads would
+     * just compete for the storage.
+     */
+    public static final int MAX_THREADS = 3;
+    private final DictTypeEnum dictType;
+    private final List<File> locations;
+    private final ExecutorService executor;
+    private final boolean sort;
+
+    /**
+     * Creates a new federated search.
+     *
+     * @param dictionaries
+     *            the dictionaries to search, not null, not empty. All
+     *            dictionaries must be of the same type.
+     * @param executor
+     *            runs the per-dictionary searches, not null. The executor is
+     *            not shut down by this class.
+     * @param sort
+     *            if true then results of each dictionary are sorted.
+     */
+    public FederatedSearch(final Collection<Dictionary> dictionaries, final ExecutorService executor, final boolean sort) {
+        this(getType(dictionaries), getLocations(dictionaries), executor, sort);
+    }
+
+    /**
+     * Creates a new federated search over indices stored in given
+     * directories.
+     *
+     * @param dictType
+     *            the type of all dictionaries, not null.
+     * @param locations
+     *            the index directories, not null, not empty.
+     * @param executor
+     *            runs the per-dictionary searches, not null. The executor is
+     *            not shut down by this class.
+     * @param sort
+     *            if true then results of each dictionary are sorted.
+     */
+    public FederatedSearch(final DictTypeEnum dictType, final Collection<File> locations, final ExecutorService executor, final boolean sort) {
+        Check.checkNotNull("dictType", dictType);
+        Check.checkNotNull("locations", locations);
+        Check.checkNotNull("executor", executor);
+        Check.checkTrue("locations must not be empty", !locations.isEmpty());
+        this.dictType = dictType;
+        this.locations = new ArrayList<File>(locations);
+        this.executor = executor;
+        this.sort = sort;
+    }
+
+    private static DictTypeEnum getType(final Collection<Dictionary> dictionaries) {
+        Check.checkNotNull("dictionaries", dictionaries);
+        Check.checkTrue("dictionaries must not be empty", !dictionaries.isEmpty());
+        final DictTypeEnum result = dictionaries.iterator().next().dte;
+        for (final Dictionary d : dictionaries) {
+            Check.checkTrue("dictionaries must be of the same type", d.dte == result);
+        }
+        return result;
+    }
+
+    private static List<File> getLocations(final Collection<Dictionary> dictionaries) {
+        final List<File> result = new ArrayList<File>(dictionaries.size());
+        for (final Dictionary d : dictionaries) {
+            result.add(d.getDictionaryLocation());
+        }
+        return result;
+    }
+
+    /**
+     * Creates an executor suitable for federated searches: at most
+     * {@link #MAX_THREADS} daemon threads.
+     *
+     * @return the executor, never null.
+     */
+    public static ExecutorService newExecutor() {
+        return Executors.newFixedThreadPool(MAX_THREADS, new ThreadFactory() {
+
+            private int counter = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "FederatedSearch-" + (++counter));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Returns index directories of the dictionaries being searched.
+     *
+     * @return unmodifiable list of directories.
+     */
+    public List<File> getLocations() {
+        return Collections.unmodifiableList(locations);
+    }
+
+    /**
+     * Returns the key identifying duplicate entries.
+     */
+    static String getKey(final DictEntry entry) {
+        return (entry.kanji == null ? "" : entry.kanji) + '\t' + entry.reading;
+    }
+
+    private List<DictEntry> searchDictionary(final File location, final List<SearchQuery> queries, final int maxResults) throws IOException {
+        final LuceneSearch lucene = SearcherRegistry.acquire(dictType, location, sort);
+        try {
+            final List<DictEntry> result = new ArrayList<DictEntry>();
+            for (final SearchQuery query : queries) {
+                if (result.size() >= maxResults) {
+                    break;
+                }
+                result.addAll(lucene.search(query, maxResults - result.size()));
+            }
+            return result;
+        } finally {
+            MiscUtils.closeQuietly(lucene);
+        }
+    }
+
+    /**
+     * Searches all dictionaries. Blocks until all dictionaries finish.
+     *
+     * @param queries
+     *            the queries, not null. Each dictionary performs the queries
+     *            in this order, until it finds <code>maxResults</code>
+     *            entries.
+     * @param maxResults
+     *            the maximum number of entries returned by a single
+     *            dictionary.
+     * @param listener
+     *            notified as soon as a dictionary finishes, may be null.
+     * @return the merged entries, ordered by the time the dictionaries
+     *         finished, then by the order of the dictionary results. Never
+     *         null, may be empty.
+     * @throws IOException
+     *             if all dictionaries failed to search (the first failure is
+     *             thrown). {@link InterruptedIOException} if the thread was
+     *             interrupted.
+     */
+    public List<DictEntry> search(final List<SearchQuery> queries, final int maxResults, final Listener listener) throws IOException {
+        Check.checkNotNull("queries", queries);
+        final CompletionService<List<DictEntry>> completion = new ExecutorCompletionService<List<DictEntry>>(executor);
+        final Map<Future<List<DictEntry>>, File> pending = new HashMap<Future<List<DictEntry>>, File>();
+        for (final File location : locations) {
+            pending.put(completion.submit(new Callable<List<DictEntry>>() {
+
+                public List<DictEntry> call() throws Exception {
+                    return searchDictionary(location, queries, maxResults);
+                }
+            }), location);
+        }
+        final List<DictEntry> merged = new ArrayList<DictEntry>();
+        // keys of the entries of already merged dictionaries
+        final Set<String> mergedKeys = new HashSet<String>();
+        IOException failure = null;
+        int failed = 0;
+        try {
+            while (!pending.isEmpty()) {
+                final Future<List<DictEntry>> future = completion.take();
+                final File location = pending.remove(future);
+                final List<DictEntry> entries;
+                try {
+                    entries = future.get();
+                } catch (ExecutionException ex) {
+                    final IOException cause = ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOExceptionWithCause("Failed to search " + location + ": " + ex.getCause(), ex.getCause());
+                    if (failure == null) {
+                        failure = cause;
+                    }
+                    failed++;
+                    if (listener != null) {
+                        listener.onFailure(location, cause);
+                    }
+                    continue;
+                }
+                final List<DictEntry> added = new ArrayList<DictEntry>(entries.size());
+                final Set<String> keys = new HashSet<String>();
+                for (final DictEntry entry : entries) {
+                    if (!entry.isValid()) {
+                        added.add(entry);
+                        continue;
+                    }
+                    final String key = getKey(entry);
+                    if (!mergedKeys.contains(key)) {
+                        keys.add(key);
+                        added.add(entry);
+                    }
+                }
+                mergedKeys.addAll(keys);
+                merged.addAll(added);
+                if (listener != null) {
+                    listener.onResults(location, added);
+                }
+            }
+        } catch (InterruptedException ex) {
+            // do not interrupt running searches: an interrupted NIO read
+            // closes the channel of the shared index
+            for (final Future<List<DictEntry>> future : pending.keySet()) {
+                future.cancel(false);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while searching " + pending.values());
+        }
+        if (failed == locations.size()) {
+            throw failure;
+        }
+        return merged;
+    }
+}
@@ -21,18 +21,22 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.queryParser.ParseException;
-import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Searcher;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
@@ -48,10 +52,17 @@ import sk.baka.autils.MiscUtils;
  */
 public final class LuceneSearch implements Closeable {
 
+    /**
+     * The index opened by this object, null if the index is shared via {@link SearcherRegistry}.
+     */
     private final Directory directory;
     private final IndexReader reader;
     private final Searcher searcher;
-    private final QueryParser parser;
+    /**
+     * The shared index, null if this object opened its own index.
+     */
+    private final SearcherRegistry.Generation generation;
+    private boolean closed = false;
     public static final Version LUCENE_VERSION = Version.LUCENE_30;
     /**
      * The dictionary type.
@@ -79,7 +90,25 @@ public final class LuceneSearch implements Closeable {
         directory = FSDirectory.open(new File(dictionaryPath != null ? dictionaryPath : dictType.getDefaultDictionaryPath()));
         reader = IndexReader.open(directory, true);
         searcher = new IndexSearcher(reader);
-        parser = new QueryParser(LUCENE_VERSION, "contents", new StandardAnalyzer(LUCENE_VERSION));
+        generation = null;
+        this.sort = sort;
+    }
+
+    /**
+     * Creates the object which searches an index shared by the {@link SearcherRegistry}.
+     *
+     * @param dictType
+     *            the dictionary we will use for the search.
+     * @param generation
+     *            the shared index, already acquired.
+     * @param sort if true then the result list is always sorted.
+     */
+    LuceneSearch(final DictTypeEnum dictType, final SearcherRegistry.Generation generation, final boolean sort) {
+        this.dictType = dictType;
+        this.generation = generation;
+        directory = null;
+        reader = generation.reader;
+        searcher = generation.searcher;
         this.sort = sort;
     }
 
@@ -110,36 +139,32 @@ public final class LuceneSearch implements Closeable {
     private List<DictEntry> searchInternal(final SearchQuery query, final int maxResults) throws IOException {
         query.validate();
         final List<DictEntry> r = new ArrayList<DictEntry>();
-        final String[] queries = dictType.getLuceneQuery(query);
-        // 5000 is just an approximate value.
-        // we are searching for an exact match. We cannot simply grab the first
-        // "maxResults" results and filter out non-exact results - we can filter
-        // out all results this way, and the real, exact matches, may remain
-        // unretrieved by Lucene. TODO perhaps a better Lucene query might help.
-        final int maxLuceneResults = (query.matcher != MatcherEnum.Substring) && (query.dictType == DictTypeEnum.Edict) && (!query.isJapanese) ? 5000 : maxResults;
+        final Query[] queries = getQueries(query);
+        final int maxLuceneResults = getMaxLuceneResults(query, maxResults);
+        final QueryMatcher matcher = new QueryMatcher(dictType, query);
         int resultsToFind = maxLuceneResults;
-        for (final String q : queries) {
+        for (final Query q : queries) {
             // gradually walk through the queries and fill the result list.
-            final Query parsedQuery;
-            try {
-                parsedQuery = parser.parse(q);
-            } catch (ParseException e) {
-                // not expected - the SearchQuery object should produce valid
-                // query strings... indicates a bug in Aedict code.
-                throw new RuntimeException(e);
+            if (q == null) {
+                // nothing to search for
+                continue;
             }
-            final TopDocs result = searcher.search(parsedQuery, null, resultsToFind);
-            for (final ScoreDoc sd : result.scoreDocs) {
-                final Document doc = searcher.doc(sd.doc);
-                final DictEntry entry = dictType.tryGetEntry(doc, query);
-                if (entry != null) {
-                    r.add(entry);
-                    if (r.size() >= maxResults) {
-                        break;
+            for (final TopDocs result : searchPreferredFirst(q, resultsToFind)) {
+                for (int i = 0; i < result.scoreDocs.length && i < resultsToFind; i++) {
+                    final Document doc = searcher.doc(result.scoreDocs[i].doc, dictType.getFieldSelector());
+                    final DictEntry entry = dictType.tryGetEntry(doc, query.langCode, matcher);
+                    if (entry != null) {
+                        r.add(entry);
+                        if (r.size() >= maxResults) {
+                            break;
+                        }
                     }
                 }
+                resultsToFind = maxLuceneResults - r.size();
+                if (resultsToFind <= 0) {
+                    break;
+                }
             }
-            resultsToFind = maxLuceneResults - r.size();
             if (resultsToFind <= 0) {
                 break;
             }
@@ -150,6 +175,81 @@ public final class LuceneSearch implements Closeable {
         return r;
     }
 
+    /**
+     * Computes how many Lucene hits to retrieve.
+     *
+     * @param query
+     *            the query
+     * @param maxResults
+     *            the maximum number of results to list
+     * @return the number of hits to retrieve.
+     */
+    private int getMaxLuceneResults(final SearchQuery query, final int maxResults) {
+        // the exact terms index returns exact matches only
+        final boolean overfetch = (query.matcher != MatcherEnum.Substring) && (query.dictType == DictTypeEnum.Edict) && (!query.isJapanese) && !(dictType.usesExactTerms(query) && hasExactTerms());
+        // 5000 is just an approximate value.
+        // we are searching for an exact match. We cannot simply grab the first
+        // "maxResults" results and filter out non-exact results - we can filter
+        // out all results this way, and the real, exact matches, may remain
+        // unretrieved by Lucene.
+        return overfetch ? 5000 : maxResults;
+    }
+
+    private Boolean hasExactTerms = null;
+
+    /**
+     * Checks if the index contains the {@link DictTypeEnum#EDICT_ENGLISH_EXACT} field.
+     *
+     * @return true if the field is present, false if the index was created by an older indexer.
+     */
+    private synchronized boolean hasExactTerms() {
+        if (hasExactTerms == null) {
+            hasExactTerms = reader.getFieldNames(IndexReader.FieldOption.INDEXED).contains(DictTypeEnum.EDICT_ENGLISH_EXACT);
+        }
+        return hasExactTerms;
+    }
+
+    /**
+     * Returns Lucene queries for given query.
+     *
+     * @param query
+     *            the query
+     * @return Lucene queries, see {@link DictTypeEnum#getQueries(SearchQuery)} for details.
+     */
+    Query[] getQueries(final SearchQuery query) {
+        if (dictType.usesExactTerms(query) && !hasExactTerms()) {
+            // an index created by an older indexer, without the exact terms. Search for a substring and filter out non-exact matches.
+            final SearchQuery substring = new SearchQuery(query);
+            substring.matcher = MatcherEnum.Substring;
+            return dictType.getQueries(substring);
+        }
+        return dictType.getQueries(query);
+    }
+
+    /**
+     * Performs a single Lucene search. If the dictionary defines a
+     * {@link DictTypeEnum#getPreferredTerm() preferred term}, documents
+     * containing the term are returned first, in a single pass over the
+     * index.
+     *
+     * @param q
+     *            the query
+     * @param numHits
+     *            max number of hits to return, in each group.
+     * @return groups of hits which have to be listed in given order.
+     * @throws IOException
+     *             on I/O error.
+     */
+    TopDocs[] searchPreferredFirst(final Query q, final int numHits) throws IOException {
+        final Term preferred = dictType.getPreferredTerm();
+        if (preferred == null) {
+            return new TopDocs[]{searcher.search(q, null, numHits)};
+        }
+        final PreferredFirstCollector collector = new PreferredFirstCollector(preferred, numHits);
+        searcher.search(q, collector);
+        return collector.topDocs();
+    }
+
     /**
      * Performs a search.
      *
@@ -165,18 +265,139 @@ public final class LuceneSearch implements Closeable {
         try {
             return searchInternal(query, maxResults);
         } catch (IOException ex) {
-            // catch the "read past EOF" IO exception which indicates that the
-            // dictionary files are corrupted. See
-            // http://code.google.com/p/aedict/issues/detail?id=55 for details
-            if ("read past EOF".equals(ex.getMessage())) {
-                throw new IOExceptionWithCause(DICT_FILES_CORRUPTED + ": " + ex.getMessage(), ex);
+            throw translate(ex);
+        }
+    }
+
+    /**
+     * Looks up multiple kanjis in the Kanjidic dictionary. The kanjis are
+     * resolved by a few queries (the kanji terms are OR-ed, at most
+     * {@link BooleanQuery#getMaxClauseCount()} terms per query) instead of a
+     * separate search per kanji. Only usable on a Kanjidic index.
+     *
+     * @param kanjis
+     *            the kanjis to look up, not null.
+     * @param strokes
+     *            if not null then only kanjis with this number of strokes are
+     *            returned, see {@link SearchQuery#kanjiSearch(char, Integer, Integer)}.
+     * @param strokesPlusMinus
+     *            the stroke count tolerance, may be null.
+     * @return maps kanji to its entry. Kanjis not present in the dictionary
+     *         (or not matching the stroke count) and kanjis which failed to
+     *         parse are not present in the map. Never null. The entries are
+     *         not sorted.
+     * @throws IOException
+     *             on I/O error.
+     */
+    public Map<Character, KanjidicEntry> lookupKanjis(final Collection<Character> kanjis, final Integer strokes, final Integer strokesPlusMinus) throws IOException {
+        if (dictType != DictTypeEnum.Kanjidic) {
+            throw new IllegalStateException("Kanji lookup requires the Kanjidic dictionary but got " + dictType);
+        }
+        try {
+            final SearchQuery strokesQuery = new SearchQuery(DictTypeEnum.Kanjidic);
+            strokesQuery.isJapanese = true;
+            strokesQuery.matcher = MatcherEnum.Exact;
+            strokesQuery.strokeCount = strokes;
+            strokesQuery.strokesPlusMinus = strokesPlusMinus;
+            strokesQuery.validate();
+            final Query strokesFilter = getQueries(strokesQuery)[0];
+            final Map<Character, KanjidicEntry> result = new HashMap<Character, KanjidicEntry>(kanjis.size() * 2);
+            final int chunkSize = BooleanQuery.getMaxClauseCount();
+            final List<Query> chunk = new ArrayList<Query>(Math.min(chunkSize, kanjis.size()));
+            for (final Iterator<Character> i = kanjis.iterator(); i.hasNext();) {
+                chunk.add(new TermQuery(new Term("kanji", String.valueOf(i.next()))));
+                if (chunk.size() >= chunkSize || !i.hasNext()) {
+                    final TopDocs docs = searcher.search(QueryBuilder.all(QueryBuilder.any(chunk), strokesFilter), null, chunk.size());
+                    for (final ScoreDoc sd : docs.scoreDocs) {
+                        final DictEntry entry = dictType.tryGetEntry(searcher.doc(sd.doc, dictType.getFieldSelector()), (String) null);
+                        if (entry instanceof KanjidicEntry) {
+                            result.put(((KanjidicEntry) entry).getKanji(), (KanjidicEntry) entry);
+                        }
+                    }
+                    chunk.clear();
+                }
             }
-            throw ex;
+            return result;
+        } catch (IOException ex) {
+            throw translate(ex);
         }
     }
+
+    /**
+     * Loads an entry by its Lucene document number, as stored by the
+     * {@link SuggestionIndex}.
+     *
+     * @param docId
+     *            the document number.
+     * @return the entry, never null. An erroneous entry is returned if the
+     *         document fails to parse.
+     * @throws IOException
+     *             on I/O error.
+     */
+    DictEntry getEntry(final int docId) throws IOException {
+        try {
+            return dictType.tryGetEntry(searcher.doc(docId, dictType.getFieldSelector()), (String) null);
+        } catch (IOException ex) {
+            throw translate(ex);
+        }
+    }
+
+    /**
+     * Provides a meaningful message for an exception thrown by Lucene.
+     *
+     * @param ex
+     *            the exception
+     * @return the exception to throw.
+     */
+    static IOException translate(final IOException ex) {
+        // catch the "read past EOF" IO exception which indicates that the
+        // dictionary files are corrupted. See
+        // http://code.google.com/p/aedict/issues/detail?id=55 for details
+        if ("read past EOF".equals(ex.getMessage())) {
+            return new IOExceptionWithCause(DICT_FILES_CORRUPTED + ": " + ex.getMessage(), ex);
+        }
+        return ex;
+    }
+    /**
+     * Opens a cursor which walks through all results of given query. The
+     * results are listed in the order of relevance, common words first; they
+     * are never sorted. The cursor is valid until this object is closed.
+     *
+     * @param query
+     *            the query to search for.
+     * @return the cursor, never null.
+     */
+    public SearchCursor openCursor(final SearchQuery query) {
+        return openCursor(query, null);
+    }
+
+    /**
+     * Opens a cursor which continues at given position. The cursor is valid
+     * until this object is closed.
+     *
+     * @param query
+     *            the query to search for.
+     * @param position
+     *            the position obtained from {@link SearchCursor#getPosition()},
+     *            may be null - the cursor then starts at the first result.
+     * @return the cursor, never null.
+     */
+    public SearchCursor openCursor(final SearchQuery query, final SearchCursor.Position position) {
+        query.validate();
+        return new SearchCursor(this, dictType, searcher, query, position);
+    }
+
     public static String DICT_FILES_CORRUPTED = "It seems that the dictionary files became corrupted. Please try to delete them and re-download them. Also please check your sd-card for errors.";
 
-    public void close() throws IOException {
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (generation != null) {
+            SearcherRegistry.release(generation);
+            return;
+        }
         searcher.close();
         reader.close();
         directory.close();
@@ -190,14 +411,15 @@ public final class LuceneSearch implements Closeable {
      *            the query
      * @param dictionaryPath
      *            overrides default dictionary location if non-null. An absolute
-     *            os-specific path, e.g. /sdcard/aedict/index.
+     *            os-specific path, e.g. /sdcard/aedict/index. The index is
+     *            shared via the {@link SearcherRegistry}.
      * @param sort if true then the result list will be sorted.
      * @return a result list, never null, may be empty. The list is sorted depending on the value of {@link Config#isSorted()} configuration option.
      * @throws IOException
      *             on I/O error.
      */
     public static List<DictEntry> singleSearch(final SearchQuery query, final String dictionaryPath, final boolean sort) throws IOException {
-        final LuceneSearch s = new LuceneSearch(query.dictType, dictionaryPath, sort);
+        final LuceneSearch s = SearcherRegistry.acquire(query.dictType, new File(dictionaryPath != null ? dictionaryPath : query.dictType.getDefaultDictionaryPath()), sort);
         try {
             return s.search(query);
         } finally {
@@ -18,7 +18,8 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package sk.baka.aedict.dict;
 
 /**
- * Enumerates search modes.
+ * Enumerates search modes. The matching is case-insensitive and does not
+ * allocate any objects.
  * 
  * @author Martin Vysny
  */
@@ -31,7 +32,7 @@ public enum MatcherEnum {
 
         @Override
         public boolean matches(String query, String line) {
-            return line.toLowerCase().contains(query.toLowerCase());
+            return indexOfIgnoreCase(line, query, 0) >= 0;
         }
     },
     /**
@@ -53,10 +54,7 @@ public enum MatcherEnum {
 
         @Override
         public boolean matches(String query, String line) {
-            if (line.length() < query.length()) {
-                return false;
-            }
-            return line.substring(0, query.length()).equalsIgnoreCase(query);
+            return line.regionMatches(true, 0, query, 0, query.length());
         }
     },
     /**
@@ -66,10 +64,8 @@ public enum MatcherEnum {
 
         @Override
         public boolean matches(String query, String line) {
-            if (line.length() < query.length()) {
-                return false;
-            }
-            return line.substring(line.length() - query.length()).equalsIgnoreCase(query);
+            final int start = line.length() - query.length();
+            return start >= 0 && line.regionMatches(true, start, query, 0, query.length());
         }
     };
 
@@ -83,4 +79,28 @@ public enum MatcherEnum {
      * @return true if the line matches the word, false otherwise.
      */
     public abstract boolean matches(final String query, final String line);
+
+    /**
+     * Finds the first occurrence of given query in given line, ignoring the
+     * case. Unlike <code>line.toLowerCase().indexOf(query)</code> no string
+     * is created.
+     *
+     * @param line
+     *            the line to search in
+     * @param query
+     *            the string to search for
+     * @param fromIndex
+     *            the index to start the search from.
+     * @return the index of the first occurrence, -1 if there is none.
+     */
+    static int indexOfIgnoreCase(final String line, final String query, final int fromIndex) {
+        final int length = query.length();
+        final int last = line.length() - length;
+        for (int i = Math.max(fromIndex, 0); i <= last; i++) {
+            if (line.regionMatches(true, i, query, 0, length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
@@ -0,0 +1,130 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.dict;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.util.OpenBitSet;
+
+/**
+ * Collects top hits in two groups in a single pass: documents containing a
+ * preferred term (e.g. <code>common:t</code>) and all other documents. This
+ * replaces two searches <code>query AND common:t</code> and
+ * <code>query AND common:f</code>: the hits within each group are ordered by
+ * score, exactly as the two searches would order them.
+ *
+ * @author Martin Vysny
+ */
+final class PreferredFirstCollector extends Collector {
+
+    /**
+     * Caches documents containing the preferred term, per index segment.
+     * Access must be synchronized on the map itself.
+     */
+    private static final Map<IndexReader, Map<Term, OpenBitSet>> CACHE = new WeakHashMap<IndexReader, Map<Term, OpenBitSet>>();
+    private final Term preferred;
+    private final TopScoreDocCollector preferredHits;
+    private final TopScoreDocCollector otherHits;
+    private OpenBitSet currentBits;
+
+    /**
+     * Creates the collector.
+     *
+     * @param preferred
+     *            documents containing this term are collected to the first
+     *            group.
+     * @param numHits
+     *            collect at most this amount of hits in each group.
+     */
+    public PreferredFirstCollector(final Term preferred, final int numHits) {
+        this.preferred = preferred;
+        preferredHits = TopScoreDocCollector.create(numHits, true);
+        otherHits = TopScoreDocCollector.create(numHits, true);
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        preferredHits.setScorer(scorer);
+        otherHits.setScorer(scorer);
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        if (currentBits.fastGet(doc)) {
+            preferredHits.collect(doc);
+        } else {
+            otherHits.collect(doc);
+        }
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        preferredHits.setNextReader(reader, docBase);
+        otherHits.setNextReader(reader, docBase);
+        currentBits = getBits(reader, preferred);
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return false;
+    }
+
+    /**
+     * Returns the collected hits.
+     *
+     * @return top hits containing the preferred term, followed by top hits
+     *         of the other documents.
+     */
+    public TopDocs[] topDocs() {
+        return new TopDocs[]{preferredHits.topDocs(), otherHits.topDocs()};
+    }
+
+    private static OpenBitSet getBits(final IndexReader reader, final Term term) throws IOException {
+        synchronized (CACHE) {
+            Map<Term, OpenBitSet> bits = CACHE.get(reader);
+            if (bits == null) {
+                bits = new HashMap<Term, OpenBitSet>();
+                CACHE.put(reader, bits);
+            }
+            OpenBitSet result = bits.get(term);
+            if (result == null) {
+                result = new OpenBitSet(reader.maxDoc());
+                final TermDocs docs = reader.termDocs(term);
+                try {
+                    while (docs.next()) {
+                        result.fastSet(docs.doc());
+                    }
+                } finally {
+                    docs.close();
+                }
+                bits.put(term, result);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.dict;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+/**
+ * Builds Lucene queries directly, without formatting a query string and
+ * parsing it back with the QueryParser. The produced queries are the same as
+ * those the QueryParser produces for the equivalent query strings, with one
+ * difference: the query text is taken literally, Lucene query syntax
+ * characters in the text have no special meaning.
+ *
+ * @author Martin Vysny
+ */
+final class QueryBuilder {
+
+    private QueryBuilder() {
+        throw new AssertionError();
+    }
+    /**
+     * The analyzer used by the indexer.
+     */
+    private static final Analyzer ANALYZER = new StandardAnalyzer(LuceneSearch.LUCENE_VERSION);
+
+    /**
+     * Creates a query matching given text in given field. Equivalent to the
+     * QueryParser's <code>field:"text"</code>.
+     *
+     * @param field
+     *            the field name.
+     * @param text
+     *            the text to search for, analyzed by the {@link StandardAnalyzer}.
+     * @return a {@link TermQuery} if the text is analyzed to a single term, a
+     *         {@link PhraseQuery} for multiple terms, null if the analyzer
+     *         filtered out all terms (e.g. the text is an English stop word).
+     */
+    static Query field(final String field, final String text) {
+        final List<String> terms = new ArrayList<String>();
+        final List<Integer> positions = new ArrayList<Integer>();
+        final TokenStream ts = ANALYZER.tokenStream(field, new StringReader(text));
+        try {
+            final TermAttribute termAtt = ts.addAttribute(TermAttribute.class);
+            final PositionIncrementAttribute posAtt = ts.addAttribute(PositionIncrementAttribute.class);
+            int position = -1;
+            while (ts.incrementToken()) {
+                position += posAtt.getPositionIncrement();
+                terms.add(termAtt.term());
+                positions.add(position);
+            }
+            ts.end();
+            ts.close();
+        } catch (IOException ex) {
+            // StringReader does not throw IOException
+            throw new RuntimeException(ex);
+        }
+        if (terms.isEmpty()) {
+            return null;
+        }
+        if (terms.size() == 1) {
+            return new TermQuery(new Term(field, terms.get(0)));
+        }
+        final PhraseQuery result = new PhraseQuery();
+        for (int i = 0; i < terms.size(); i++) {
+            result.add(new Term(field, terms.get(i)), positions.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Creates a query matching all of given text terms in given field. Equivalent to the
+     * QueryParser's <code>(field:"term1" AND field:"term2" AND ...)</code>.
+     *
+     * @param field
+     *            the field name.
+     * @param terms
+     *            the terms, trimmed before use.
+     * @return the query, null if there is nothing to search for.
+     */
+    static Query allTerms(final String field, final String[] terms) {
+        final List<Query> queries = new ArrayList<Query>(terms.length);
+        for (final String term : terms) {
+            queries.add(field(field, term.trim()));
+        }
+        return all(queries);
+    }
+
+    /**
+     * Joins given queries with the AND operator.
+     *
+     * @param queries
+     *            the queries, null items are ignored.
+     * @return the query, null if there is nothing to search for.
+     */
+    static Query all(final List<? extends Query> queries) {
+        return join(queries, BooleanClause.Occur.MUST);
+    }
+
+    /**
+     * Joins given queries with the AND operator.
+     *
+     * @param queries
+     *            the queries, null items are ignored.
+     * @return the query, null if there is nothing to search for.
+     */
+    static Query all(final Query... queries) {
+        return join(Arrays.asList(queries), BooleanClause.Occur.MUST);
+    }
+
+    /**
+     * Joins given queries with the OR operator.
+     *
+     * @param queries
+     *            the queries, null items are ignored.
+     * @return the query, null if there is nothing to search for.
+     */
+    static Query any(final List<? extends Query> queries) {
+        return join(queries, BooleanClause.Occur.SHOULD);
+    }
+
+    /**
+     * Creates a query matching the same documents as given query, scored by
+     * another query.
+     *
+     * @param query
+     *            the query selecting the documents, not null.
+     * @param score
+     *            adds its score to documents it matches, may be null.
+     * @return the query, never null.
+     */
+    static Query scored(final Query query, final Query score) {
+        if (score == null) {
+            return query;
+        }
+        final BooleanQuery result = new BooleanQuery();
+        result.add(query, BooleanClause.Occur.MUST);
+        result.add(score, BooleanClause.Occur.SHOULD);
+        return result;
+    }
+
+    private static Query join(final List<? extends Query> queries, final BooleanClause.Occur occur) {
+        final BooleanQuery result = new BooleanQuery();
+        Query single = null;
+        for (final Query q : queries) {
+            if (q != null) {
+                result.add(q, occur);
+                single = q;
+            }
+        }
+        switch (result.clauses().size()) {
+            case 0:
+                return null;
+            case 1:
+                // the QueryParser unwraps a single-clause group as well
+                return single;
+            default:
+                return result;
+        }
+    }
+}
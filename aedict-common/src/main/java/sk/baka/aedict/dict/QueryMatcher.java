@@ -0,0 +1,122 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.dict;
+
+import sk.baka.autils.MiscUtils;
+
+/**
+ * A {@link SearchQuery} compiled for matching entries returned by Lucene. The
+ * query strings are split to the <code>AND</code> terms and lower-cased once,
+ * when the matcher is created; matching an entry does not allocate any
+ * objects. The object is immutable and thread-safe, however it does not
+ * reflect later modifications of the query.
+ *
+ * @author Martin Vysny
+ */
+final class QueryMatcher {
+
+    private final DictTypeEnum dictType;
+    private final boolean isJapanese;
+    private final MatcherEnum matcher;
+    /**
+     * The alternatives, each one a list of lower-case terms which must all
+     * match. Null if every entry matches.
+     */
+    private final String[][] terms;
+
+    /**
+     * Compiles given query.
+     *
+     * @param dictType
+     *            the dictionary type of the matched entries, not null.
+     * @param query
+     *            the query, not null.
+     */
+    QueryMatcher(final DictTypeEnum dictType, final SearchQuery query) {
+        this(dictType, query.isJapanese, query.matcher, MiscUtils.isBlank(query.query) ? null : query.query);
+    }
+
+    /**
+     * Compiles given query strings.
+     *
+     * @param dictType
+     *            the dictionary type, not null.
+     * @param isJapanese
+     *            if true the queries are japanese.
+     * @param matcher
+     *            the matcher.
+     * @param query
+     *            the query strings, an entry matches if it matches at least
+     *            one of the strings. May contain the <code>AND</code>
+     *            operator. If null then every entry matches.
+     */
+    QueryMatcher(final DictTypeEnum dictType, final boolean isJapanese, final MatcherEnum matcher, final String[] query) {
+        this.dictType = dictType;
+        this.isJapanese = isJapanese;
+        this.matcher = matcher;
+        if (query == null) {
+            terms = null;
+        } else {
+            terms = new String[query.length][];
+            for (int i = 0; i < query.length; i++) {
+                final String[] and = query[i].split("\\s+AND\\s+");
+                for (int j = 0; j < and.length; j++) {
+                    and[j] = and[j].trim().toLowerCase();
+                }
+                terms[i] = and;
+            }
+        }
+    }
+
+    /**
+     * Checks if given entry matches the query.
+     *
+     * @param entry
+     *            the entry, not null.
+     * @return true if the entry matches or it is an error entry, false
+     *         otherwise.
+     */
+    boolean matches(final DictEntry entry) {
+        return terms == null || !entry.isValid() || matchesAny(entry);
+    }
+
+    /**
+     * Checks if given entry matches at least one query string.
+     *
+     * @param entry
+     *            the entry, not null, must be valid.
+     * @return true if the entry matches, false otherwise.
+     */
+    boolean matchesAny(final DictEntry entry) {
+        for (int i = 0; i < terms.length; i++) {
+            if (matchesAll(entry, terms[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesAll(final DictEntry entry, final String[] and) {
+        for (int i = 0; i < and.length; i++) {
+            if (!dictType.matches(entry, isJapanese, and[i], matcher)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
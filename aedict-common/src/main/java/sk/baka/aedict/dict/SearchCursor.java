@@ -0,0 +1,195 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.dict;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Searcher;
+import org.apache.lucene.search.TopDocs;
+
+/**
+ * Walks through search results page by page. Lucene hits are retrieved
+ * lazily, in growing chunks, and a {@link DictEntry} is created only for hits
+ * which are actually requested. Obtain an instance via
+ * {@link LuceneSearch#openCursor(SearchQuery)}. Not thread-safe.
+ *
+ * @author Martin Vysny
+ */
+public final class SearchCursor {
+
+    /**
+     * A position of the cursor. Allows to continue the search later, with a
+     * new cursor.
+     *
+     * @author Martin Vysny
+     */
+    public static final class Position implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        /**
+         * Index of the Lucene query (and of the preferred/other group).
+         */
+        final int pass;
+        /**
+         * Index of the Lucene hit within the pass.
+         */
+        final int hit;
+
+        Position(final int pass, final int hit) {
+            this.pass = pass;
+            this.hit = hit;
+        }
+
+        @Override
+        public String toString() {
+            return "Position[" + pass + ", " + hit + "]";
+        }
+    }
+    /**
+     * Minimum number of Lucene hits retrieved at once.
+     */
+    private static final int MIN_HITS = 32;
+    private final LuceneSearch search;
+    private final DictTypeEnum dictType;
+    private final Searcher searcher;
+    private final SearchQuery query;
+    /**
+     * The query compiled once for all hits.
+     */
+    private final QueryMatcher matcher;
+    private final List<Query> queries = new ArrayList<Query>();
+    /**
+     * Number of passes per a single Lucene query: 2 if the dictionary has a
+     * preferred term, 1 otherwise.
+     */
+    private final int groups;
+    private int pass = 0;
+    private int hit = 0;
+    /**
+     * Index of the query whose hits are stored in {@link #current}, -1 if
+     * nothing was retrieved yet.
+     */
+    private int currentQuery = -1;
+    private TopDocs[] current = null;
+    private int numHits = 0;
+
+    SearchCursor(final LuceneSearch search, final DictTypeEnum dictType, final Searcher searcher, final SearchQuery query, final Position position) {
+        this.search = search;
+        this.dictType = dictType;
+        this.searcher = searcher;
+        this.query = query;
+        matcher = new QueryMatcher(dictType, query);
+        for (final Query q : search.getQueries(query)) {
+            if (q != null) {
+                queries.add(q);
+            }
+        }
+        groups = dictType.getPreferredTerm() == null ? 1 : 2;
+        if (position != null) {
+            pass = position.pass;
+            hit = position.hit;
+        }
+    }
+
+    /**
+     * Checks if there may be more results.
+     *
+     * @return true if all results were already returned, false if
+     *         {@link #next(int)} may return more results.
+     */
+    public boolean isExhausted() {
+        return pass >= queries.size() * groups;
+    }
+
+    /**
+     * Returns the current position of the cursor.
+     *
+     * @return the position, never null.
+     */
+    public Position getPosition() {
+        return new Position(pass, hit);
+    }
+
+    /**
+     * Returns next page of results.
+     *
+     * @param count
+     *            the maximum number of entries to return.
+     * @return the entries, never null. Returns less than <code>count</code>
+     *         entries only if the cursor is {@link #isExhausted() exhausted}.
+     * @throws IOException
+     *             on I/O error.
+     */
+    public List<DictEntry> next(final int count) throws IOException {
+        try {
+            final List<DictEntry> result = new ArrayList<DictEntry>(count);
+            while (result.size() < count && !isExhausted()) {
+                final ScoreDoc sd = nextHit(count - result.size());
+                if (sd == null) {
+                    pass++;
+                    hit = 0;
+                    continue;
+                }
+                hit++;
+                final DictEntry entry = dictType.tryGetEntry(searcher.doc(sd.doc, dictType.getFieldSelector()), query.langCode, matcher);
+                if (entry != null) {
+                    result.add(entry);
+                }
+            }
+            return result;
+        } catch (IOException ex) {
+            throw LuceneSearch.translate(ex);
+        }
+    }
+
+    /**
+     * Returns the current hit, retrieving more hits if necessary.
+     *
+     * @param count
+     *            the number of entries still missing.
+     * @return the hit, null if there are no more hits in the current pass.
+     * @throws IOException
+     *             on I/O error.
+     */
+    private ScoreDoc nextHit(final int count) throws IOException {
+        final int queryIndex = pass / groups;
+        if (currentQuery != queryIndex) {
+            currentQuery = queryIndex;
+            fetch(Math.max(hit + count, MIN_HITS));
+        }
+        TopDocs docs = current[pass % groups];
+        while (hit >= docs.scoreDocs.length) {
+            if (docs.totalHits <= docs.scoreDocs.length) {
+                return null;
+            }
+            fetch(Math.max(numHits * 2, hit + count));
+            docs = current[pass % groups];
+        }
+        return docs.scoreDocs[hit];
+    }
+
+    private void fetch(final int numHits) throws IOException {
+        this.numHits = numHits;
+        current = search.searchPreferredFirst(queries.get(currentQuery), numHits);
+    }
+}
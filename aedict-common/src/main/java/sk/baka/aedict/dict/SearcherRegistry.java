@@ -0,0 +1,336 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Searcher;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import sk.baka.aedict.util.Check;
+import sk.baka.autils.MiscUtils;
+
+/**
+ * Keeps opened Lucene indices around so that subsequent searches do not have
+ * to pay the cost of opening the index files. The indices are shared among
+ * all threads and are reference-counted: an index is closed only when nobody
+ * uses it and it has been idle for {@link #IDLE_TIMEOUT_MILLIS}. When the
+ * index files change on the disk (e.g. a dictionary was re-downloaded) the
+ * index is re-opened on the next {@link #acquire(Dictionary, boolean)} call;
+ * searches which are already in progress keep using the old index until
+ * their {@link LuceneSearch} is closed.
+ * <p/>
+ * Always close the {@link LuceneSearch} object obtained from this registry -
+ * closing just releases the index, it does not close it.
+ *
+ * @author Martin Vysny
+ */
+public final class SearcherRegistry {
+
+    private SearcherRegistry() {
+        throw new AssertionError();
+    }
+    /**
+     * An unused index is closed after this amount of milliseconds.
+     */
+    public static final long IDLE_TIMEOUT_MILLIS = 2 * 60 * 1000;
+    /**
+     * Maps absolute index directory to the currently opened index generation.
+     */
+    private static final Map<File, Generation> INDICES = new HashMap<File, Generation>();
+
+    /**
+     * An opened index. When the index files change a new generation is
+     * opened; the old one is closed as soon as all of its users release it.
+     */
+    static final class Generation {
+        private final File location;
+        private final Directory directory;
+        final IndexReader reader;
+        final Searcher searcher;
+        /**
+         * Number of {@link LuceneSearch} objects using this generation plus
+         * one if the generation is still registered in {@link #INDICES}.
+         */
+        private int refCount = 1;
+        private long lastReleased = System.currentTimeMillis();
+
+        private Generation(final File location) throws IOException {
+            this.location = location;
+            directory = FSDirectory.open(location);
+            try {
+                reader = IndexReader.open(directory, true);
+            } catch (IOException ex) {
+                directory.close();
+                throw ex;
+            }
+            searcher = new IndexSearcher(reader);
+        }
+
+        /**
+         * Checks if the index files are still the ones we have opened.
+         *
+         * @return true if the index was modified or deleted, false otherwise.
+         */
+        private boolean isStale() {
+            if (!location.exists()) {
+                return true;
+            }
+            try {
+                return !reader.isCurrent();
+            } catch (IOException ex) {
+                return true;
+            }
+        }
+
+        /**
+         * Must be called with the registry lock held.
+         */
+        private void decRef() {
+            refCount--;
+            if (refCount > 0) {
+                return;
+            }
+            MiscUtils.closeQuietly(searcher);
+            MiscUtils.closeQuietly(reader);
+            MiscUtils.closeQuietly(directory);
+        }
+    }
+
+    /**
+     * Returns a searcher for given dictionary. The searcher shares the index
+     * with other searchers of the same dictionary. The searcher must be
+     * closed when no longer needed.
+     *
+     * @param dictionary
+     *            the dictionary to search, not null.
+     * @param sort
+     *            if true then the result list is always sorted.
+     * @return the searcher, never null.
+     * @throws IOException
+     *             if the index cannot be opened.
+     */
+    public static LuceneSearch acquire(final Dictionary dictionary, final boolean sort) throws IOException {
+        Check.checkNotNull("dictionary", dictionary);
+        return acquire(dictionary.dte, dictionary.getDictionaryLocation(), sort);
+    }
+
+    /**
+     * Returns a searcher for an index stored in given directory. The searcher
+     * shares the index with other searchers of the same directory. The
+     * searcher must be closed when no longer needed.
+     *
+     * @param dictType
+     *            the dictionary type, not null.
+     * @param location
+     *            the index directory, not null.
+     * @param sort
+     *            if true then the result list is always sorted.
+     * @return the searcher, never null.
+     * @throws IOException
+     *             if the index cannot be opened.
+     */
+    public static LuceneSearch acquire(final DictTypeEnum dictType, final File location, final boolean sort) throws IOException {
+        Check.checkNotNull("dictType", dictType);
+        Check.checkNotNull("location", location);
+        final File key = location.getAbsoluteFile();
+        final Generation g;
+        synchronized (INDICES) {
+            evictIdle(System.currentTimeMillis());
+            Generation current = INDICES.get(key);
+            if (current != null && current.isStale()) {
+                INDICES.remove(key);
+                current.decRef();
+                current = null;
+            }
+            if (current == null) {
+                current = new Generation(key);
+                INDICES.put(key, current);
+            }
+            current.refCount++;
+            g = current;
+        }
+        return new LuceneSearch(dictType, g, sort);
+    }
+
+    /**
+     * Releases a generation acquired by {@link #acquire(DictTypeEnum, File, boolean)}.
+     * Invoked from {@link LuceneSearch#close()}.
+     *
+     * @param g
+     *            the generation to release.
+     */
+    static void release(final Generation g) {
+        synchronized (INDICES) {
+            g.lastReleased = System.currentTimeMillis();
+            g.decRef();
+            evictIdle(g.lastReleased);
+        }
+    }
+
+    /**
+     * Forgets the opened index of given dictionary. Invoke before the
+     * dictionary files are deleted or overwritten. The index itself is closed
+     * when all searchers using it are closed.
+     *
+     * @param dictionary
+     *            the dictionary, not null.
+     */
+    public static void invalidate(final Dictionary dictionary) {
+        invalidate(dictionary.getDictionaryLocation());
+    }
+
+    /**
+     * Forgets the opened index located in given directory. Invoke before the
+     * index files are deleted or overwritten. The index itself is closed when
+     * all searchers using it are closed.
+     *
+     * @param location
+     *            the index directory, not null.
+     */
+    public static void invalidate(final File location) {
+        synchronized (INDICES) {
+            final Generation g = INDICES.remove(location.getAbsoluteFile());
+            if (g != null) {
+                g.decRef();
+            }
+        }
+    }
+
+    /**
+     * Installs a new index in place of an existing one. The new index is
+     * verified first: if it cannot be opened the existing index is left
+     * untouched. The directories are then swapped by two renames while the
+     * registry is locked, thus {@link #acquire(DictTypeEnum, File, boolean)}
+     * never sees a missing or half-written index. Searchers which are already
+     * opened keep using the old index (its files stay opened) until closed;
+     * new searchers use the new index.
+     *
+     * @param staging
+     *            the directory containing the new index. Must be on the same
+     *            file system as the location, preferably a hidden sibling
+     *            directory.
+     *            The directory is renamed to the location.
+     * @param location
+     *            the index directory, not null. Need not exist.
+     * @throws IOException
+     *             if the new index is corrupted or the directories cannot be
+     *             renamed. The existing index is left in place in such case.
+     */
+    public static void install(final File staging, final File location) throws IOException {
+        Check.checkNotNull("staging", staging);
+        Check.checkNotNull("location", location);
+        verify(staging);
+        final File key = location.getAbsoluteFile();
+        final File backup = getBackupDir(key);
+        if (backup.exists()) {
+            // a leftover of an interrupted install
+            MiscUtils.deleteDir(backup);
+        }
+        synchronized (INDICES) {
+            if (key.exists() && !key.renameTo(backup)) {
+                throw new IOException("Failed to rename " + key + " to " + backup);
+            }
+            if (!staging.renameTo(key)) {
+                if (backup.exists()) {
+                    backup.renameTo(key);
+                }
+                throw new IOException("Failed to rename " + staging + " to " + key);
+            }
+            final Generation g = INDICES.remove(key);
+            if (g != null) {
+                g.decRef();
+            }
+        }
+        try {
+            MiscUtils.deleteDir(backup);
+        } catch (IOException ex) {
+            // ignore, the directory is deleted by the next install
+        }
+    }
+
+    /**
+     * Returns the directory the existing index is moved to during
+     * {@link #install(File, File)}. The directory is a hidden sibling of the
+     * index directory, thus it is never mistaken for an installed dictionary.
+     *
+     * @param location
+     *            the index directory, not null.
+     * @return the backup directory.
+     */
+    public static File getBackupDir(final File location) {
+        final File key = location.getAbsoluteFile();
+        return new File(key.getParentFile(), "." + key.getName() + ".old");
+    }
+
+    /**
+     * Checks that given directory contains a non-empty Lucene index.
+     *
+     * @param location
+     *            the index directory.
+     * @throws IOException
+     *             if the index cannot be opened or it is empty.
+     */
+    private static void verify(final File location) throws IOException {
+        final Directory directory = FSDirectory.open(location);
+        try {
+            final IndexReader reader = IndexReader.open(directory, true);
+            try {
+                if (reader.numDocs() == 0) {
+                    throw new IOException("The index in " + location + " is empty");
+                }
+            } finally {
+                MiscUtils.closeQuietly(reader);
+            }
+        } finally {
+            MiscUtils.closeQuietly(directory);
+        }
+    }
+
+    /**
+     * Closes all indices which are not currently used by anyone.
+     */
+    public static void closeUnused() {
+        synchronized (INDICES) {
+            evictIdle(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Closes indices which are unused for more than {@link #IDLE_TIMEOUT_MILLIS}. Must be called with the lock held.
+     *
+     * @param now
+     *            current time.
+     */
+    private static void evictIdle(final long now) {
+        for (final Iterator<Generation> i = INDICES.values().iterator(); i.hasNext();) {
+            final Generation g = i.next();
+            if (g.refCount == 1 && now - g.lastReleased >= IDLE_TIMEOUT_MILLIS) {
+                i.remove();
+                g.decRef();
+            }
+        }
+    }
+}
@@ -0,0 +1,543 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.dict;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.SetBasedFieldSelector;
+import org.apache.lucene.index.IndexReader;
+
+import sk.baka.aedict.kanji.KanjiUtils;
+import sk.baka.autils.MiscUtils;
+
+/**
+ * A prefix index of common EDICT entries, used to provide search suggestions
+ * while the user types. The keys are the kanji expressions, the readings and
+ * the English glosses (lower-case, without the parenthesized notes) of
+ * common entries, sorted. Each key refers to the Lucene document of its entry
+ * and carries a weight - the {@link KanjiUtils#getCommonality(String)
+ * commonality} of the entry, lower is better.
+ * <p/>
+ * A lookup binary-searches the range of keys starting with the prefix and
+ * examines at most {@link #MAX_SCANNED_KEYS} keys, thus the latency is
+ * bounded regardless of the prefix. A short prefix may match many more keys
+ * than that, and the most common entries may sort past the scanned ones:
+ * for each such prefix the index stores the {@link #TOP_KEYS} keys with the
+ * best weight, which are examined as well. The file is memory-mapped and is
+ * only valid for the index it was created for: it must be deleted when the
+ * index is modified. The object is immutable and thread-safe.
+ *
+ * @author Martin Vysny
+ */
+public final class SuggestionIndex {
+
+    /**
+     * The file name, in the EDICT index directory.
+     */
+    public static final String FILE_NAME = "suggest.bin";
+    /**
+     * Maximum number of keys examined for a single prefix.
+     */
+    public static final int MAX_SCANNED_KEYS = 4096;
+    /**
+     * Number of best keys stored for a prefix matching more than
+     * {@link #MAX_SCANNED_KEYS} keys. Suggestions for such prefix are exact
+     * up to this number of results.
+     */
+    public static final int TOP_KEYS = 64;
+    private static final int MAGIC = 0x41454453;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 16;
+    /**
+     * Loads just the EDICT line.
+     */
+    private static final FieldSelector CONTENTS = new SetBasedFieldSelector(Collections.singleton("contents"), Collections.<String>emptySet());
+    private final int count;
+    private final IntBuffer offsets;
+    private final IntBuffer docs;
+    private final ShortBuffer weights;
+    private final CharBuffer chars;
+    /**
+     * Number of prefixes matching more than {@link #MAX_SCANNED_KEYS} keys.
+     */
+    private final int heavyCount;
+    private final IntBuffer heavyOffsets;
+    /**
+     * {@link #TOP_KEYS} key indices per heavy prefix, best first, padded by
+     * -1.
+     */
+    private final IntBuffer heavyTop;
+    private final CharBuffer heavyChars;
+
+    private SuggestionIndex(final ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a suggestion index or unsupported version");
+        }
+        count = buffer.getInt(8);
+        heavyCount = buffer.getInt(12);
+        int position = HEADER_BYTES;
+        buffer.position(position);
+        offsets = buffer.slice().asIntBuffer();
+        position += (count + 1) * 4;
+        buffer.position(position);
+        docs = buffer.slice().asIntBuffer();
+        position += count * 4;
+        buffer.position(position);
+        heavyOffsets = buffer.slice().asIntBuffer();
+        position += (heavyCount + 1) * 4;
+        buffer.position(position);
+        heavyTop = buffer.slice().asIntBuffer();
+        position += heavyCount * TOP_KEYS * 4;
+        buffer.position(position);
+        weights = buffer.slice().asShortBuffer();
+        position += count * 2;
+        buffer.position(position);
+        chars = buffer.slice().asCharBuffer();
+        position += offsets.get(count) * 2;
+        buffer.position(position);
+        heavyChars = buffer.slice().asCharBuffer();
+    }
+
+    /**
+     * Opens the suggestion index stored in given EDICT index directory.
+     *
+     * @param indexDir
+     *            the EDICT index directory, not null.
+     * @return the suggestion index, null if the directory does not contain
+     *         the index (the index was created by an older indexer or was
+     *         updated by an {@link EdictDelta}) or contains an index of an
+     *         older version.
+     * @throws IOException
+     *             on i/o error.
+     */
+    public static SuggestionIndex open(final File indexDir) throws IOException {
+        final File file = new File(indexDir, FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() >= HEADER_BYTES && raf.readInt() == MAGIC && raf.readInt() < VERSION) {
+                return null;
+            }
+            // the mapping stays valid after the channel is closed
+            return new SuggestionIndex(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+        } finally {
+            MiscUtils.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * Splits the English part of an EDICT entry into glosses, without the
+     * parenthesized notes like (n) or (P).
+     *
+     * @param english
+     *            the English part.
+     * @return lower-case glosses, never null.
+     */
+    static Set<String> getGlosses(final String english) {
+        final Set<String> result = new LinkedHashSet<String>();
+        for (final String gloss : english.toLowerCase().split("/")) {
+            final StringBuilder sb = new StringBuilder(gloss.length());
+            int depth = 0;
+            for (int i = 0; i < gloss.length(); i++) {
+                final char c = gloss.charAt(i);
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth = Math.max(0, depth - 1);
+                } else if (depth == 0) {
+                    sb.append(c);
+                }
+            }
+            final String key = sb.toString().trim().replaceAll("\\s+", " ");
+            if (key.length() > 0) {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Collects keys of all common entries of given EDICT index and writes
+     * them as a suggestion index.
+     *
+     * @param reader
+     *            the EDICT index reader. The index must not be modified
+     *            afterwards, the suggestion index refers to its documents.
+     * @param indexDir
+     *            the EDICT index directory, not null.
+     * @throws IOException
+     *             on i/o error.
+     */
+    public static void write(final IndexReader reader, final File indexDir) throws IOException {
+        // maps key to a list of (document, weight) pairs
+        final Map<String, List<int[]>> keys = new TreeMap<String, List<int[]>>();
+        int pairs = 0;
+        for (int i = 0; i < reader.maxDoc(); i++) {
+            if (reader.isDeleted(i)) {
+                continue;
+            }
+            final Document doc = reader.document(i, CONTENTS);
+            final EdictEntry entry = DictTypeEnum.parseEdictEntry(doc.get("contents"));
+            if (!Boolean.TRUE.equals(entry.isCommon)) {
+                continue;
+            }
+            final int weight = Math.min(Short.MAX_VALUE, KanjiUtils.getCommonality(entry.getJapanese()));
+            final Set<String> entryKeys = new LinkedHashSet<String>();
+            if (entry.kanji != null) {
+                entryKeys.add(entry.kanji);
+            }
+            entryKeys.add(entry.reading);
+            entryKeys.addAll(getGlosses(entry.english));
+            for (final String key : entryKeys) {
+                List<int[]> list = keys.get(key);
+                if (list == null) {
+                    list = new ArrayList<int[]>(1);
+                    keys.put(key, list);
+                }
+                list.add(new int[]{i, weight});
+                pairs++;
+            }
+        }
+        write(keys, pairs, indexDir);
+    }
+
+    /**
+     * Writes the suggestion index.
+     *
+     * @param keys
+     *            maps key to a list of (document, weight) pairs.
+     * @param pairs
+     *            the total number of pairs.
+     * @param indexDir
+     *            the EDICT index directory, not null.
+     * @throws IOException
+     *             on i/o error.
+     */
+    static void write(final Map<String, List<int[]>> keys, final int pairs, final File indexDir) throws IOException {
+        // a key shared by multiple entries is stored multiple times
+        final String[] pairKeys = new String[pairs];
+        final int[] pairDocs = new int[pairs];
+        final int[] pairWeights = new int[pairs];
+        int pair = 0;
+        for (final Map.Entry<String, List<int[]>> e : keys.entrySet()) {
+            for (final int[] docWeight : e.getValue()) {
+                pairKeys[pair] = e.getKey();
+                pairDocs[pair] = docWeight[0];
+                pairWeights[pair] = docWeight[1];
+                pair++;
+            }
+        }
+        final List<String> heavy = new ArrayList<String>();
+        final List<int[]> heavyTop = new ArrayList<int[]>();
+        collectHeavy(pairKeys, pairDocs, pairWeights, 0, pairs, 1, heavy, heavyTop);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(indexDir, FILE_NAME))));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(pairs);
+            out.writeInt(heavy.size());
+            int offset = 0;
+            out.writeInt(offset);
+            for (final String key : pairKeys) {
+                offset += key.length();
+                out.writeInt(offset);
+            }
+            for (final int doc : pairDocs) {
+                out.writeInt(doc);
+            }
+            offset = 0;
+            out.writeInt(offset);
+            for (final String prefix : heavy) {
+                offset += prefix.length();
+                out.writeInt(offset);
+            }
+            for (final int[] top : heavyTop) {
+                for (final int key : top) {
+                    out.writeInt(key);
+                }
+            }
+            for (final int weight : pairWeights) {
+                out.writeShort(weight);
+            }
+            for (final String key : pairKeys) {
+                out.writeChars(key);
+            }
+            for (final String prefix : heavy) {
+                out.writeChars(prefix);
+            }
+        } finally {
+            MiscUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Finds prefixes of given length matching more than
+     * {@link #MAX_SCANNED_KEYS} keys of given range, computes their best
+     * keys and continues with longer prefixes. The prefixes are collected in
+     * the sorted order.
+     *
+     * @param start
+     *            the range start. All keys in the range share the prefix of
+     *            <code>length - 1</code> characters.
+     * @param end
+     *            the range end, exclusive.
+     */
+    private static void collectHeavy(final String[] keys, final int[] docs, final int[] weights, final int start, final int end, final int length, final List<String> heavy, final List<int[]> heavyTop) {
+        int i = start;
+        while (i < end) {
+            if (keys[i].length() < length) {
+                // the key sorts before all longer keys of the range
+                i++;
+                continue;
+            }
+            final String prefix = keys[i].substring(0, length);
+            int j = i + 1;
+            while (j < end && keys[j].startsWith(prefix)) {
+                j++;
+            }
+            if (j - i > MAX_SCANNED_KEYS) {
+                heavy.add(prefix);
+                heavyTop.add(getTopKeys(keys, docs, weights, i, j));
+                collectHeavy(keys, docs, weights, i, j, length + 1, heavy, heavyTop);
+            }
+            i = j;
+        }
+    }
+
+    /**
+     * Computes the score of a key: the weight, then the key length. Lower is
+     * better.
+     */
+    private static long score(final int weight, final int keyLength) {
+        return ((long) weight << 32) | keyLength;
+    }
+
+    /**
+     * Returns {@link #TOP_KEYS} keys of distinct documents with the best
+     * score from given range, best first, padded by -1.
+     */
+    private static int[] getTopKeys(final String[] keys, final int[] docs, final int[] weights, final int start, final int end) {
+        // maps the document to its best key
+        final Map<Integer, Integer> best = new HashMap<Integer, Integer>();
+        for (int key = start; key < end; key++) {
+            final Integer previous = best.get(docs[key]);
+            if (previous == null || score(weights[previous], keys[previous].length()) > score(weights[key], keys[key].length())) {
+                best.put(docs[key], key);
+            }
+        }
+        final List<Integer> sorted = new ArrayList<Integer>(best.values());
+        Collections.sort(sorted, new Comparator<Integer>() {
+
+            public int compare(Integer o1, Integer o2) {
+                final long s1 = score(weights[o1], keys[o1].length());
+                final long s2 = score(weights[o2], keys[o2].length());
+                // the same order as in suggest(): ties are ordered by the document
+                return s1 < s2 ? -1 : s1 > s2 ? 1 : docs[o1] - docs[o2];
+            }
+        });
+        final int[] result = new int[TOP_KEYS];
+        Arrays.fill(result, -1);
+        for (int i = 0; i < result.length && i < sorted.size(); i++) {
+            result[i] = sorted.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of keys.
+     *
+     * @return the key count.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Compares a key with a prefix.
+     *
+     * @return negative if the key sorts before all keys starting with the
+     *         prefix, 0 if the key starts with the prefix, positive if the
+     *         key sorts after all such keys.
+     */
+    private int comparePrefix(final int key, final String prefix) {
+        final int start = offsets.get(key);
+        final int length = offsets.get(key + 1) - start;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (i >= length) {
+                return -1;
+            }
+            final int diff = chars.get(start + i) - prefix.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Finds a prefix matching more than {@link #MAX_SCANNED_KEYS} keys.
+     *
+     * @return the prefix index, -1 if not found.
+     */
+    private int findHeavy(final String prefix) {
+        int low = 0;
+        int high = heavyCount - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int start = heavyOffsets.get(mid);
+            final int length = heavyOffsets.get(mid + 1) - start;
+            int diff = 0;
+            for (int i = 0; i < length && i < prefix.length() && diff == 0; i++) {
+                diff = heavyChars.get(start + i) - prefix.charAt(i);
+            }
+            if (diff == 0) {
+                diff = length - prefix.length();
+            }
+            if (diff < 0) {
+                low = mid + 1;
+            } else if (diff > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Remembers the key if it is the best key of its document so far.
+     */
+    private void addCandidate(final Map<Integer, Long> bestScore, final int key) {
+        final long score = score(weights.get(key), offsets.get(key + 1) - offsets.get(key));
+        final Integer doc = docs.get(key);
+        final Long previous = bestScore.get(doc);
+        if (previous == null || previous > score) {
+            bestScore.put(doc, score);
+        }
+    }
+
+    /**
+     * Finds the first key for which {@link #comparePrefix(int, String)}
+     * returns a value greater than or equal to given limit.
+     */
+    private int search(final String prefix, final int limit) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (comparePrefix(mid, prefix) < limit) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds entries with a key starting with any of given prefixes. The
+     * entries are ordered by their weight (most common entries first), then
+     * by the key length (closest matches first). The best
+     * {@link #TOP_KEYS} entries of each prefix are always found.
+     *
+     * @param edict
+     *            the EDICT index this suggestion index was created for.
+     * @param prefixes
+     *            the prefixes, lower-case. Blank prefixes are ignored.
+     * @param maxResults
+     *            the maximum number of entries to return.
+     * @return the entries, never null, may be empty.
+     * @throws IOException
+     *             on i/o error.
+     */
+    public List<DictEntry> suggest(final LuceneSearch edict, final Collection<String> prefixes, final int maxResults) throws IOException {
+        final List<Integer> docs = suggestDocuments(prefixes, maxResults);
+        final List<DictEntry> result = new ArrayList<DictEntry>(docs.size());
+        for (final Integer doc : docs) {
+            result.add(edict.getEntry(doc));
+        }
+        return result;
+    }
+
+    /**
+     * Finds documents of the {@link #suggest(LuceneSearch, Collection, int) suggested entries}.
+     */
+    List<Integer> suggestDocuments(final Collection<String> prefixes, final int maxResults) {
+        // maps the document to the best (weight, key length) score
+        final Map<Integer, Long> bestScore = new TreeMap<Integer, Long>();
+        for (final String prefix : prefixes) {
+            if (MiscUtils.isBlank(prefix)) {
+                continue;
+            }
+            final int low = search(prefix, 0);
+            final int end = search(prefix, 1);
+            if (end - low > MAX_SCANNED_KEYS) {
+                // the best keys may sort past the scanned ones
+                final int heavy = findHeavy(prefix);
+                for (int i = 0; heavy >= 0 && i < TOP_KEYS; i++) {
+                    final int key = heavyTop.get(heavy * TOP_KEYS + i);
+                    if (key < 0) {
+                        break;
+                    }
+                    addCandidate(bestScore, key);
+                }
+            }
+            final int high = Math.min(end, low + MAX_SCANNED_KEYS);
+            for (int key = low; key < high; key++) {
+                addCandidate(bestScore, key);
+            }
+        }
+        final List<Map.Entry<Integer, Long>> sorted = new ArrayList<Map.Entry<Integer, Long>>(bestScore.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<Integer, Long>>() {
+
+            public int compare(Map.Entry<Integer, Long> o1, Map.Entry<Integer, Long> o2) {
+                return o1.getValue().compareTo(o2.getValue());
+            }
+        });
+        final List<Integer> result = new ArrayList<Integer>(Math.min(maxResults, sorted.size()));
+        for (int i = 0; i < sorted.size() && result.size() < maxResults; i++) {
+            result.add(sorted.get(i).getKey());
+        }
+        return result;
+    }
+}
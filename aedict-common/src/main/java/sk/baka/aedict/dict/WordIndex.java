@@ -0,0 +1,255 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.dict;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.SetBasedFieldSelector;
+import org.apache.lucene.index.IndexReader;
+
+import sk.baka.aedict.util.Check;
+import sk.baka.autils.MiscUtils;
+
+/**
+ * A sorted list of all EDICT words (kanji expressions and readings), stored
+ * next to the EDICT index. Allows to find the longest dictionary word at the
+ * beginning of a text without querying Lucene: the sorted list acts as an
+ * implicit trie, each character of the text narrows the range of words
+ * sharing the prefix by two binary searches.
+ * <p/>
+ * The file is memory-mapped, the words are not loaded into the heap. The file
+ * format is: the magic number, the version, the word count <code>n</code>,
+ * <code>n + 1</code> character offsets of the words and the characters of
+ * all words, all big-endian. The object is immutable and thread-safe.
+ *
+ * @author Martin Vysny
+ */
+public final class WordIndex {
+
+    /**
+     * The file name, in the EDICT index directory.
+     */
+    public static final String FILE_NAME = "words.bin";
+    private static final int MAGIC = 0x41454457;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    /**
+     * Loads just the EDICT line.
+     */
+    private static final FieldSelector CONTENTS = new SetBasedFieldSelector(Collections.singleton("contents"), Collections.<String>emptySet());
+    private final int count;
+    private final IntBuffer offsets;
+    private final CharBuffer chars;
+
+    private WordIndex(final ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a word index or unsupported version");
+        }
+        count = buffer.getInt(8);
+        buffer.position(HEADER_BYTES);
+        offsets = buffer.slice().asIntBuffer();
+        buffer.position(HEADER_BYTES + (count + 1) * 4);
+        chars = buffer.slice().asCharBuffer();
+    }
+
+    /**
+     * Opens the word index stored in given EDICT index directory.
+     *
+     * @param indexDir
+     *            the EDICT index directory, not null.
+     * @return the word index, null if the directory does not contain the
+     *         word index (the index was created by an older indexer or was
+     *         updated by an {@link EdictDelta}).
+     * @throws IOException
+     *             on i/o error.
+     */
+    public static WordIndex open(final File indexDir) throws IOException {
+        final File file = new File(indexDir, FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid after the channel is closed
+            return new WordIndex(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+        } finally {
+            MiscUtils.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * Writes a word index to given EDICT index directory.
+     *
+     * @param words
+     *            the words, not null. Duplicates and blank words are ignored.
+     * @param indexDir
+     *            the EDICT index directory, not null.
+     * @throws IOException
+     *             on i/o error.
+     */
+    public static void write(final Collection<String> words, final File indexDir) throws IOException {
+        Check.checkNotNull("words", words);
+        final SortedSet<String> sorted = new TreeSet<String>();
+        for (final String word : words) {
+            if (!MiscUtils.isBlank(word)) {
+                sorted.add(word);
+            }
+        }
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(indexDir, FILE_NAME))));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.size());
+            int offset = 0;
+            out.writeInt(offset);
+            for (final String word : sorted) {
+                offset += word.length();
+                out.writeInt(offset);
+            }
+            for (final String word : sorted) {
+                out.writeChars(word);
+            }
+        } finally {
+            MiscUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Collects kanji expressions and readings of all entries of given EDICT
+     * index and writes them as a word index.
+     *
+     * @param reader
+     *            the EDICT index reader.
+     * @param indexDir
+     *            the EDICT index directory, not null.
+     * @throws IOException
+     *             on i/o error.
+     */
+    public static void write(final IndexReader reader, final File indexDir) throws IOException {
+        final Collection<String> words = new TreeSet<String>();
+        for (int i = 0; i < reader.maxDoc(); i++) {
+            if (reader.isDeleted(i)) {
+                continue;
+            }
+            final Document doc = reader.document(i, CONTENTS);
+            final EdictLine entry = EdictLine.parse(doc.get("contents"));
+            final String kanji = entry.getKanji();
+            if (kanji != null) {
+                words.add(kanji);
+            }
+            words.add(entry.getReading());
+        }
+        write(words, indexDir);
+    }
+
+    /**
+     * Returns the number of words.
+     *
+     * @return the word count.
+     */
+    public int size() {
+        return count;
+    }
+
+    private int length(final int word) {
+        return offsets.get(word + 1) - offsets.get(word);
+    }
+
+    /**
+     * Returns a character of given word, or -1 if the word is not longer than
+     * given position. The function is non-decreasing in a range of words
+     * sharing a prefix of <code>position</code> characters.
+     */
+    private int charAt(final int word, final int position) {
+        return length(word) > position ? chars.get(offsets.get(word) + position) : -1;
+    }
+
+    /**
+     * Finds the first word in given range whose character at given position
+     * is greater than or equal to given character.
+     */
+    private int lowerBound(int low, int high, final int position, final int c) {
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (charAt(mid, position) < c) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the longest word which is a prefix of given text.
+     *
+     * @param text
+     *            the text, not null.
+     * @param from
+     *            the start of the prefix in the text.
+     * @param maxLength
+     *            the maximum word length to consider.
+     * @return the length of the longest word, 0 if no word is a prefix of the
+     *         text.
+     */
+    public int longestMatch(final CharSequence text, final int from, final int maxLength) {
+        final int end = Math.min(text.length(), from + maxLength);
+        int low = 0;
+        int high = count;
+        int result = 0;
+        for (int position = 0; from + position < end; position++) {
+            final char c = text.charAt(from + position);
+            low = lowerBound(low, high, position, c);
+            high = lowerBound(low, high, position, c + 1);
+            if (low >= high) {
+                break;
+            }
+            // the shortest word sorts first
+            if (length(low) == position + 1) {
+                result = position + 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks if given word is present in the index.
+     *
+     * @param word
+     *            the word, not null.
+     * @return true if the word is present, false otherwise.
+     */
+    public boolean contains(final String word) {
+        return word.length() > 0 && longestMatch(word, 0, word.length()) == word.length();
+    }
+}
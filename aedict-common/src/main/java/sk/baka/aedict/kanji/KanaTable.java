@@ -0,0 +1,153 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.kanji;
+
+/**
+ * A kana-to-romaji mapping, stored in arrays indexed by the kana code point.
+ * Hiragana and katakana occupy a contiguous Unicode block, thus a single
+ * kana and a kana followed by a small ya/yu/yo/wa (a digraph, like きゃ) are
+ * both resolved by a single array access, without any boxing or substring
+ * creation. The table is only modified during construction of the owning
+ * {@link RomanizationEnum} constant.
+ *
+ * @author Martin Vysny
+ */
+final class KanaTable {
+
+    /**
+     * The first character of the hiragana block.
+     */
+    private static final char FIRST = '\u3040';
+    /**
+     * The last character of the katakana block.
+     */
+    private static final char LAST = '\u30ff';
+    /**
+     * Small kana which may form a digraph with the preceding kana.
+     */
+    private static final String SMALL = "ゃゅょゎャュョ";
+    private static final int STRIDE = SMALL.length() + 1;
+    /**
+     * The writing of the kana, as defined by the table, for example xzu.
+     */
+    private final String[] writings = new String[(LAST - FIRST + 1) * STRIDE];
+    /**
+     * The romaji, i.e. the writing without the x prefix.
+     */
+    private final String[] romajis = new String[writings.length];
+
+    private static int index(final char kana) {
+        if (kana < FIRST || kana > LAST) {
+            return -1;
+        }
+        return (kana - FIRST) * STRIDE;
+    }
+
+    private static int index(final char kana, final char small) {
+        final int index = index(kana);
+        if (index < 0) {
+            return -1;
+        }
+        final int smallIndex = SMALL.indexOf(small);
+        if (smallIndex < 0) {
+            return -1;
+        }
+        return index + smallIndex + 1;
+    }
+
+    private static int index(final String kana) {
+        switch (kana.length()) {
+            case 1:
+                return index(kana.charAt(0));
+            case 2:
+                return index(kana.charAt(0), kana.charAt(1));
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Registers a kana.
+     *
+     * @param kana
+     *            a single kana or a kana followed by a small ya/yu/yo/wa.
+     * @param writing
+     *            the writing, for example xzu.
+     * @return true if the kana was registered, false if it was already
+     *         registered before.
+     * @throws IllegalArgumentException
+     *             if given string is not a kana or a digraph.
+     */
+    boolean put(final String kana, final String writing) {
+        final int index = index(kana);
+        if (index < 0) {
+            throw new IllegalArgumentException("Not a kana: " + kana);
+        }
+        if (writings[index] != null) {
+            return false;
+        }
+        writings[index] = writing;
+        // fix xji and nn
+        if (writing.equals("nn")) {
+            romajis[index] = "n";
+        } else if (writing.startsWith("x")) {
+            romajis[index] = writing.substring(1);
+        } else {
+            romajis[index] = writing;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the writing of given kana.
+     *
+     * @param kana
+     *            the kana or a digraph, not null.
+     * @return the writing, null if no such kana is known.
+     */
+    String getWriting(final String kana) {
+        final int index = index(kana);
+        return index < 0 ? null : writings[index];
+    }
+
+    /**
+     * Returns the romaji of given kana.
+     *
+     * @param kana
+     *            the kana
+     * @return the romaji, null if no such kana is known.
+     */
+    String getRomaji(final char kana) {
+        final int index = index(kana);
+        return index < 0 ? null : romajis[index];
+    }
+
+    /**
+     * Returns the romaji of given digraph.
+     *
+     * @param kana
+     *            the kana
+     * @param small
+     *            the small kana following the kana.
+     * @return the romaji, null if no such digraph is known.
+     */
+    String getRomaji(final char kana, final char small) {
+        final int index = index(kana, small);
+        return index < 0 ? null : romajis[index];
+    }
+}
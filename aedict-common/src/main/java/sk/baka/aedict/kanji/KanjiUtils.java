@@ -196,14 +196,6 @@ public final class KanjiUtils {
      * A kanji list, ordered by its commonality (most common one to least common one). Only first 1000 most common kanji characters are stored here.
      */
     private static final String COMMONALITY = "日一国会人年大十二本中長出三同時政事自行社見月分議後前民生連五発間対上部東者党地合市業内相方四定今回新場金員九入選立開手米力学問高代明実円関決子動京全目表戦経通外最言氏現理調体化田当八六約主題下首意法不来作性的要用制治度務強気小七成期公持野協取都和統以機平総加山思家話世受区領多県続進正安設保改数記院女初北午指権心界支第産結百派点教報済書府活原先共得解名交資予川向際査勝面委告軍文反元重近千考判認画海参売利組知案道信策集在件団別物側任引使求所次水半品昨論計死官増係感特情投示変打男基私各始島直両朝革価式確村提運終挙果西勢減台広容必応演電歳住争談能無再位置企真流格有疑口過局少放税検藤町常校料沢裁状工建語球営空職証土与急止送援供可役構木割聞身費付施切由説転食比難防補車優夫研収断井何南石足違消境神番規術護展態導鮮備宅害配副算視条幹独警宮究育席輸訪楽起万着乗店述残想線率病農州武声質念待試族象銀域助労例衛然早張映限親額監環験追審商葉義伝働形景落欧担好退準賞訴辺造英被株頭技低毎医復仕去姿味負閣韓渡失移差衆個門写評課末守若脳極種美岡影命含福蔵量望松非撃佐核観察整段横融型白深字答夜製票況音申様財港識注呼渉達良響阪帰針専推谷古候史天階程満敗管値歌買突兵接請器士光討路悪科攻崎督授催細効図週積丸他及湾録処省旧室憲太橋歩離岸客風紙激否周師摘材登系批郎母易健黒火戸速存花春飛殺央券赤号単盟座青破編捜竹除完降超責並療従右修捕隊危採織森競拡故館振給屋介読弁根色友苦就迎走販園具左異歴辞将秋因献厳馬愛幅休維富浜父遺彼般未塁貿講邦舞林装諸夏素亡劇河遣航抗冷模雄適婦鉄寄益込顔緊類児余禁印逆王返標換久短油妻暴輪占宣背昭廃植熱宿薬伊江清習険頼僚覚吉盛船倍均億途圧芸許皇臨踏駅署抜壊債便伸留罪停興爆陸玉源儀波創障継筋狙帯延羽努固闘精則葬乱避普散司康測豊洋静善逮婚厚喜齢囲卒迫略承浮惑崩順紀聴脱旅絶級幸岩練押軽倒了庁博城患締等救執層版老令角絡損房募曲撤裏払削密庭徒措仏績築貨志混載昇池陣我勤為血遅抑幕居染温雑招奈季困星傷永択秀著徴誌庫弾償刊像功拠香欠更秘拒刑坂刻底賛塚致抱繰服犯尾描布恐寺鈴盤息宇項喪伴遠養懸戻街巨震願絵希越契掲躍棄欲痛触邸依籍汚縮還枚属笑互複慮郵束仲栄札枠似夕恵板列露沖探逃借緩節需骨射傾届曜遊迷夢巻購揮君燃充雨閉緒跡包駐貢鹿弱却端賃折紹獲郡併草徹飲貴埼衝焦奪雇災浦暮替析預焼簡譲称肉納樹挑章臓律誘紛貸至宗促慎控";
-    private static final Map<Character, Integer> COMMONALITY_MAP = new HashMap<Character, Integer>(COMMONALITY.length());
-
-    static {
-        int commonality = 2;
-        for (final char ch : COMMONALITY.toCharArray()) {
-            COMMONALITY_MAP.put(ch, commonality++);
-        }
-    }
 
     /**
      * Returns commonality of given japanese character. Katakana and hiragana
@@ -219,11 +211,11 @@ public final class KanjiUtils {
         if (isKana(ch)) {
             return 1;
         }
-        final Integer commonality = COMMONALITY_MAP.get(ch);
-        if (commonality != null) {
-            return commonality;
+        final int index = Arrays.binarySearch(KANJI, ch);
+        if (index >= 0 && KANJI_COMMONALITY[index] != 0) {
+            return KANJI_COMMONALITY[index];
         }
-        return COMMONALITY_MAP.size() + 2;
+        return COMMONALITY.length() + 2;
     }
 
     /**
@@ -237,7 +229,8 @@ public final class KanjiUtils {
      */
     public static int getCommonality(final String str) {
         int result = 0;
-        for (final char ch : str.toCharArray()) {
+        for (int i = 0; i < str.length(); i++) {
+            final char ch = str.charAt(i);
             if (Character.isWhitespace(ch)) {
                 continue;
             }
@@ -283,17 +276,52 @@ public final class KanjiUtils {
         QUIZ_TABLE.put(KanjiQuiz.JoyoGrade6, "異遺域危簡株巻干看灰拡閣革割宇映延沿我呼己系警劇激穴憲権絹厳源敬筋胸郷勤供貴疑吸揮机視詞誌磁私至姿蚕冊裁策砂座済鋼降刻穀骨困皇紅后孝誤垂推蒸針仁城純処署諸除傷将障縮熟衆従縦樹収宗就射捨尺若段値宙忠暖宅担探誕層操窓装臓蔵存尊創奏宣専泉洗染善盛聖誠寸難乳認納脳派俳拝背肺届党糖討庁潮頂賃痛展著枚幕補暮宝訪亡忘棒並閉陛片腹奮班晩否批秘朗論臨欲翌乱卵覧裏律幼郵優訳盟模密");
         QUIZ_TABLE.put(KanjiQuiz.JoyoJuniorHighSchool, "亜哀握扱依偉威尉慰為維緯違井壱逸稲芋姻陰隠閑陥含頑企鑑緩缶肝艦貫還滑褐轄且刈乾冠勘勧喚堪寛患憾換敢棺款歓汗環甘監戒拐皆劾慨概涯該垣嚇核殻獲穫較郭隔岳掛潟喝括渇怪悔懐壊塊韻渦浦影詠鋭疫悦謁越閲宴援炎煙猿縁鉛汚凹奥押欧殴翁沖憶乙卸穏佳嫁寡暇架禍稼箇華菓蚊雅餓介誇雇顧鼓互呉孤弧枯渓継茎蛍鶏迎鯨撃傑倹兼剣圏堅嫌懸献肩謙賢軒遣顕幻弦玄契恵慶憩掲携緊菌襟謹吟駆愚虞偶遇隅屈掘靴繰桑勲薫傾刑啓況狂狭矯脅響驚仰凝暁斤琴挟恭恐峡拒拠虚距享凶叫巨祈軌輝飢騎鬼偽儀宜戯擬欺犠菊吉喫詰却脚虐丘及朽窮糾奇岐幾忌既棋棄軸執湿漆疾諮賜雌侍慈滋璽施旨祉紫肢脂嗣傘惨桟暫伺刺撮擦索錯載剤咲崎削搾詐鎖債催宰彩栽歳砕斎衡貢購郊酵項香剛拷豪克酷獄腰込墾婚恨懇昆紺魂佐唆更江洪溝甲硬稿絞綱肯荒坑孔巧恒慌抗拘控攻娯御悟碁侯酢吹帥炊睡粋衰遂酔錘随髄崇浄畳譲醸錠嘱飾殖触辱伸侵唇娠寝審慎振浸紳薪診辛震刃尋甚尽迅陣剰壌嬢巡遵庶緒叙徐償匠升召奨宵尚床彰抄掌昇晶沼渉焦症硝礁祥称粧紹肖衝訟詔詳鐘丈冗盾准循旬殉潤淑粛塾俊瞬臭舟襲酬醜充柔汁渋獣銃叔儒寿需囚愁秀朱殊狩珠趣寂赦斜煮遮蛇邪勺爵酌釈芝恥痴稚致遅畜蓄逐秩窒嫡抽択拓沢濯託濁諾但奪脱棚丹嘆淡端胆鍛壇弾逮滝卓怠替泰滞胎袋耐駄捜掃挿曹槽燥荘葬藻遭霜騒憎贈促即俗賊堕妥惰訴阻僧双喪壮惜斥析籍跡拙摂窃仙占扇栓潜旋繊薦践遷銑鮮漸禅繕塑措疎礎租粗隻斉牲誓請逝枢据杉澄瀬畝是姓征軟尼弐如尿妊忍寧猫粘悩濃把覇婆廃排杯輩培媒透陶騰闘洞胴峠匿督篤凸突屯豚曇鈍縄謄踏逃奴怒倒凍唐塔悼搭桃棟盗痘筒到斗渡途弔彫徴懲挑眺聴脹超跳勅朕沈珍鎮陳津墜塚漬坪釣亭偵貞呈堤帝廷抵締艇訂逓邸泥摘滴哲徹撤迭添殿吐塗衷鋳駐膜又抹繭慢穂募慕簿倣俸奉峰崩抱泡砲縫胞芳褒邦飽乏傍剖坊妨帽忙房某冒紡肪膨謀僕墨撲朴没堀奔翻凡盆摩磨魔麻埋遍舗捕雰丙併塀幣弊柄壁癖偏賦赴附侮舞封伏幅覆払沸噴墳憤紛浜賓頻敏瓶怖扶敷普浮符腐膚譜縛肌鉢髪伐罰抜閥伴帆搬畔繁般藩販範煩頒盤蛮卑妃彼扉披泌疲碑罷被避尾微匹姫漂描苗拍泊舶薄迫漠爆賠陪伯霊麗齢暦劣烈裂廉恋錬炉露廊楼浪漏郎賄惑枠湾腕糧陵倫厘隣塁涙累励鈴隷零謡踊抑翼羅裸頼雷絡酪欄濫吏履痢離硫粒隆竜慮虜了僚寮涼猟療窯誉庸揚揺擁溶与雄融裕誘悠憂猶諭唯幽柳愉癒躍黙戻紋匁厄猛盲網耗銘滅免茂妄漫魅岬妙眠矛霧婿娘");
     }
-    private static final Map<Character, Integer> JLPT_LEVEL = new HashMap<Character, Integer>();
+    /**
+     * All kanji with a known commonality or JLPT level, sorted. Looked up by
+     * a binary search, to avoid boxing the characters.
+     */
+    private static final char[] KANJI;
+    /**
+     * Commonality of given {@link #KANJI}, as returned by
+     * {@link #getCommonality(char)}. 0 if the kanji is not in the
+     * {@link #COMMONALITY} list.
+     */
+    private static final short[] KANJI_COMMONALITY;
+    /**
+     * JLPT level of given {@link #KANJI}, 0 if the kanji is not present in
+     * any of the JLPT tests.
+     */
+    private static final byte[] KANJI_JLPT;
 
     static {
+        final StringBuilder all = new StringBuilder(COMMONALITY);
+        for (int i = 1; i <= 5; i++) {
+            all.append(getJlptKanjis(i));
+        }
+        final char[] sorted = all.toString().toCharArray();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (count == 0 || sorted[count - 1] != sorted[i]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        KANJI = new char[count];
+        System.arraycopy(sorted, 0, KANJI, 0, count);
+        KANJI_COMMONALITY = new short[count];
+        for (int i = 0; i < COMMONALITY.length(); i++) {
+            KANJI_COMMONALITY[Arrays.binarySearch(KANJI, COMMONALITY.charAt(i))] = (short) (i + 2);
+        }
+        KANJI_JLPT = new byte[count];
         for (int i = 1; i <= 5; i++) {
             final String jlpt = getJlptKanjis(i);
             for (int j = 0; j < jlpt.length(); j++) {
-                final Character kanji = jlpt.charAt(j);
-                final Integer prev = JLPT_LEVEL.put(kanji, i);
-                if (prev != null) {
-                    throw new RuntimeException("Kanji " + kanji + " present in levels " + prev + " and " + i);
+                final char kanji = jlpt.charAt(j);
+                final int index = Arrays.binarySearch(KANJI, kanji);
+                if (KANJI_JLPT[index] != 0) {
+                    throw new RuntimeException("Kanji " + kanji + " present in levels " + KANJI_JLPT[index] + " and " + i);
                 }
+                KANJI_JLPT[index] = (byte) i;
             }
         }
     }
@@ -303,8 +331,12 @@ public final class KanjiUtils {
      * @param kanji the kanji
      * @return JLPT level N1..5, null if the kanji is not present in any of the JLPT test. See http://www.tanos.co.uk/jlpt/jlpt1/kanji/ for details.
      */
-    public static Integer getJlptLevel(final Character kanji) {
-        return JLPT_LEVEL.get(kanji);
+    public static Integer getJlptLevel(final char kanji) {
+        final int index = Arrays.binarySearch(KANJI, kanji);
+        if (index < 0 || KANJI_JLPT[index] == 0) {
+            return null;
+        }
+        return Integer.valueOf(KANJI_JLPT[index]);
     }
 
     public static String getJlptKanjis(final int level) {
@@ -0,0 +1,183 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.kanji;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A compiled romaji-to-kana mapping. The romaji keys are stored in a
+ * character trie; the longest romaji syllable starting at given position is
+ * found by a single walk, without creating any substrings. The trie is
+ * immutable once constructed and thus safe to be used by multiple threads.
+ *
+ * @author Martin Vysny
+ */
+final class RomajiTrie {
+
+    /**
+     * Children of each node: sorted characters.
+     */
+    private char[][] chars = new char[16][];
+    /**
+     * Children of each node: node indices, in the same order as
+     * {@link #chars}.
+     */
+    private int[][] children = new int[16][];
+    /**
+     * The kana for the node, null if no romaji ends at the node.
+     */
+    private String[] kana = new String[16];
+    /**
+     * Length of the romaji ending at the node.
+     */
+    private int[] depth = new int[16];
+    private int nodeCount = 1;
+
+    /**
+     * Compiles the trie.
+     *
+     * @param romajiToKana
+     *            maps lower-case romaji to kana.
+     */
+    RomajiTrie(final Map<String, String> romajiToKana) {
+        chars[0] = new char[0];
+        children[0] = new int[0];
+        for (final Map.Entry<String, String> e : romajiToKana.entrySet()) {
+            int node = 0;
+            for (int i = 0; i < e.getKey().length(); i++) {
+                node = getOrAddChild(node, e.getKey().charAt(i));
+            }
+            kana[node] = e.getValue();
+        }
+    }
+
+    private int getOrAddChild(final int node, final char c) {
+        final int pos = Arrays.binarySearch(chars[node], c);
+        if (pos >= 0) {
+            return children[node][pos];
+        }
+        if (nodeCount == kana.length) {
+            final int newLength = nodeCount * 2;
+            final char[][] newChars = new char[newLength][];
+            System.arraycopy(chars, 0, newChars, 0, nodeCount);
+            chars = newChars;
+            final int[][] newChildren = new int[newLength][];
+            System.arraycopy(children, 0, newChildren, 0, nodeCount);
+            children = newChildren;
+            final String[] newKana = new String[newLength];
+            System.arraycopy(kana, 0, newKana, 0, nodeCount);
+            kana = newKana;
+            final int[] newDepth = new int[newLength];
+            System.arraycopy(depth, 0, newDepth, 0, nodeCount);
+            depth = newDepth;
+        }
+        final int child = nodeCount++;
+        chars[child] = new char[0];
+        children[child] = new int[0];
+        depth[child] = depth[node] + 1;
+        // insert the child, keeping the characters sorted
+        final int insertAt = -pos - 1;
+        final int count = chars[node].length;
+        final char[] c2 = new char[count + 1];
+        final int[] n2 = new int[count + 1];
+        System.arraycopy(chars[node], 0, c2, 0, insertAt);
+        System.arraycopy(children[node], 0, n2, 0, insertAt);
+        c2[insertAt] = c;
+        n2[insertAt] = child;
+        System.arraycopy(chars[node], insertAt, c2, insertAt + 1, count - insertAt);
+        System.arraycopy(children[node], insertAt, n2, insertAt + 1, count - insertAt);
+        chars[node] = c2;
+        children[node] = n2;
+        return child;
+    }
+
+    /**
+     * Lower-cases given character, the same way as {@link String#toLowerCase()}
+     * would do for the romaji keys.
+     *
+     * @param c
+     *            the character
+     * @return lower-case character, or 0 if the character is lower-cased to
+     *         multiple characters and thus never matches a key.
+     */
+    static char toLowerCase(final char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        if (c == '\u0130') {
+            // capital I with a dot is lower-cased to two characters
+            return 0;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    /**
+     * Finds the longest romaji syllable starting at given position. The
+     * matching is case-insensitive.
+     *
+     * @param romaji
+     *            the romaji text
+     * @param from
+     *            the starting position
+     * @param maxLength
+     *            the maximum syllable length to consider.
+     * @return a node which denotes the match (pass it to {@link #getKana(int)}
+     *         and {@link #getLength(int)}), or -1 if no syllable starts at
+     *         given position.
+     */
+    int match(final CharSequence romaji, final int from, final int maxLength) {
+        final int end = Math.min(romaji.length(), from + maxLength);
+        int node = 0;
+        int result = -1;
+        for (int i = from; i < end; i++) {
+            final int pos = Arrays.binarySearch(chars[node], toLowerCase(romaji.charAt(i)));
+            if (pos < 0) {
+                break;
+            }
+            node = children[node][pos];
+            if (kana[node] != null) {
+                result = node;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the kana matched by {@link #match(CharSequence, int, int)}.
+     *
+     * @param node
+     *            the matched node
+     * @return the kana, never null.
+     */
+    String getKana(final int node) {
+        return kana[node];
+    }
+
+    /**
+     * Returns the length of the romaji matched by
+     * {@link #match(CharSequence, int, int)}.
+     *
+     * @param node
+     *            the matched node
+     * @return the number of romaji characters.
+     */
+    int getLength(final int node) {
+        return depth[node];
+    }
+}
@@ -17,12 +17,9 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 package sk.baka.aedict.kanji;
 
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 import java.util.StringTokenizer;
 
 import sk.baka.autils.MiscUtils;
@@ -84,22 +81,34 @@ public enum RomanizationEnum {
     // any alterations of properties of a final reference in a constructor happens-before
     // any code after the object is constructed, thus all threads will see the changes.
     // Moreover, enum constants are initialized in a static initializer, which is thread-safe anyway.
-    private final Map<String, String> katakanaToRomaji = new HashMap<String, String>();
-    private final Map<String, String> hiraganaToRomaji = new HashMap<String, String>();
-    private final Map<String, String> romajiToKatakana = new HashMap<String, String>();
-    private final Map<String, String> romajiToHiragana = new HashMap<String, String>();
+    /**
+     * Maps both katakana and hiragana to romaji.
+     */
+    private final KanaTable kanaToRomaji = new KanaTable();
+    /**
+     * Compiled romaji-to-katakana mapping, used by {@link #toKatakana(String)}.
+     */
+    private final RomajiTrie katakanaTrie;
+    /**
+     * Compiled romaji-to-hiragana mapping, used by {@link #toHiragana(String)}.
+     */
+    private final RomajiTrie hiraganaTrie;
 
     private RomanizationEnum() {
-        parse(new StringTokenizer(getKatakanaTable(), ";"), katakanaToRomaji, romajiToKatakana);
-        parse(new StringTokenizer(getHiraganaTable(), ";"), hiraganaToRomaji, romajiToHiragana);
+        final Map<String, String> romajiToKatakana = new HashMap<String, String>();
+        final Map<String, String> romajiToHiragana = new HashMap<String, String>();
+        parse(new StringTokenizer(getKatakanaTable(), ";"), kanaToRomaji, romajiToKatakana);
+        parse(new StringTokenizer(getHiraganaTable(), ";"), kanaToRomaji, romajiToHiragana);
+        katakanaTrie = new RomajiTrie(romajiToKatakana);
+        hiraganaTrie = new RomajiTrie(romajiToHiragana);
     }
 
-    private static void parse(final StringTokenizer kanaStream, Map<String, String> kanaToRomaji, Map<String, String> romajiToKana) {
+    private static void parse(final StringTokenizer kanaStream, KanaTable kanaToRomaji, Map<String, String> romajiToKana) {
         for (final Object entry : Collections.list(kanaStream)) {
             final String[] mapping = ((String) entry).split("\\=");
             final String kana = mapping[0];
             final String[] romajis = mapping[1].split("\\,");
-            if (kanaToRomaji.put(kana, romajis[0]) != null) {
+            if (!kanaToRomaji.put(kana, romajis[0])) {
                 throw new IllegalArgumentException("Mapping for " + kana + " defined multiple times");
             }
             for (final String romaji : romajis) {
@@ -118,7 +127,7 @@ public enum RomanizationEnum {
      * @return text converted to hiragana, with unknown characters untranslated.
      */
     public String toHiragana(final String romaji) {
-        return toKana(romajiToHiragana, romaji, false);
+        return toKana(hiraganaTrie, romaji, false);
     }
 
     /**
@@ -129,11 +138,11 @@ public enum RomanizationEnum {
      * @return text converted to katakana, with unknown characters untranslated.
      */
     public String toKatakana(final String romaji) {
-        return toKana(romajiToKatakana, romaji, true);
+        return toKana(katakanaTrie, romaji, true);
     }
 
-    private static String toKana(final Map<String, String> romajiToKana, String romaji, final boolean isKatakana) {
-        final StringBuilder sb = new StringBuilder();
+    private static String toKana(final RomajiTrie romajiToKana, String romaji, final boolean isKatakana) {
+        final StringBuilder sb = new StringBuilder(romaji.length());
         for (int i = 0; i < romaji.length(); i++) {
             // optimization - only convert ascii letters
             final char c = romaji.charAt(i);
@@ -145,59 +154,44 @@ public enum RomanizationEnum {
 		    continue;
 		}
 	    }
-            String kana = null;
-            for (int matchLen = Math.min(romaji.length() - i, 4); matchLen >= 1; matchLen--) {
-                final String romajiMatch = romaji.substring(i, i + matchLen).toLowerCase();
-                kana = romajiToKana.get(romajiMatch);
-                if (kana != null) {
-                    i += matchLen - 1;
-                    break;
-                }
-            }
-            if (kana == null && romaji.substring(i).startsWith("nn")) {
-                // check for 'nn'
-                kana = romajiToKana.get("nn");
-                i += 1;
-            }
-            if (kana == null && romaji.substring(i).startsWith("n")) {
-                // a stand-alone n.
-                kana = romajiToKana.get("n");
+            if (isKatakana && isVowel(c) && i > 0 && romaji.charAt(i - 1) == c) {
+                // check for double vowel: in katakana, aa must be replaced by
+                // アー instead of アア. No syllable starts with a vowel
+                // followed by another letter, thus the vowel is always
+                // consumed alone.
+                sb.append('ー');
+                continue;
             }
-            if (kana == null && i < romaji.length() - 1) {
+            final int match = romajiToKana.match(romaji, i, MAX_ROMAJI_LENGTH);
+            if (match >= 0) {
+                sb.append(romajiToKana.getKana(match));
+                i += romajiToKana.getLength(match) - 1;
+            } else if (i < romaji.length() - 1 && isDoubledConsonant(romaji.charAt(i), romaji.charAt(i + 1))) {
                 // check for double consonant: for example "tta" must be
                 // transformed to った
-                String romajiMatch = romaji.substring(i, i + 2);
-                if (isDoubledConsonant(romajiMatch)) {
-                    kana = isKatakana ? "ッ" : "っ";
-                }
-            }
-            if (kana == null) {
+                sb.append(isKatakana ? 'ッ' : 'っ');
+            } else {
                 // give up
-                kana = String.valueOf(romaji.charAt(i));
-            }
-            if (isKatakana) {
-                // check for double vowel: in katakana, aa must be replaced by
-                // アー instead of アア
-                if (isVowel(c) && i > 0 && romaji.charAt(i - 1) == c) {
-                    kana = "ー";
-                }
+                sb.append(c);
             }
-            sb.append(kana);
         }
         return sb.toString();
 
     }
 
+    /**
+     * The longest romaji syllable considered.
+     */
+    private static final int MAX_ROMAJI_LENGTH = 4;
+
     private static boolean isVowel(final char c) {
         return c == 'a' || c == 'u' || c == 'e' || c == 'i' || c == 'o' || c == 'A' || c == 'U' || c == 'E' || c == 'I' || c == 'O';
     }
-    private final static Set<String> DOUBLED_CONSONANTS = new HashSet<String>(Arrays.asList("rr", "tt", "pp", "ss", "dd", "gg", "hh", "jj", "kk", "zz", "cc", "bb", "mm"));
+    private final static String DOUBLED_CONSONANTS = "rtpsdghjkzcbm";
 
-    private static boolean isDoubledConsonant(final String str) {
-        if (str.length() != 2) {
-            throw new AssertionError();
-        }
-        return DOUBLED_CONSONANTS.contains(str.toLowerCase());
+    private static boolean isDoubledConsonant(final char c1, final char c2) {
+        final char lower = RomajiTrie.toLowerCase(c1);
+        return lower == RomajiTrie.toLowerCase(c2) && DOUBLED_CONSONANTS.indexOf(lower) >= 0;
     }
 
     /**
@@ -208,7 +202,15 @@ public enum RomanizationEnum {
      * @return romaji
      */
     public String toRomaji(final char hiraganaOrKatakana) {
-        return toRomaji(String.valueOf(hiraganaOrKatakana));
+        final String romaji = kanaToRomaji.getRomaji(hiraganaOrKatakana);
+        if (romaji != null) {
+            return romaji;
+        }
+        if (hiraganaOrKatakana == 'っ' || hiraganaOrKatakana == 'ッ') {
+            // the small "tsu" only doubles the next character
+            return "";
+        }
+        return String.valueOf(hiraganaOrKatakana);
     }
 
     /**
@@ -232,21 +234,18 @@ public enum RomanizationEnum {
      * @return romaji text
      */
     public String toRomaji(final String hiraganaOrKatakana) {
-        final StringBuilder sb = new StringBuilder();
+        final int length = hiraganaOrKatakana.length();
+        final StringBuilder sb = new StringBuilder(length * 2);
         // last kana character was the small "tsu". this means that we have to
         // double next character.
         boolean wasXtsu = false;
-        for (int i = 0; i < hiraganaOrKatakana.length(); i++) {
+        for (int i = 0; i < length; i++) {
+            final char kana = hiraganaOrKatakana.charAt(i);
             // check two consecutive kana characters first - to support stuff
             // like "pyu" etc
             String romaji = null;
-            String kana = null;
-            if (i < hiraganaOrKatakana.length() - 1) {
-                kana = String.valueOf(hiraganaOrKatakana.substring(i, i + 2));
-                romaji = katakanaToRomaji.get(kana);
-                if (romaji == null) {
-                    romaji = hiraganaToRomaji.get(kana);
-                }
+            if (i < length - 1) {
+                romaji = kanaToRomaji.getRomaji(kana, hiraganaOrKatakana.charAt(i + 1));
                 if (romaji != null) {
                     // success! skip next kana
                     i++;
@@ -254,40 +253,28 @@ public enum RomanizationEnum {
             }
             if (romaji == null) {
                 // nope. convert just a single kana character
-                kana = String.valueOf(hiraganaOrKatakana.charAt(i));
-                romaji = katakanaToRomaji.get(kana);
-            }
-            if (romaji == null) {
-                romaji = hiraganaToRomaji.get(kana);
+                romaji = kanaToRomaji.getRomaji(kana);
             }
             if (romaji != null) {
-                // fix xji and nn
-                if (romaji.equals("nn")) {
-                    romaji = "n";
-                } else if (romaji.startsWith("x")) {
-                    romaji = romaji.substring(1);
-                }
-            }
-            // check for katakana "-"
-            if (romaji == null && "ー".equals(kana)) {
-                // just repeat last letter if there is one
-                if (sb.length() > 0) {
-                    romaji = String.valueOf(sb.charAt(sb.length() - 1));
+                if (wasXtsu) {
+                    sb.append(romaji.charAt(0));
+                    wasXtsu = false;
                 }
+                sb.append(romaji);
+                continue;
             }
             // check for small "tsu"
-            if (romaji == null && ("っ".equals(kana) || "ッ".equals(kana))) {
+            if (kana == 'っ' || kana == 'ッ') {
                 wasXtsu = true;
                 continue;
             }
-            if (romaji == null) {
-                romaji = kana;
-            }
+            // check for katakana "-": just repeat last letter if there is one
+            final char c = kana == 'ー' && sb.length() > 0 ? sb.charAt(sb.length() - 1) : kana;
             if (wasXtsu) {
-                sb.append(romaji.charAt(0));
+                sb.append(c);
                 wasXtsu = false;
             }
-            sb.append(romaji);
+            sb.append(c);
         }
         return sb.toString();
     }
@@ -302,10 +289,6 @@ public enum RomanizationEnum {
      * @return a writing or null if no such kana is known.
      */
     public String getWriting(final String kana) {
-        String result = katakanaToRomaji.get(kana);
-        if (result == null) {
-            result = hiraganaToRomaji.get(kana);
-        }
-        return result;
+        return kanaToRomaji.getWriting(kana);
     }
 }
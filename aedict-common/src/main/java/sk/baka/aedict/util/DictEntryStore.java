@@ -0,0 +1,399 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import sk.baka.aedict.dict.DictEntry;
+import sk.baka.autils.MiscUtils;
+
+/**
+ * A persistent list of {@link DictEntry dictionary entries}, e.g. a notepad
+ * category or the list of recently viewed entries. The file is an
+ * append-only log: adding or removing an entry appends a single record,
+ * without rewriting the list. The log is compacted (rewritten to contain just
+ * the current entries) when it grows too large compared to the list.
+ * <p/>
+ * The file starts with the magic number and the version. Each record is an
+ * operation byte followed by its data: {@link #OP_ADD} is followed by the
+ * kanji, the reading and the English text, each one a length-prefixed UTF-8
+ * string (length -1 denotes null); {@link #OP_REMOVE} is followed by the
+ * index of the removed entry. A truncated or corrupted record at the end of
+ * the file (e.g. after a crash during a write) is dropped.
+ * <p/>
+ * The file is read lazily, on the first access. Thread safe.
+ *
+ * @author Martin Vysny
+ */
+public final class DictEntryStore {
+
+    private static final int MAGIC = 0x4145444c;
+    private static final int VERSION = 1;
+    private static final int OP_ADD = 1;
+    private static final int OP_REMOVE = 2;
+    /**
+     * The log is compacted when the number of records exceeds twice the
+     * number of entries plus this value.
+     */
+    static final int COMPACTION_SLACK = 32;
+    private final File file;
+    /**
+     * The entries, null if not yet loaded.
+     */
+    private List<DictEntry> entries = null;
+    /**
+     * Number of records in the file.
+     */
+    private int records = 0;
+
+    /**
+     * Creates a new store.
+     *
+     * @param file
+     *            the file to store the entries to, not null. Need not exist.
+     */
+    public DictEntryStore(final File file) {
+        Check.checkNotNull("file", file);
+        this.file = file;
+    }
+
+    /**
+     * Returns the file the entries are stored to.
+     *
+     * @return the file, never null.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    private void load() throws IOException {
+        if (entries != null) {
+            return;
+        }
+        final List<DictEntry> result = new ArrayList<DictEntry>();
+        records = 0;
+        boolean corrupted = false;
+        if (file.exists()) {
+            final long fileLength = file.length();
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException(file + " is not a dictionary entry store or has unsupported version");
+                }
+                while (true) {
+                    final int op = in.read();
+                    if (op < 0) {
+                        break;
+                    }
+                    if (op == OP_ADD) {
+                        final String kanji = readString(in, fileLength);
+                        final String reading = readString(in, fileLength);
+                        final String english = readString(in, fileLength);
+                        result.add(new DictEntry(kanji, reading, english));
+                    } else if (op == OP_REMOVE) {
+                        final int index = in.readInt();
+                        if (index < 0 || index >= result.size()) {
+                            corrupted = true;
+                            break;
+                        }
+                        result.remove(index);
+                    } else {
+                        corrupted = true;
+                        break;
+                    }
+                    records++;
+                }
+            } catch (EOFException ex) {
+                // a partially written record
+                corrupted = true;
+            } catch (IllegalArgumentException ex) {
+                // an entry without the English text
+                corrupted = true;
+            } finally {
+                MiscUtils.closeQuietly(in);
+            }
+        }
+        entries = result;
+        if (corrupted) {
+            // drop the unreadable tail, further records must not follow it
+            compact();
+        }
+    }
+
+    /**
+     * Reads a length-prefixed string.
+     *
+     * @param in
+     *            the stream to read from.
+     * @param maxLength
+     *            the file length. A longer string cannot be stored in the
+     *            file, its length prefix is corrupted.
+     * @return the string, may be null.
+     * @throws EOFException
+     *             if the string is truncated or its length is corrupted.
+     */
+    private static String readString(final DataInputStream in, final long maxLength) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > maxLength) {
+            throw new EOFException("Invalid string length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void writeString(final DataOutputStream out, final String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeAdd(final DataOutputStream out, final DictEntry entry) throws IOException {
+        out.write(OP_ADD);
+        writeString(out, entry.kanji);
+        writeString(out, entry.reading);
+        writeString(out, entry.english);
+    }
+
+    private static void writeHeader(final DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * Appends a record to the file. The caller updates the entry list and
+     * invokes {@link #appended()} afterwards. If the append fails, a
+     * partially written record is removed: records appended later must not
+     * follow it.
+     */
+    private void append(final ByteArrayOutputStream record) throws IOException {
+        final boolean exists = file.exists();
+        final long length = exists ? file.length() : 0;
+        final FileOutputStream out = new FileOutputStream(file, true);
+        boolean appended = false;
+        try {
+            if (!exists) {
+                final DataOutputStream header = new DataOutputStream(out);
+                writeHeader(header);
+                header.flush();
+            }
+            record.writeTo(out);
+            out.getFD().sync();
+            appended = true;
+        } finally {
+            MiscUtils.closeQuietly(out);
+            if (!appended) {
+                discardTail(exists, length);
+            }
+        }
+    }
+
+    /**
+     * Restores the file length after a failed append. If that fails too, the
+     * file is rewritten from the entry list, which the failed append did not
+     * modify.
+     *
+     * @param exists
+     *            true if the file existed before the append.
+     * @param length
+     *            the file length before the append.
+     */
+    private void discardTail(final boolean exists, final long length) {
+        try {
+            if (!exists) {
+                if (file.exists() && !file.delete()) {
+                    throw new IOException("Failed to delete " + file);
+                }
+                return;
+            }
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+                raf.getFD().sync();
+            } finally {
+                MiscUtils.closeQuietly(raf);
+            }
+        } catch (IOException ex) {
+            try {
+                compact();
+            } catch (IOException ex2) {
+                // the next load() drops the unreadable tail
+            }
+        }
+    }
+
+    /**
+     * Compacts the log if it contains too many records.
+     */
+    private void appended() throws IOException {
+        records++;
+        if (records > entries.size() * 2 + COMPACTION_SLACK) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the file so that it contains just the current entries. The
+     * new file replaces the old one only when completely written.
+     */
+    private void compact() throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        final FileOutputStream fout = new FileOutputStream(tmp);
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fout));
+            writeHeader(out);
+            for (final DictEntry entry : entries) {
+                writeAdd(out, entry);
+            }
+            out.flush();
+            fout.getFD().sync();
+        } finally {
+            MiscUtils.closeQuietly(fout);
+        }
+        if (!tmp.renameTo(file)) {
+            // some file systems do not replace on rename
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Failed to write " + file);
+            }
+        }
+        records = entries.size();
+    }
+
+    /**
+     * Returns the entries.
+     *
+     * @return a copy of the entry list, never null, may be empty.
+     * @throws IOException
+     *             on i/o error.
+     */
+    public synchronized List<DictEntry> get() throws IOException {
+        load();
+        return new ArrayList<DictEntry>(entries);
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the entry count.
+     * @throws IOException
+     *             on i/o error.
+     */
+    public synchronized int size() throws IOException {
+        load();
+        return entries.size();
+    }
+
+    /**
+     * Appends an entry to the end of the list.
+     *
+     * @param entry
+     *            the entry, not null.
+     * @throws IOException
+     *             on i/o error.
+     */
+    public synchronized void add(final DictEntry entry) throws IOException {
+        Check.checkNotNull("entry", entry);
+        load();
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        writeAdd(new DataOutputStream(record), entry);
+        append(record);
+        entries.add(entry);
+        appended();
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param index
+     *            the index of the entry to remove.
+     * @throws IOException
+     *             on i/o error.
+     */
+    public synchronized void remove(final int index) throws IOException {
+        load();
+        if (index < 0 || index >= entries.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + entries.size());
+        }
+        final ByteArrayOutputStream record = new ByteArrayOutputStream(5);
+        final DataOutputStream out = new DataOutputStream(record);
+        out.write(OP_REMOVE);
+        out.writeInt(index);
+        append(record);
+        entries.remove(index);
+        appended();
+    }
+
+    /**
+     * Replaces all entries. The file is rewritten.
+     *
+     * @param entries
+     *            the new entries, not null.
+     * @throws IOException
+     *             on i/o error.
+     */
+    public synchronized void set(final List<? extends DictEntry> entries) throws IOException {
+        Check.checkNotNull("entries", entries);
+        final List<DictEntry> old = this.entries;
+        this.entries = new ArrayList<DictEntry>(entries);
+        try {
+            compact();
+        } catch (IOException ex) {
+            // the file was not modified
+            this.entries = old;
+            throw ex;
+        }
+    }
+
+    /**
+     * Checks if the store file exists.
+     *
+     * @return true if the file exists, false if nothing was stored yet.
+     */
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Returns the number of records in the file. For testing purposes only.
+     *
+     * @return the record count.
+     */
+    synchronized int getRecordCount() {
+        return records;
+    }
+}
@@ -0,0 +1,335 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Properties;
+
+import sk.baka.autils.MiscUtils;
+
+/**
+ * Downloads a file so that an interrupted download can be resumed. The data
+ * is written to the target file directly; a journal file next to it records
+ * the source URL, the server validator (the ETag or the Last-Modified header)
+ * and the number of bytes which were flushed to the storage. A next attempt
+ * truncates the file to the journaled length and requests the rest by a HTTP
+ * <code>Range</code> request, guarded by <code>If-Range</code>: if the file
+ * changed on the server the server sends the whole file and the download
+ * restarts from zero.
+ * <p/>
+ * Not thread safe: a single target file must be downloaded by a single
+ * thread.
+ *
+ * @author Martin Vysny
+ */
+public final class ResumableDownload {
+
+    /**
+     * Receives the download progress.
+     */
+    public static interface ProgressListener {
+
+        /**
+         * Invoked periodically during the download.
+         *
+         * @param downloaded
+         *            number of bytes of the file present on the storage,
+         *            including bytes downloaded by earlier attempts.
+         * @param total
+         *            the file size, -1 if not known.
+         */
+        void onProgress(long downloaded, long total);
+    }
+    /**
+     * The journal is updated (and the file synced) after this number of
+     * bytes.
+     */
+    static final int CHECKPOINT_BYTES = 512 * 1024;
+    private static final int BUFFER_SIZE = 32768;
+    private static final String KEY_URL = "url";
+    private static final String KEY_VALIDATOR = "validator";
+    private static final String KEY_LENGTH = "length";
+    private static final String KEY_COMMITTED = "committed";
+    private static final String KEY_COMPLETE = "complete";
+    private final URL source;
+    private final File target;
+    private final File journalFile;
+    private int connectTimeout = 30000;
+    private int readTimeout = 60000;
+
+    /**
+     * Creates a new download.
+     *
+     * @param source
+     *            the file to download, not null.
+     * @param target
+     *            the file to download to, not null. The journal is stored in
+     *            the same directory, with the <code>.journal</code> suffix.
+     */
+    public ResumableDownload(final URL source, final File target) {
+        Check.checkNotNull("source", source);
+        Check.checkNotNull("target", target);
+        this.source = source;
+        this.target = target;
+        this.journalFile = new File(target.getPath() + ".journal");
+    }
+
+    /**
+     * Sets the connect and read timeouts.
+     *
+     * @param connectTimeout
+     *            the connect timeout in milliseconds.
+     * @param readTimeout
+     *            the read timeout in milliseconds.
+     */
+    public void setTimeouts(final int connectTimeout, final int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Returns the file the data is downloaded to.
+     *
+     * @return the target file.
+     */
+    public File getTarget() {
+        return target;
+    }
+
+    private Properties readJournal() {
+        if (!journalFile.exists() || !target.exists()) {
+            return null;
+        }
+        final Properties journal = new Properties();
+        try {
+            final InputStream in = new FileInputStream(journalFile);
+            try {
+                journal.load(in);
+            } finally {
+                MiscUtils.closeQuietly(in);
+            }
+            if (!source.toString().equals(journal.getProperty(KEY_URL))) {
+                return null;
+            }
+            Long.parseLong(journal.getProperty(KEY_COMMITTED));
+            Long.parseLong(journal.getProperty(KEY_LENGTH));
+            return journal;
+        } catch (Exception ex) {
+            // a corrupted journal, restart the download
+            return null;
+        }
+    }
+
+    private void writeJournal(final String validator, final long length, final long committed, final boolean complete) throws IOException {
+        final Properties journal = new Properties();
+        journal.setProperty(KEY_URL, source.toString());
+        if (validator != null) {
+            journal.setProperty(KEY_VALIDATOR, validator);
+        }
+        journal.setProperty(KEY_LENGTH, String.valueOf(length));
+        journal.setProperty(KEY_COMMITTED, String.valueOf(committed));
+        journal.setProperty(KEY_COMPLETE, String.valueOf(complete));
+        // write a new journal and replace the old one, so that a crash never
+        // leaves a half-written journal
+        final File tmp = new File(journalFile.getPath() + ".tmp");
+        final FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            journal.store(out, null);
+            out.getFD().sync();
+        } finally {
+            MiscUtils.closeQuietly(out);
+        }
+        if (!tmp.renameTo(journalFile)) {
+            // some file systems do not replace on rename
+            journalFile.delete();
+            if (!tmp.renameTo(journalFile)) {
+                throw new IOException("Failed to write " + journalFile);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes which are already downloaded and will not
+     * be downloaded again.
+     *
+     * @return the number of bytes, 0 if there is no partial download.
+     */
+    public long getResumableLength() {
+        final Properties journal = readJournal();
+        return journal == null ? 0 : Long.parseLong(journal.getProperty(KEY_COMMITTED));
+    }
+
+    /**
+     * Downloads the file, resuming a previous attempt if possible. If the
+     * download fails or the thread is interrupted, the already downloaded
+     * data is kept and the next invocation continues.
+     *
+     * @param listener
+     *            notified about the progress, may be null.
+     * @return the downloaded file, never null.
+     * @throws IOException
+     *             on i/o error or if the server responds with an error.
+     *             {@link InterruptedIOException} if the thread was
+     *             interrupted.
+     */
+    public File download(final ProgressListener listener) throws IOException {
+        final Properties journal = readJournal();
+        long offset = 0;
+        String validator = null;
+        if (journal != null) {
+            offset = Long.parseLong(journal.getProperty(KEY_COMMITTED));
+            validator = journal.getProperty(KEY_VALIDATOR);
+            if (Boolean.parseBoolean(journal.getProperty(KEY_COMPLETE)) && target.length() == offset) {
+                return target;
+            }
+        }
+        final URLConnection conn = source.openConnection();
+        conn.setConnectTimeout(connectTimeout);
+        conn.setReadTimeout(readTimeout);
+        final boolean isHttp = conn instanceof HttpURLConnection;
+        if (!isHttp || validator == null) {
+            // cannot check that the partial data is still valid
+            offset = 0;
+        }
+        if (offset > 0) {
+            conn.setRequestProperty("Range", "bytes=" + offset + "-");
+            conn.setRequestProperty("If-Range", validator);
+        }
+        try {
+            long length = conn.getContentLength();
+            if (isHttp) {
+                final int code = ((HttpURLConnection) conn).getResponseCode();
+                if (code == HttpURLConnection.HTTP_PARTIAL) {
+                    if (getRangeStart(conn) != offset) {
+                        throw new IOException("Server returned an unexpected range: " + conn.getHeaderField("Content-Range"));
+                    }
+                    if (length >= 0) {
+                        length += offset;
+                    }
+                } else if (code == HttpURLConnection.HTTP_OK) {
+                    // the server ignored the range or the file has changed
+                    offset = 0;
+                } else {
+                    if (code == 416) {
+                        // requested range not satisfiable - the partial data
+                        // is unusable, restart on the next attempt
+                        discard();
+                    }
+                    throw new IOException("Failed to download " + source + ": HTTP " + code + " " + ((HttpURLConnection) conn).getResponseMessage());
+                }
+                validator = conn.getHeaderField("ETag");
+                if (validator == null) {
+                    validator = conn.getHeaderField("Last-Modified");
+                }
+            } else {
+                validator = null;
+            }
+            final File dir = target.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Failed to create directory '" + dir + "'");
+            }
+            final RandomAccessFile out = new RandomAccessFile(target, "rw");
+            try {
+                out.setLength(offset);
+                out.seek(offset);
+                writeJournal(validator, length, offset, false);
+                final long downloaded = copy(conn.getInputStream(), out, offset, length, validator, listener);
+                if (length >= 0 && downloaded != length) {
+                    throw new IOException("Connection closed after " + downloaded + " of " + length + " bytes");
+                }
+                out.getFD().sync();
+                writeJournal(validator, downloaded, downloaded, true);
+            } finally {
+                MiscUtils.closeQuietly(out);
+            }
+            return target;
+        } finally {
+            if (isHttp) {
+                ((HttpURLConnection) conn).disconnect();
+            }
+        }
+    }
+
+    private long copy(final InputStream in, final RandomAccessFile out, final long offset, final long length, final String validator, final ProgressListener listener) throws IOException {
+        try {
+            final byte[] buf = new byte[BUFFER_SIZE];
+            long downloaded = offset;
+            long checkpoint = offset + CHECKPOINT_BYTES;
+            int bufLen;
+            while ((bufLen = in.read(buf)) >= 0) {
+                out.write(buf, 0, bufLen);
+                downloaded += bufLen;
+                if (downloaded >= checkpoint) {
+                    // the data must reach the storage before the journal
+                    // claims it
+                    out.getFD().sync();
+                    writeJournal(validator, length, downloaded, false);
+                    checkpoint = downloaded + CHECKPOINT_BYTES;
+                    if (listener != null) {
+                        listener.onProgress(downloaded, length);
+                    }
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    out.getFD().sync();
+                    writeJournal(validator, length, downloaded, false);
+                    throw new InterruptedIOException();
+                }
+            }
+            if (listener != null) {
+                listener.onProgress(downloaded, length);
+            }
+            return downloaded;
+        } finally {
+            MiscUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Parses the first byte position of the <code>Content-Range</code>
+     * header, e.g. <code>bytes 100-199/200</code>.
+     */
+    private static long getRangeStart(final URLConnection conn) throws IOException {
+        final String range = conn.getHeaderField("Content-Range");
+        if (range == null || !range.startsWith("bytes ") || range.indexOf('-') < 0) {
+            throw new IOException("Invalid Content-Range: " + range);
+        }
+        try {
+            return Long.parseLong(range.substring("bytes ".length(), range.indexOf('-')).trim());
+        } catch (NumberFormatException ex) {
+            throw new IOExceptionWithCause("Invalid Content-Range: " + range, ex);
+        }
+    }
+
+    /**
+     * Deletes the downloaded data and the journal.
+     */
+    public void discard() {
+        target.delete();
+        journalFile.delete();
+        new File(journalFile.getPath() + ".tmp").delete();
+    }
+}
@@ -20,8 +20,15 @@ package sk.baka.aedict.dict;
 import static org.junit.Assert.*;
 import java.text.ParseException;
 
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
 import org.junit.Test;
 import sk.baka.tools.test.Assert;
 
@@ -32,70 +39,6 @@ import sk.baka.tools.test.Assert;
  */
 public class DictTypeEnumTest {
 
-    @Test
-    public void complexExactEdictMatchesEng() {
-        assertFalse(matches("query", "QUERYQUERY"));
-        assertFalse(matches("query", "QUERY QUERY"));
-        assertFalse(matches("query", "queryquery"));
-        assertFalse(matches("query", "query query"));
-        assertFalse(matches("query", "query-query"));
-        assertFalse(matches("query", "query'query"));
-        assertFalse(matches("query", "query.query"));
-        assertFalse(matches("query", "query,query"));
-        assertTrue(matches("query", "query; query"));
-        assertTrue(matches("query", "foo-bar-baz [f] (p) query; query"));
-        assertTrue(matches("mother", "(n) (hum) mother/(P)"));
-    }
-
-    @Test
-    public void complexSubstringEdictMatchesEng() {
-        assertFalse(matchesSubstring("query", "foobarbaz"));
-        assertTrue(matchesSubstring("query", "QUERYQUERY"));
-        assertTrue(matchesSubstring("query", "QUERY QUERY"));
-        assertTrue(matchesSubstring("query", "queryquery"));
-        assertTrue(matchesSubstring("query", "query query"));
-        assertTrue(matchesSubstring("query", "query-query"));
-        assertTrue(matchesSubstring("query", "query'query"));
-        assertTrue(matchesSubstring("query", "query.query"));
-        assertTrue(matchesSubstring("query", "query,query"));
-        assertTrue(matchesSubstring("query", "query; query"));
-        assertTrue(matchesSubstring("query", "foo-bar-baz [f] (p) query; query"));
-        assertTrue(matchesSubstring("mother", "(n) (hum) mother/(P)"));
-    }
-
-    @Test
-    public void complexEdictAndMatchesEng() {
-        assertFalse(matchesSubstring("query AND foo", "foobarbaz"));
-        assertTrue(matchesSubstring("baz AND foo", "foobarbaz"));
-        assertFalse(matches("query AND foo", "foobarbaz"));
-        assertFalse(matches("baz AND foo", "foobarbaz"));
-        assertTrue(matches("baz AND foo", "baz;foo"));
-        assertTrue(matches("baz AND foo", "foo;bar;baz"));
-    }
-    @Test
-    public void complexSubstringEdictMatchesJp() {
-        assertTrue(DictTypeEnum.Edict.matchesHandlesAnd(entryjp("あはは"), true, "はは", MatcherEnum.Substring));
-        assertFalse(DictTypeEnum.Edict.matchesHandlesAnd(entryjp("あはは"), true, "はは", MatcherEnum.Exact));
-        assertTrue(DictTypeEnum.Edict.matchesHandlesAnd(entryjp("はは"), true, "はは", MatcherEnum.Substring));
-        assertTrue(DictTypeEnum.Edict.matchesHandlesAnd(entryjp("はは"), true, "はは", MatcherEnum.Exact));
-    }
-
-    private DictEntry entryjp(final String jp) {
-        return new DictEntry(null, jp, "English");
-    }
-
-    private DictEntry entry(final String eng) {
-        return new DictEntry(null, null, eng);
-    }
-
-    private boolean matchesSubstring(final String query, final String eng) {
-        return DictTypeEnum.Edict.matchesHandlesAnd(entry(eng), false, query, MatcherEnum.Substring);
-    }
-
-    private boolean matches(final String query, final String eng) {
-        return DictTypeEnum.Edict.matchesHandlesAnd(entry(eng), false, query, MatcherEnum.Exact);
-    }
-
     @Test
     public void simpleKatakanaParse() throws ParseException {
         final DictEntry e = DictTypeEnum.Edict.getEntry(doc("aaa / bbb"), "eng");
@@ -137,7 +80,7 @@ public class DictTypeEnumTest {
         q.query = new String[]{"foo", "bar"};
         q.isJapanese = true;
         q.validate();
-        Assert.assertArrayEquals(DictTypeEnum.Edict.getLuceneQuery(q), new String[]{"(jp:\"WfooW\" OR jp:\"WbarW\") AND common:t", "(jp:\"WfooW\" OR jp:\"WbarW\") AND common:f"});
+        Assert.assertArrayEquals(LuceneQueryStrings.getLuceneQuery(q), new String[]{"(jp:\"WfooW\" OR jp:\"WbarW\") AND common:t", "(jp:\"WfooW\" OR jp:\"WbarW\") AND common:f"});
     }
 
     @Test
@@ -147,7 +90,7 @@ public class DictTypeEnumTest {
         q.query = new String[]{"foo AND goo", "bar"};
         q.isJapanese = true;
         q.validate();
-        Assert.assertArrayEquals(DictTypeEnum.Edict.getLuceneQuery(q), new String[]{"((jp:Wfoo AND jp:Wgoo) OR jp:\"Wbar\") AND common:t", "((jp:Wfoo AND jp:Wgoo) OR jp:\"Wbar\") AND common:f"});
+        Assert.assertArrayEquals(LuceneQueryStrings.getLuceneQuery(q), new String[]{"((jp:Wfoo AND jp:Wgoo) OR jp:\"Wbar\") AND common:t", "((jp:Wfoo AND jp:Wgoo) OR jp:\"Wbar\") AND common:f"});
     }
 
     @Test
@@ -155,17 +98,78 @@ public class DictTypeEnumTest {
         final SearchQuery q = new SearchQuery(DictTypeEnum.Tanaka);
         q.query = new String[]{"foo", "bar"};
         q.isJapanese = true;
-        Assert.assertArrayEquals(DictTypeEnum.Tanaka.getLuceneQuery(q), new String[]{"(japanese:\"foo\") OR (jp-deinflected:\"foo\") OR (japanese:\"bar\") OR (jp-deinflected:\"bar\")"});
+        Assert.assertArrayEquals(LuceneQueryStrings.getLuceneQuery(q), new String[]{"(japanese:\"foo\") OR (jp-deinflected:\"foo\") OR (japanese:\"bar\") OR (jp-deinflected:\"bar\")"});
         q.isJapanese = false;
-        Assert.assertArrayEquals(DictTypeEnum.Tanaka.getLuceneQuery(q), new String[]{"(english:\"foo\") OR (english:\"bar\")"});
+        Assert.assertArrayEquals(LuceneQueryStrings.getLuceneQuery(q), new String[]{"(english:\"foo\") OR (english:\"bar\")"});
     }
     @Test
     public void testTanakaAndQueryCreator() {
         final SearchQuery q = new SearchQuery(DictTypeEnum.Tanaka);
         q.query = new String[]{"foo AND goo", "bar"};
         q.isJapanese = true;
-        Assert.assertArrayEquals(DictTypeEnum.Tanaka.getLuceneQuery(q), new String[]{"(japanese:\"foo\" AND japanese:\"goo\") OR (jp-deinflected:\"foo\" AND jp-deinflected:\"goo\") OR (japanese:\"bar\") OR (jp-deinflected:\"bar\")"});
+        Assert.assertArrayEquals(LuceneQueryStrings.getLuceneQuery(q), new String[]{"(japanese:\"foo\" AND japanese:\"goo\") OR (jp-deinflected:\"foo\" AND jp-deinflected:\"goo\") OR (japanese:\"bar\") OR (jp-deinflected:\"bar\")"});
         q.isJapanese = false;
-        Assert.assertArrayEquals(DictTypeEnum.Tanaka.getLuceneQuery(q), new String[]{"(english:\"foo\" AND english:\"goo\") OR (english:\"bar\")"});
+        Assert.assertArrayEquals(LuceneQueryStrings.getLuceneQuery(q), new String[]{"(english:\"foo\" AND english:\"goo\") OR (english:\"bar\")"});
+    }
+
+    @Test
+    public void builtQueriesMatchParsedQueries() throws Exception {
+        SearchQuery q = new SearchQuery(DictTypeEnum.Edict);
+        q.matcher = MatcherEnum.StartsWith;
+        q.query = new String[]{"はは AND ちち", "かあ"};
+        q.isJapanese = true;
+        assertSameQueries(q);
+        q.matcher = MatcherEnum.Exact;
+        assertSameQueries(q);
+        assertSameQueries(SearchQuery.searchEnEdict("big cat", false));
+        assertSameQueries(SearchQuery.searchEnEdict("mother AND father", false));
+        q = new SearchQuery(DictTypeEnum.Tanaka);
+        q.query = new String[]{"はは AND ちち", "かあ"};
+        q.isJapanese = true;
+        assertSameQueries(q);
+        q.isJapanese = false;
+        q.query = new String[]{"big cat AND dog"};
+        assertSameQueries(q);
+        assertSameQueries(SearchQuery.kanjiSearch('母', null, null));
+        assertSameQueries(SearchQuery.kanjiSearch('母', 5, null));
+        assertSameQueries(SearchQuery.kanjiSearch('母', 9, 1));
+        q = new SearchQuery(DictTypeEnum.Kanjidic);
+        q.matcher = MatcherEnum.Exact;
+        q.skip = "1-2-3";
+        q.radical = 5;
+        assertSameQueries(q);
+    }
+
+    @Test
+    public void exactEnglishQueryUsesExactTerms() {
+        final SearchQuery q = SearchQuery.searchEnEdict("Mother", true);
+        assertTrue(DictTypeEnum.Edict.usesExactTerms(q));
+        final BooleanQuery expected = new BooleanQuery();
+        expected.add(new TermQuery(new Term(DictTypeEnum.EDICT_ENGLISH_EXACT, "mother")), BooleanClause.Occur.MUST);
+        expected.add(new TermQuery(new Term("contents", "mother")), BooleanClause.Occur.SHOULD);
+        Assert.assertArrayEquals(new Query[]{expected}, DictTypeEnum.Edict.getQueries(q));
+        assertFalse(DictTypeEnum.Edict.usesExactTerms(SearchQuery.searchEnEdict("mother", false)));
+        assertFalse(DictTypeEnum.Edict.usesExactTerms(SearchQuery.searchEnEdict("1st", true)));
+        assertFalse(DictTypeEnum.Tanaka.usesExactTerms(SearchQuery.searchEnEdict("mother", true)));
+    }
+
+    private static void assertSameQueries(final SearchQuery q) throws org.apache.lucene.queryParser.ParseException {
+        final QueryParser parser = new QueryParser(LuceneSearch.LUCENE_VERSION, "contents", new StandardAnalyzer(LuceneSearch.LUCENE_VERSION));
+        final String[] expected = LuceneQueryStrings.getLuceneQuery(q);
+        final Query[] actual = q.dictType.getQueries(q);
+        if (q.dictType.getPreferredTerm() != null) {
+            // EDICT: the common:t / common:f split is performed by the collector
+            assertEquals(1, actual.length);
+            assertEquals(2, expected.length);
+            assertEquals(parser.parse(expected[0]), QueryBuilder.all(actual[0], new TermQuery(q.dictType.getPreferredTerm())));
+            assertEquals(parser.parse(expected[1]), QueryBuilder.all(actual[0], new TermQuery(new Term("common", "f"))));
+        } else {
+            assertEquals(expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(parser.parse(expected[i]), actual[i]);
+            }
+        }
+        // the cached queries must be the same
+        Assert.assertArrayEquals(actual, q.dictType.getQueries(q));
     }
 }
@@ -192,4 +192,28 @@ public class EdictEntryTest {
         assertEquals(1, senses.get(5).size());
         assertEquals(6, senses.size());
     }
+
+    @Test
+    public void storedSensesMatchParsedSenses() {
+        final String english = "(v5b,vt) (1) (uk) to play with (a toy, one's hair, etc.); to fiddle with; (2) to toy with (one's emotions, etc.); to trifle with; (3) to do with something as one pleases; (4) to appreciate;/(P)/";
+        final EdictEntry parsed = new EdictEntry("翫ぶ", "もてあそぶ", english, true);
+        final EdictEntry stored = new EdictEntry("翫ぶ", "もてあそぶ", english, true, EdictSenses.parse(english, true).encode());
+        assertEquals(parsed.getSenses(), stored.getSenses());
+        assertEquals(parsed.getMarkings(), stored.getMarkings());
+        assertEquals(markings("P", "v5b", "vt"), stored.getMarkings());
+        assertTrue(stored.isGodan());
+        assertFalse(stored.isIchidan());
+    }
+
+    @Test
+    public void invalidStoredSensesAreIgnored() {
+        final String english = "(v1,vi) to eat too much; to overeat;";
+        assertNull(EdictSenses.decode(new byte[]{1, 0}, english));
+        assertNull(EdictSenses.decode(new byte[]{99}, english));
+        // created for a different English part
+        assertNull(EdictSenses.decode(EdictSenses.parse(english + english, false).encode(), english));
+        final EdictEntry e = new EdictEntry("食い過ぎる", "くいすぎる", english, false, new byte[]{1, 0});
+        assertTrue(e.isIchidan());
+        assertEquals("to overeat", e.getSenses().get(0).get(1));
+    }
 }
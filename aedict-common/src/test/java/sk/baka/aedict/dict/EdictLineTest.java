@@ -0,0 +1,62 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.dict;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link EdictLine} class.
+ * @author Martin Vysny
+ */
+public class EdictLineTest {
+
+    @Test
+    public void parseKanjiEntry() {
+        final EdictLine line = EdictLine.parse(" 母 [ はは ] /(n) (hum) mother/(P)// ");
+        assertEquals("母", line.getKanji());
+        assertEquals("はは", line.getReading());
+        assertEquals("(n) (hum) mother/(P)", line.getEnglish());
+        assertTrue(line.isCommon());
+    }
+
+    @Test
+    public void parseKanaEntry() {
+        final EdictLine line = EdictLine.parse("コンピューター /(n) computer/");
+        assertNull(line.getKanji());
+        assertEquals("コンピューター", line.getReading());
+        assertEquals("(n) computer", line.getEnglish());
+        assertFalse(line.isCommon());
+    }
+
+    @Test
+    public void commonMarkingMustBeInEnglishPart() {
+        assertFalse(EdictLine.parse("(P) /foo/").isCommon());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingSlash() {
+        EdictLine.parse("母 [はは]");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingClosingBracket() {
+        EdictLine.parse("母 [はは /mother/");
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.dict;
+
+import sk.baka.autils.ListBuilder;
+
+/**
+ * The original string query builder, kept as a test oracle for
+ * {@link DictTypeEnum#getQueries(SearchQuery)}: the QueryParser must produce
+ * the same queries from these strings.
+ *
+ * @author Martin Vysny
+ */
+final class LuceneQueryStrings {
+
+    private LuceneQueryStrings() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Returns a Lucene query which matches given query as close as possible.
+     *
+     * @param query
+     *            the query.
+     * @return the Apache Lucene query, or a list of queries. Must not be null
+     *         nor empty. If multiple queries are returned they have to be
+     *         executed in given order.
+     */
+    static String[] getLuceneQuery(final SearchQuery query) {
+        switch (query.dictType) {
+            case Edict:
+                return edict(query);
+            case Kanjidic:
+                return kanjidic(query);
+            case Tanaka:
+                return sentences(query, "english");
+            case Tatoeba:
+                return sentences(query, "translations");
+        }
+        throw new IllegalArgumentException("Unsupported dictionary type: " + query.dictType);
+    }
+
+    private static String getJpSearchTerm(String term, MatcherEnum matcher) {
+        switch (matcher) {
+            case EndsWith: return term + "W";
+            case Exact: return "W" + term + "W";
+            case StartsWith: return "W" + term;
+            case Substring: return term;
+        }
+        throw new RuntimeException("Unknown matcher: " + matcher);
+    }
+
+    private static String[] edict(final SearchQuery query) {
+        final ListBuilder sb = new ListBuilder(" OR ");
+        for (final String q : query.query) {
+            if (query.isJapanese) {
+                if (q.contains(" AND ")) {
+                    final ListBuilder lb = new ListBuilder(" AND ");
+                    for (final String term : q.split(" AND ")) {
+                        lb.add("jp:" + getJpSearchTerm(term.trim(), query.matcher));
+                    }
+                    sb.add("(" + lb + ")");
+                } else {
+                    sb.add("jp:\"" + getJpSearchTerm(q.trim(), query.matcher) + "\"");
+                }
+            } else {
+                if (q.contains(" AND ")) {
+                    sb.add("(" + q.trim() + ")");
+                } else {
+                    sb.add("\"" + q.trim() + "\"");
+                }
+            }
+        }
+        // first the common words are returned, then return all the rest
+        return new String[]{"(" + sb + ") AND common:t", "(" + sb + ") AND common:f"};
+    }
+
+    private static String[] kanjidic(final SearchQuery q) {
+        // q.query can be null in case we are performing e.g. a pure SKIP
+        // lookup (see the SkipActivity for details)
+        final ListBuilder qb = new ListBuilder(" AND ");
+        if (q.query != null) {
+            if (q.query.length != 1) {
+                throw new IllegalStateException("Kanjidic search requires a single kanji character search");
+            }
+            qb.add("kanji:\"" + q.query[0].trim() + "\"");
+        }
+        if (q.strokeCount != null) {
+            final int plusMinus = q.strokesPlusMinus == null ? 0 : q.strokesPlusMinus;
+            if ((plusMinus > 3) || (plusMinus < 0)) {
+                throw new IllegalStateException("Invalid value: " + q.strokesPlusMinus);
+            }
+            final String sc;
+            if (plusMinus > 0) {
+                sc = "[" + (q.strokeCount - plusMinus) + " TO " + (q.strokeCount + plusMinus) + "]";
+            } else {
+                sc = String.valueOf(q.strokeCount);
+            }
+            qb.add("(strokes:" + sc + ")");
+        }
+        if (q.skip != null) {
+            qb.add("skip:" + q.skip);
+        }
+        if (q.radical != null) {
+            qb.add("radical:" + q.radical);
+        }
+        return new String[]{qb.toString()};
+    }
+
+    /**
+     * Tanaka and Tatoeba: the japanese queries search the japanese and the
+     * jp-deinflected fields.
+     */
+    private static String[] sentences(final SearchQuery query, final String translationField) {
+        final ListBuilder result = new ListBuilder(" OR ");
+        for (final String q : query.trim().query) {
+            final String[] qs = q.split("\\s+AND\\s+");
+            if (query.isJapanese) {
+                add(result, "japanese", qs);
+                add(result, "jp-deinflected", qs);
+            } else {
+                add(result, translationField, qs);
+            }
+        }
+        return new String[]{result.toString()};
+    }
+
+    private static void add(final ListBuilder bu, final String prefix, final String[] andTerms) {
+        final ListBuilder b = new ListBuilder(" AND ");
+        for (final String term : andTerms) {
+            b.add(prefix + ":\"" + term.trim() + "\"");
+        }
+        bu.add("(" + b.toString() + ")");
+    }
+}
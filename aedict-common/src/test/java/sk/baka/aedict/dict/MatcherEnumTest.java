@@ -66,4 +66,13 @@ public class MatcherEnumTest {
         assertFalse(MatcherEnum.EndsWith.matches("query", "QUERY asd QUERYda dar4"));
         assertTrue(MatcherEnum.EndsWith.matches("query", "asd QUERYda dar4QUERY"));
     }
+
+    @Test
+    public void indexOfIgnoreCase() {
+        assertEquals(-1, MatcherEnum.indexOfIgnoreCase("foo", "query", 0));
+        assertEquals(0, MatcherEnum.indexOfIgnoreCase("QUERY asd query", "query", 0));
+        assertEquals(10, MatcherEnum.indexOfIgnoreCase("QUERY asd query", "query", 1));
+        assertEquals(-1, MatcherEnum.indexOfIgnoreCase("QUERY asd query", "query", 11));
+        assertEquals(3, MatcherEnum.indexOfIgnoreCase("foo", "", 3));
+    }
 }
@@ -0,0 +1,135 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.dict;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link QueryMatcher} class.
+ * @author Martin Vysny
+ */
+public class QueryMatcherTest {
+
+    private static QueryMatcher matcher(final MatcherEnum m, final String... query) {
+        return new QueryMatcher(DictTypeEnum.Edict, false, m, query);
+    }
+
+    private static DictEntry entry(final String eng) {
+        return new DictEntry(null, "はは", eng);
+    }
+
+    @Test
+    public void matchesAnyAlternative() {
+        final QueryMatcher m = matcher(MatcherEnum.Exact, "Mother", "father");
+        assertTrue(m.matches(entry("(n) (hum) mother/(P)")));
+        assertTrue(m.matches(entry("father")));
+        assertFalse(m.matches(entry("grandmother")));
+    }
+
+    @Test
+    public void matchesAllAndTerms() {
+        final QueryMatcher m = matcher(MatcherEnum.Substring, "BAZ  AND foo");
+        assertTrue(m.matches(entry("foobarbaz")));
+        assertFalse(m.matches(entry("foobar")));
+    }
+
+    @Test
+    public void blankQueryAndInvalidEntryAlwaysMatch() {
+        assertTrue(matcher(MatcherEnum.Exact, (String[]) null).matches(entry("foo")));
+        assertTrue(matcher(MatcherEnum.Exact, "bar").matches(new DictEntry(null, null, "foo")));
+    }
+
+    private static boolean matches(final String query, final String eng) {
+        return matcher(MatcherEnum.Exact, query).matches(entry(eng));
+    }
+
+    private static boolean matchesSubstring(final String query, final String eng) {
+        return matcher(MatcherEnum.Substring, query).matches(entry(eng));
+    }
+
+    private static boolean matchesJp(final String query, final String jp, final MatcherEnum m) {
+        return new QueryMatcher(DictTypeEnum.Edict, true, m, new String[]{query}).matches(new DictEntry(null, jp, "English"));
+    }
+
+    @Test
+    public void complexExactEdictMatchesEng() {
+        assertFalse(matches("query", "QUERYQUERY"));
+        assertFalse(matches("query", "QUERY QUERY"));
+        assertFalse(matches("query", "queryquery"));
+        assertFalse(matches("query", "query query"));
+        assertFalse(matches("query", "query-query"));
+        assertFalse(matches("query", "query'query"));
+        assertFalse(matches("query", "query.query"));
+        assertFalse(matches("query", "query,query"));
+        assertTrue(matches("query", "query; query"));
+        assertTrue(matches("query", "foo-bar-baz [f] (p) query; query"));
+        assertTrue(matches("mother", "(n) (hum) mother/(P)"));
+    }
+
+    @Test
+    public void complexSubstringEdictMatchesEng() {
+        assertFalse(matchesSubstring("query", "foobarbaz"));
+        assertTrue(matchesSubstring("query", "QUERYQUERY"));
+        assertTrue(matchesSubstring("query", "QUERY QUERY"));
+        assertTrue(matchesSubstring("query", "queryquery"));
+        assertTrue(matchesSubstring("query", "query query"));
+        assertTrue(matchesSubstring("query", "query-query"));
+        assertTrue(matchesSubstring("query", "query'query"));
+        assertTrue(matchesSubstring("query", "query.query"));
+        assertTrue(matchesSubstring("query", "query,query"));
+        assertTrue(matchesSubstring("query", "query; query"));
+        assertTrue(matchesSubstring("query", "foo-bar-baz [f] (p) query; query"));
+        assertTrue(matchesSubstring("mother", "(n) (hum) mother/(P)"));
+    }
+
+    @Test
+    public void complexEdictAndMatchesEng() {
+        assertFalse(matchesSubstring("query AND foo", "foobarbaz"));
+        assertTrue(matchesSubstring("baz AND foo", "foobarbaz"));
+        assertFalse(matches("query AND foo", "foobarbaz"));
+        assertFalse(matches("baz AND foo", "foobarbaz"));
+        assertTrue(matches("baz AND foo", "baz;foo"));
+        assertTrue(matches("baz AND foo", "foo;bar;baz"));
+    }
+
+    @Test
+    public void complexSubstringEdictMatchesJp() {
+        assertTrue(matchesJp("はは", "あはは", MatcherEnum.Substring));
+        assertFalse(matchesJp("はは", "あはは", MatcherEnum.Exact));
+        assertTrue(matchesJp("はは", "はは", MatcherEnum.Substring));
+        assertTrue(matchesJp("はは", "はは", MatcherEnum.Exact));
+    }
+
+    @Test
+    public void exactTermsContainAllExactMatches() {
+        final String[] lines = {"QUERYQUERY", "query query", "query-query", "query; query", "foo-bar-baz [f] (p) query; query", "(n) (hum) mother/(P)", "baz;foo", "foo;bar;baz", "(n) one's mother/(n) big  cat/a big cat"};
+        final String[] queries = {"query", "query query", "query-query", "foo-bar-baz", "mother", "one's mother", "baz", "foo", "bar", "big cat", "big  cat", "cat", "p"};
+        for (final String line : lines) {
+            for (final String query : queries) {
+                if (matches(query, line)) {
+                    assertTrue(query + " in " + line, DictTypeEnum.getEnglishExactTerms(line).contains(query));
+                }
+            }
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("n", "hum", "mother", "p")), DictTypeEnum.getEnglishExactTerms("(n) (hum) Mother/(P)"));
+    }
+}
@@ -105,4 +105,16 @@ public class KanjiUtilsTest {
         assertNull(KanjiUtils.getJlptLevel('可'));
         assertEquals((Integer) 2, KanjiUtils.getJlptLevel('庁'));
     }
+
+    @Test
+    public void testCommonality() {
+        assertEquals(1, KanjiUtils.getCommonality('か'));
+        assertEquals(1, KanjiUtils.getCommonality('カ'));
+        assertEquals(2, KanjiUtils.getCommonality('日'));
+        assertEquals(3, KanjiUtils.getCommonality('一'));
+        // not among the 1000 most common kanji
+        assertEquals(1002, KanjiUtils.getCommonality('握'));
+        assertEquals(1002, KanjiUtils.getCommonality('a'));
+        assertEquals(6, KanjiUtils.getCommonality("日 一か"));
+    }
 }
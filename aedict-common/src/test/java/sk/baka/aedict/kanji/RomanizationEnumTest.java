@@ -122,4 +122,32 @@ public class RomanizationEnumTest {
 	assertEquals("ぼんやり", RomanizationEnum.Hepburn.toHiragana("bon'yari"));
 	assertEquals("ぼんやり", RomanizationEnum.NihonShiki.toHiragana("bon'yari"));
     }
+
+    @Test
+    public void testUpperCaseAndLongVowels() {
+        assertEquals("ずっと", RomanizationEnum.Hepburn.toHiragana("ZUTTO"));
+        assertEquals("ずっと", RomanizationEnum.Hepburn.toHiragana("zuTto"));
+        assertEquals("ときょ", RomanizationEnum.NihonShiki.toHiragana("ToKyo"));
+        assertEquals("カー", RomanizationEnum.Hepburn.toKatakana("kaa"));
+        assertEquals("カー", RomanizationEnum.Hepburn.toKatakana("KAA"));
+        assertEquals("かあ", RomanizationEnum.Hepburn.toHiragana("kaa"));
+        assertEquals("1 ジ?", RomanizationEnum.Hepburn.toKatakana("1 ji?"));
+    }
+
+    @Test
+    public void testDigraphsAndSokuonToRomaji() {
+        assertEquals("koohii", RomanizationEnum.Hepburn.toRomaji("コーヒー"));
+        assertEquals("chaccha", RomanizationEnum.Hepburn.toRomaji("ちゃっちゃ"));
+        assertEquals("ja", RomanizationEnum.Hepburn.toRomaji("ぢゃ"));
+        assertEquals("ki", RomanizationEnum.Hepburn.toRomaji('き'));
+        assertEquals("a", RomanizationEnum.Hepburn.toRomaji('a'));
+    }
+
+    @Test
+    public void testGetWriting() {
+        assertEquals("xzu", RomanizationEnum.Hepburn.getWriting("づ"));
+        assertEquals("xja", RomanizationEnum.Hepburn.getWriting("ヂャ"));
+        assertEquals("du", RomanizationEnum.NihonShiki.getWriting("づ"));
+        assertEquals(null, RomanizationEnum.Hepburn.getWriting("a"));
+    }
 }
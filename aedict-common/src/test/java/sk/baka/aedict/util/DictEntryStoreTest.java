@@ -0,0 +1,139 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sk.baka.aedict.dict.DictEntry;
+
+/**
+ * Tests the {@link DictEntryStore} class.
+ *
+ * @author Martin Vysny
+ */
+public class DictEntryStoreTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws Exception {
+        file = File.createTempFile("notepad", ".bin");
+        file.delete();
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    private static DictEntry entry(final int i) {
+        return new DictEntry(i % 2 == 0 ? null : "母" + i, "はは" + i, "(n) mother/" + i);
+    }
+
+    @Test
+    public void emptyStore() throws Exception {
+        final DictEntryStore store = new DictEntryStore(file);
+        assertTrue(store.get().isEmpty());
+        assertFalse(store.exists());
+    }
+
+    @Test
+    public void appendedEntriesSurviveReload() throws Exception {
+        DictEntryStore store = new DictEntryStore(file);
+        store.add(entry(1));
+        store.add(entry(2));
+        store.add(entry(3));
+        store.remove(0);
+        assertEquals(4, store.getRecordCount());
+        store = new DictEntryStore(file);
+        final List<DictEntry> entries = store.get();
+        assertEquals(Arrays.asList(entry(2), entry(3)), entries);
+        assertNull(entries.get(0).kanji);
+        assertEquals("母3", entries.get(1).kanji);
+    }
+
+    @Test
+    public void setRewritesTheFile() throws Exception {
+        DictEntryStore store = new DictEntryStore(file);
+        store.add(entry(1));
+        store.add(entry(2));
+        store.set(Arrays.asList(entry(5)));
+        assertEquals(1, store.getRecordCount());
+        store = new DictEntryStore(file);
+        assertEquals(Arrays.asList(entry(5)), store.get());
+    }
+
+    @Test
+    public void logIsCompacted() throws Exception {
+        DictEntryStore store = new DictEntryStore(file);
+        for (int i = 0; i < 100; i++) {
+            store.add(entry(i));
+            store.remove(0);
+        }
+        assertTrue(store.getRecordCount() <= DictEntryStore.COMPACTION_SLACK);
+        store.add(entry(1000));
+        store = new DictEntryStore(file);
+        assertEquals(Arrays.asList(entry(1000)), store.get());
+    }
+
+    @Test
+    public void truncatedRecordIsDropped() throws Exception {
+        DictEntryStore store = new DictEntryStore(file);
+        store.add(entry(1));
+        store.add(entry(2));
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 3);
+        } finally {
+            raf.close();
+        }
+        store = new DictEntryStore(file);
+        assertEquals(Arrays.asList(entry(1)), store.get());
+        // new records must not follow the garbage
+        store.add(entry(3));
+        store = new DictEntryStore(file);
+        assertEquals(Arrays.asList(entry(1), entry(3)), store.get());
+    }
+
+    @Test
+    public void corruptedLengthIsDropped() throws Exception {
+        DictEntryStore store = new DictEntryStore(file);
+        store.add(entry(1));
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // an add record whose kanji claims to be 2GB long
+            raf.seek(raf.length());
+            raf.write(1);
+            raf.writeInt(Integer.MAX_VALUE);
+        } finally {
+            raf.close();
+        }
+        store = new DictEntryStore(file);
+        assertEquals(Arrays.asList(entry(1)), store.get());
+    }
+}
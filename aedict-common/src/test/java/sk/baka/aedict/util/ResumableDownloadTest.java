@@ -0,0 +1,180 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the {@link ResumableDownload} class against a local HTTP server.
+ *
+ * @author Martin Vysny
+ */
+public class ResumableDownloadTest {
+
+    /**
+     * Serves {@link #data} with the {@link #etag} ETag, supports
+     * <code>Range</code> and <code>If-Range</code>.
+     */
+    private class Handler implements HttpHandler {
+
+        public void handle(HttpExchange exchange) throws IOException {
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            final String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            ranges.add(range);
+            int start = 0;
+            if (range != null && (ifRange == null || ifRange.equals(etag))) {
+                start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+            }
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (start > 0) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + (data.length - 1) + "/" + data.length);
+            }
+            exchange.sendResponseHeaders(start > 0 ? 206 : 200, data.length - start);
+            final OutputStream out = exchange.getResponseBody();
+            try {
+                // simulate a broken connection after breakAfter bytes
+                final int end = breakAfter >= 0 ? Math.min(data.length, start + breakAfter) : data.length;
+                out.write(data, start, end - start);
+                out.flush();
+            } finally {
+                breakAfter = -1;
+                exchange.close();
+            }
+        }
+    }
+    private HttpServer server;
+    private byte[] data;
+    private volatile String etag = "\"v1\"";
+    private volatile int breakAfter = -1;
+    private final List<String> ranges = new ArrayList<String>();
+    private File target;
+    private URL url;
+
+    @Before
+    public void startServer() throws IOException {
+        data = new byte[ResumableDownload.CHECKPOINT_BYTES * 3 + 1234];
+        new Random(1).nextBytes(data);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/dict.zip", new Handler());
+        server.start();
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/dict.zip");
+        target = File.createTempFile("download", ".zip");
+        target.delete();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        new ResumableDownload(url, target).discard();
+    }
+
+    private byte[] readTarget() throws IOException {
+        final RandomAccessFile f = new RandomAccessFile(target, "r");
+        try {
+            final byte[] result = new byte[(int) f.length()];
+            f.readFully(result);
+            return result;
+        } finally {
+            f.close();
+        }
+    }
+
+    private void downloadAndFail(final ResumableDownload download) {
+        try {
+            download.download(null);
+            fail("The download should have failed");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void downloadsWholeFile() throws IOException {
+        new ResumableDownload(url, target).download(null);
+        assertArrayEquals(data, readTarget());
+        assertEquals(1, ranges.size());
+        assertNull(ranges.get(0));
+    }
+
+    @Test
+    public void resumesBrokenDownload() throws IOException {
+        final int sent = ResumableDownload.CHECKPOINT_BYTES * 2 + 100;
+        breakAfter = sent;
+        final ResumableDownload download = new ResumableDownload(url, target);
+        downloadAndFail(download);
+        final long resumable = download.getResumableLength();
+        assertTrue(resumable >= ResumableDownload.CHECKPOINT_BYTES);
+        assertTrue(resumable <= sent);
+        final long[] progress = new long[2];
+        download.download(new ResumableDownload.ProgressListener() {
+
+            public void onProgress(long downloaded, long total) {
+                progress[0] = downloaded;
+                progress[1] = total;
+            }
+        });
+        assertArrayEquals(data, readTarget());
+        assertEquals("bytes=" + resumable + "-", ranges.get(1));
+        assertEquals(data.length, progress[0]);
+        assertEquals(data.length, progress[1]);
+        // the download is complete, nothing is downloaded again
+        download.download(null);
+        assertEquals(2, ranges.size());
+    }
+
+    @Test
+    public void restartsWhenFileChanges() throws IOException {
+        breakAfter = ResumableDownload.CHECKPOINT_BYTES * 2 + 100;
+        final ResumableDownload download = new ResumableDownload(url, target);
+        downloadAndFail(download);
+        assertTrue(download.getResumableLength() > 0);
+        etag = "\"v2\"";
+        data[0]++;
+        download.download(null);
+        assertArrayEquals(data, readTarget());
+    }
+
+    @Test
+    public void discardRemovesPartialData() throws IOException {
+        breakAfter = ResumableDownload.CHECKPOINT_BYTES * 2 + 100;
+        final ResumableDownload download = new ResumableDownload(url, target);
+        downloadAndFail(download);
+        download.discard();
+        assertFalse(target.exists());
+        assertEquals(0, download.getResumableLength());
+    }
+}
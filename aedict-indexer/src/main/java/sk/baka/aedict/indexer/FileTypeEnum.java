@@ -29,7 +29,6 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.index.IndexWriter;
 import sk.baka.aedict.dict.DictTypeEnum;
-import sk.baka.aedict.dict.EdictEntry;
 import sk.baka.aedict.dict.KanjidicEntry;
 import sk.baka.aedict.indexer.Main.Config;
 import sk.baka.aedict.kanji.KanjiUtils;
@@ -59,27 +58,30 @@ public enum FileTypeEnum {
         }
 
         public IDictParser newParser(Config cfg) {
-            return new IDictParser() {
+            return new IParallelDictParser() {
 
                 public void addLine(String line, IndexWriter writer) throws IOException {
+                    final Document doc = parse(Collections.singletonList(line));
+                    if (doc != null) {
+                        writer.addDocument(doc);
+                    }
+                }
+
+                public boolean endsRecord(String line) {
+                    return true;
+                }
+
+                public Document parse(List<String> record) {
+                    final String line = record.get(0);
                     if (line.startsWith("　？？？")) {
-                        return;
+                        return null;
                     }
-                    final Document doc = new Document();
                     try {
-                        final EdictEntry entry = DictTypeEnum.parseEdictEntry(line);
-                        doc.add(new Field("contents", line, Field.Store.YES, Field.Index.ANALYZED));
-                        doc.add(new Field("common", entry.isCommon ? "t" : "f", Field.Store.NO, Field.Index.NOT_ANALYZED));
-                        final ListBuilder jp = new ListBuilder(" ");
-                        if (entry.kanji != null) {
-                            jp.add("W" + entry.kanji + "W");
-                        }
-                        jp.add("W" + entry.reading + "W");
-                        doc.add(new Field("jp", jp.toString(), Field.Store.NO, Field.Index.ANALYZED));
-                        writer.addDocument(doc);
+                        return DictTypeEnum.newEdictDocument(line);
                     } catch (Exception ex) {
                         System.out.println("Failed to parse edict line " + line + ", skipping: " + ex);
                         ex.printStackTrace();
+                        return null;
                     }
                 }
 
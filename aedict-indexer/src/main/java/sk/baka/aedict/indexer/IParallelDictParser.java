@@ -0,0 +1,46 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.indexer;
+
+import java.io.IOException;
+import java.util.List;
+import org.apache.lucene.document.Document;
+
+/**
+ * A dictionary parser which is able to parse records independently of each
+ * other, in multiple threads. A record is a group of consecutive lines
+ * producing a single Lucene document. See {@link ParallelIndexer} for details.
+ * @author Martin Vysny
+ */
+public interface IParallelDictParser extends IDictParser {
+
+    /**
+     * Checks if given line is the last line of a record.
+     * @param line the file line, not a comment nor a blank line.
+     * @return true if the line completes the record, false if more lines follow.
+     */
+    boolean endsRecord(final String line);
+
+    /**
+     * Parses a record. Must be thread-safe: invoked concurrently from multiple threads.
+     * @param record lines of the record, the last one {@link #endsRecord(String) ends} the record.
+     * @return the document to add to the index, null if the record is to be skipped.
+     * @throws IOException on i/o error
+     */
+    Document parse(final List<String> record) throws IOException;
+}
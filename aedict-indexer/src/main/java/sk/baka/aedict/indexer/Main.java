@@ -24,6 +24,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
@@ -49,11 +50,15 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.commons.cli.Options;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import sk.baka.aedict.dict.EdictDelta;
 import sk.baka.aedict.dict.LuceneSearch;
+import sk.baka.aedict.dict.SuggestionIndex;
+import sk.baka.aedict.dict.WordIndex;
 import sk.baka.autils.MiscUtils;
 
 /**
@@ -64,7 +69,10 @@ import sk.baka.autils.MiscUtils;
 public class Main {
 
     private static final String BASE_DIR = "target";
-    static final String LUCENE_INDEX = BASE_DIR + "/index";
+    /**
+     * The indexer writes the Lucene index to this directory.
+     */
+    public static final String LUCENE_INDEX = BASE_DIR + "/index";
 
     /**
      * Performs EDICT download and indexing tasks.
@@ -138,6 +146,23 @@ public class Main {
         public boolean upload;
         public String password;
         public String name;
+        /**
+         * Number of threads parsing the dictionary file.
+         */
+        public int threads = Runtime.getRuntime().availableProcessors();
+        /**
+         * If not null then a delta against this older EDICT snapshot is produced instead of the index.
+         */
+        public File deltaSource;
+        /**
+         * The version of the {@link #deltaSource} snapshot.
+         */
+        public String deltaVersion;
+        /**
+         * The published version of the new EDICT file, i.e. the version the
+         * delta updates the index to.
+         */
+        public String deltaToVersion;
         public String getTargetFileName() {
             return fileType.getTargetFileName(name);
         }
@@ -158,6 +183,19 @@ public class Main {
         public BufferedReader newReader() throws IOException {
             return new BufferedReader(new InputStreamReader(newInputStream(), encoding));
         }
+
+        public BufferedReader newDeltaSourceReader() throws IOException {
+            InputStream in = new FileInputStream(deltaSource);
+            if (deltaSource.getName().endsWith(".gz")) {
+                in = new GZIPInputStream(in);
+            }
+            return new BufferedReader(new InputStreamReader(in, encoding));
+        }
+
+        public String getDeltaFileName() {
+            final String target = getTargetFileName();
+            return target.substring(0, target.length() - ".zip".length()) + "-" + deltaVersion + ".delta";
+        }
     }
     public final Config config = new Config();
 
@@ -181,6 +219,18 @@ public class Main {
         opts.addOption(null, "upload", false, "Uploads the dictionary file to www.baka.sk");
         opts.addOption("p", "password", true, "Upload SSH password");
         opts.addOption("n", "name", true, "(Optional) A custom dictionary name");
+        opt = new Option(null, "delta", true, "(Optional) Instead of the index, produce a delta file which updates an index of given older EDICT file to the new one. Requires --delta-version and --delta-to-version");
+        opt.setArgName("file");
+        opts.addOption(opt);
+        opt = new Option(null, "delta-version", true, "The version of the older EDICT file, as reported by the .version file of its index");
+        opt.setArgName("version");
+        opts.addOption(opt);
+        opt = new Option(null, "delta-to-version", true, "The version of the new EDICT file, as published in the .version file of its index");
+        opt.setArgName("version");
+        opts.addOption(opt);
+        opt = new Option("j", "threads", true, "(Optional) Number of threads parsing the dictionary file, defaults to the number of CPUs");
+        opt.setArgName("threads");
+        opts.addOption(opt);
         return opts;
     }
 
@@ -224,6 +274,30 @@ public class Main {
         config.upload = cl.hasOption("upload");
         config.password = cl.getOptionValue('p');
         config.name = cl.getOptionValue('n');
+        if (cl.hasOption("delta")) {
+            if (config.fileType != FileTypeEnum.Edict) {
+                throw new ParseException("--delta is supported for EDICT only");
+            }
+            if (!cl.hasOption("delta-version")) {
+                throw new ParseException("--delta requires --delta-version");
+            }
+            if (!cl.hasOption("delta-to-version")) {
+                throw new ParseException("--delta requires --delta-to-version");
+            }
+            config.deltaSource = new File(cl.getOptionValue("delta"));
+            config.deltaVersion = cl.getOptionValue("delta-version").trim();
+            config.deltaToVersion = cl.getOptionValue("delta-to-version").trim();
+        }
+        if (cl.hasOption('j')) {
+            try {
+                config.threads = Integer.parseInt(cl.getOptionValue('j'));
+            } catch (NumberFormatException ex) {
+                throw new ParseException("Invalid number of threads: " + cl.getOptionValue('j'));
+            }
+            if (config.threads < 1) {
+                throw new ParseException("Invalid number of threads: " + config.threads);
+            }
+        }
     }
 
     private static void printHelp() {
@@ -242,6 +316,10 @@ public class Main {
         sb.append(config.urlSource != null ? "URL" : "file");
         sb.append(' ').append(config.source);
         System.out.println(sb.toString());
+        if (config.deltaSource != null) {
+            writeDelta();
+            return;
+        }
         indexWithLucene();
         zipLuceneIndex();
         if (config.upload) {
@@ -270,12 +348,15 @@ public class Main {
                         IndexWriter.MaxFieldLength.UNLIMITED);
                 try {
                     final IDictParser parser = config.fileType.newParser(config);
-                    indexWithLucene(dictionary, luceneWriter, parser);
+                    indexWithLucene(dictionary, luceneWriter, parser, config.threads);
                     System.out.println("Optimizing Lucene index");
                     luceneWriter.optimize();
                 } finally {
                     luceneWriter.close();
                 }
+                if (config.fileType == FileTypeEnum.Edict) {
+                    writeWordIndexes(directory);
+                }
             } finally {
                 closeQuietly(directory);
             }
@@ -284,6 +365,40 @@ public class Main {
         }
         System.out.println("Finished Lucene indexing");
     }
+
+    private static void writeWordIndexes(final Directory directory) throws IOException {
+        System.out.println("Writing the word and suggestion indexes");
+        final IndexReader reader = IndexReader.open(directory, true);
+        try {
+            WordIndex.write(reader, new File(LUCENE_INDEX));
+            SuggestionIndex.write(reader, new File(LUCENE_INDEX));
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void writeDelta() throws IOException {
+        System.out.println("Computing delta against " + config.deltaSource + " version " + config.deltaVersion);
+        final EdictDelta delta;
+        final BufferedReader from = config.newDeltaSourceReader();
+        try {
+            final BufferedReader to = config.newReader();
+            try {
+                delta = EdictDelta.diff(from, config.deltaVersion, to, config.deltaToVersion);
+            } finally {
+                IOUtils.closeQuietly(to);
+            }
+        } finally {
+            IOUtils.closeQuietly(from);
+        }
+        final OutputStream out = new FileOutputStream(config.getDeltaFileName());
+        try {
+            delta.write(out);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+        System.out.println("Finished - the delta file '" + config.getDeltaFileName() + "' was created: " + delta.removed.size() + " entries removed, " + delta.added.size() + " entries added");
+    }
     private static final Logger log = Logger.getLogger(Main.class.getName());
 
     private static void closeQuietly(final Directory d) {
@@ -295,7 +410,14 @@ public class Main {
     }
 
     private static void indexWithLucene(BufferedReader edict,
-            IndexWriter luceneWriter, final IDictParser parser) throws IOException {
+            IndexWriter luceneWriter, final IDictParser parser, final int threads) throws IOException {
+        if (threads > 1 && parser instanceof IParallelDictParser) {
+            System.out.println("Parsing in " + threads + " threads");
+            new ParallelIndexer((IParallelDictParser) parser, threads).index(edict, luceneWriter);
+            parser.onFinish(luceneWriter);
+            luceneWriter.commit();
+            return;
+        }
         for (String line = edict.readLine(); line != null; line = edict.readLine()) {
             if (line.startsWith("#")) {
                 // skip comments
@@ -0,0 +1,213 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.indexer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import sk.baka.aedict.util.IOExceptionWithCause;
+
+/**
+ * Indexes a dictionary file in a producer/consumer pipeline: the calling
+ * thread reads the file and groups lines into records, a pool of workers
+ * parses batches of records into Lucene documents and a single writer thread
+ * adds the documents to the index. The writer adds the documents in the order
+ * of the source file, thus the index is identical to the index produced by
+ * the single-threaded {@link IDictParser#addLine(String, IndexWriter)} loop.
+ * @author Martin Vysny
+ */
+public class ParallelIndexer {
+
+    /**
+     * Number of records parsed by a single worker task.
+     */
+    private static final int BATCH_SIZE = 256;
+    /**
+     * Marks the end of the batch queue.
+     */
+    private static final Future<List<Document>> END = new FutureTask<List<Document>>(new Callable<List<Document>>() {
+
+        public List<Document> call() {
+            return null;
+        }
+    });
+
+    static {
+        ((FutureTask<List<Document>>) END).run();
+    }
+    private final IParallelDictParser parser;
+    private final int threads;
+
+    /**
+     * Creates the indexer.
+     * @param parser the parser, not null.
+     * @param threads number of parser threads, at least 1.
+     */
+    public ParallelIndexer(final IParallelDictParser parser, final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Parameter threads: invalid value " + threads + ": must be at least 1");
+        }
+        this.parser = parser;
+        this.threads = threads;
+    }
+
+    /**
+     * Indexes all lines of given file. Comments and blank lines are skipped.
+     * Does not invoke {@link IDictParser#onFinish(IndexWriter)}.
+     * @param in the dictionary file
+     * @param writer the Lucene document writer.
+     * @throws IOException on i/o error
+     */
+    public void index(final BufferedReader in, final IndexWriter writer) throws IOException {
+        // bounded, to prevent the reader from loading the whole file into the memory
+        final BlockingQueue<Future<List<Document>>> batches = new ArrayBlockingQueue<Future<List<Document>>>(threads * 4);
+        final ExecutorService workers = Executors.newFixedThreadPool(threads);
+        final Writer w = new Writer(batches, writer);
+        w.start();
+        try {
+            List<List<String>> batch = new ArrayList<List<String>>(BATCH_SIZE);
+            List<String> record = new ArrayList<String>(2);
+            for (String line = in.readLine(); line != null && w.failure == null; line = in.readLine()) {
+                if (line.startsWith("#")) {
+                    // skip comments
+                    continue;
+                }
+                if (line.trim().length() == 0) {
+                    // skip blank lines
+                    continue;
+                }
+                record.add(line);
+                if (!parser.endsRecord(line)) {
+                    continue;
+                }
+                batch.add(record);
+                record = new ArrayList<String>(2);
+                if (batch.size() >= BATCH_SIZE) {
+                    batches.put(workers.submit(new Parse(batch)));
+                    batch = new ArrayList<List<String>>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                batches.put(workers.submit(new Parse(batch)));
+            }
+        } catch (InterruptedException ex) {
+            throw new IOExceptionWithCause("Interrupted", ex);
+        } finally {
+            workers.shutdown();
+            w.finish();
+        }
+        if (w.failure instanceof IOException) {
+            throw (IOException) w.failure;
+        }
+        if (w.failure instanceof RuntimeException) {
+            throw (RuntimeException) w.failure;
+        }
+        if (w.failure != null) {
+            throw new IOExceptionWithCause("Indexing failed: " + w.failure, w.failure);
+        }
+    }
+
+    /**
+     * Parses a batch of records.
+     */
+    private class Parse implements Callable<List<Document>> {
+
+        private final List<List<String>> records;
+
+        public Parse(final List<List<String>> records) {
+            this.records = records;
+        }
+
+        public List<Document> call() throws Exception {
+            final List<Document> result = new ArrayList<Document>(records.size());
+            for (final List<String> record : records) {
+                final Document doc = parser.parse(record);
+                if (doc != null) {
+                    result.add(doc);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Adds parsed documents to the index, in the order of the source file.
+     */
+    private static class Writer extends Thread {
+
+        private final BlockingQueue<Future<List<Document>>> batches;
+        private final IndexWriter writer;
+        /**
+         * The first failure. After a failure the writer only drains the queue.
+         */
+        volatile Throwable failure = null;
+
+        public Writer(final BlockingQueue<Future<List<Document>>> batches, final IndexWriter writer) {
+            super("lucene-writer");
+            this.batches = batches;
+            this.writer = writer;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (Future<List<Document>> batch = batches.take(); batch != END; batch = batches.take()) {
+                    if (failure != null) {
+                        continue;
+                    }
+                    try {
+                        for (final Document doc : batch.get()) {
+                            writer.addDocument(doc);
+                        }
+                    } catch (ExecutionException ex) {
+                        failure = ex.getCause();
+                    } catch (Throwable t) {
+                        failure = t;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                failure = ex;
+            }
+        }
+
+        /**
+         * Waits until all queued documents are written.
+         * @throws IOException if interrupted.
+         */
+        void finish() throws IOException {
+            try {
+                batches.put(END);
+                join();
+            } catch (InterruptedException ex) {
+                interrupt();
+                throw new IOExceptionWithCause("Interrupted", ex);
+            }
+        }
+    }
+}
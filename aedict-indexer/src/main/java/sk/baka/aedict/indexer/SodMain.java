@@ -17,6 +17,7 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 package sk.baka.aedict.indexer;
 
+import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -24,21 +25,26 @@ import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.zip.GZIPOutputStream;
 import org.apache.commons.io.IOUtils;
 
 /**
  * Indexes the SOD images. Expects a directory with unpacked SOD archive contents - essentially a bunch of png files named
- * [KANJI].png. This directory is packed to a huge file, packed with gzip, with the following contents:
+ * [KANJI].png. This directory is packed to a huge file with the following contents:
  * <h4>The header:</h4>
  * 4 byte int - number of kanji entries; for each entry: 2-byte UTF-16 kanji character, 4-byte png offset in the file.
- * The entries are ordered by the "offset" value, ascending.
+ * The entries are ordered by the "offset" value, ascending, and also by the kanji, thus the header may be
+ * binary-searched.
  *<h4>The contents:</h4>
  * Basically just a streams of PNG images, one after another.
+ * <p/>
+ * The file is written twice: <code>target/sod.dat</code> is the plain file which can be memory-mapped directly,
+ * <code>target/sod.dat.gz</code> is the gzipped file for download.
  * @author Martin Vysny
  */
 public class SodMain {
@@ -58,7 +64,7 @@ public class SodMain {
             throw new IOException(sodUtf8Location + " does not exist");
         }
     }
-    private final Map<Character, File> pngLengths = new HashMap<Character, File>();
+    private final Map<Character, File> pngLengths = new TreeMap<Character, File>();
 
     private void run() throws IOException {
         computePngLengths();
@@ -85,11 +91,17 @@ public class SodMain {
 
     private void createPackedFile() throws IOException {
         System.out.println("Packaging " + pngLengths.size() + " pngs");
-        final DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream("target/sod.dat.gz")));
+        writePackedFile(new BufferedOutputStream(new FileOutputStream("target/sod.dat")));
+        writePackedFile(new GZIPOutputStream(new FileOutputStream("target/sod.dat.gz")));
+    }
+
+    private void writePackedFile(final OutputStream stream) throws IOException {
+        final DataOutputStream out = new DataOutputStream(stream);
         try {
             // write index table
             int offset = pngLengths.size() * 6 + 4;
             out.writeInt(pngLengths.size());
+            // sorted by the kanji
             final List<Character> kanjis = new ArrayList<Character>(pngLengths.keySet());
             for (final Character kanji : kanjis) {
                 out.writeChar(kanji);
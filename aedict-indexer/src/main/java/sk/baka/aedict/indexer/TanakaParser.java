@@ -41,7 +41,7 @@ import sk.baka.autils.MiscUtils;
  * Parses Tanaka dictionary.
  * @author Martin Vysny
  */
-public class TanakaParser implements IDictParser {
+public class TanakaParser implements IParallelDictParser {
 
     private final Edict edict;
 
@@ -57,8 +57,6 @@ public class TanakaParser implements IDictParser {
         }
         return false;
     }
-    private String lastLine = null;
-    private Document doc;
 
     public static class Edict {
 
@@ -224,25 +222,47 @@ public class TanakaParser implements IDictParser {
         }
     }
 
+    /**
+     * Lines of the record being read by {@link #addLine(String, IndexWriter)}.
+     */
+    private final List<String> record = new ArrayList<String>(2);
+
     public void addLine(String line, IndexWriter writer) throws IOException {
-        if (line.startsWith("A: ")) {
-            doc = new Document();
-            lastLine = line.substring(3);
-            lastLine = lastLine.substring(0, lastLine.indexOf('\t'));
-            final ArrayList<Object> parsed = Collections.list(new StringTokenizer(line.substring(3), "\t#"));
-            final String japanese = (String) parsed.get(0);
-            final String english = (String) parsed.get(1);
-            doc.add(new Field("japanese", japanese, Field.Store.YES, Field.Index.ANALYZED));
-            doc.add(new Field("english", english, Field.Store.YES, Field.Index.ANALYZED));
-            return;
+        record.add(line);
+        if (endsRecord(line)) {
+            final Document doc = parse(record);
+            record.clear();
+            writer.addDocument(doc);
         }
-        if (!line.startsWith("B: ")) {
-            throw new IllegalArgumentException("The TanakaCorpus file has unexpected format: line " + line);
+    }
+
+    public boolean endsRecord(String line) {
+        return !line.startsWith("A: ");
+    }
+
+    public Document parse(List<String> record) {
+        String lastLine = null;
+        Document doc = null;
+        for (final String line : record) {
+            if (line.startsWith("A: ")) {
+                doc = new Document();
+                lastLine = line.substring(3);
+                lastLine = lastLine.substring(0, lastLine.indexOf('\t'));
+                final ArrayList<Object> parsed = Collections.list(new StringTokenizer(line.substring(3), "\t#"));
+                final String japanese = (String) parsed.get(0);
+                final String english = (String) parsed.get(1);
+                doc.add(new Field("japanese", japanese, Field.Store.YES, Field.Index.ANALYZED));
+                doc.add(new Field("english", english, Field.Store.YES, Field.Index.ANALYZED));
+                continue;
+            }
+            if (!line.startsWith("B: ")) {
+                throw new IllegalArgumentException("The TanakaCorpus file has unexpected format: line " + line);
+            }
+            final BLineParser parser = new BLineParser(edict, lastLine, line.substring(3));
+            doc.add(new Field("jp-deinflected", parser.dictionaryFormWordList, Field.Store.YES, Field.Index.ANALYZED));
+            doc.add(new Field("kana", CompressionTools.compressString(parser.kana), Field.Store.YES));
         }
-        final BLineParser parser = new BLineParser(edict, lastLine, line.substring(3));
-        doc.add(new Field("jp-deinflected", parser.dictionaryFormWordList, Field.Store.YES, Field.Index.ANALYZED));
-        doc.add(new Field("kana", CompressionTools.compressString(parser.kana), Field.Store.YES));
-        writer.addDocument(doc);
+        return doc;
     }
 
     public void onFinish(IndexWriter writer) {
@@ -0,0 +1,136 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.indexer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import sk.baka.aedict.dict.DictEntry;
+import sk.baka.aedict.dict.DictTypeEnum;
+import sk.baka.aedict.dict.EdictDelta;
+import sk.baka.aedict.dict.EdictEntry;
+import sk.baka.aedict.dict.LuceneSearch;
+import sk.baka.aedict.dict.SuggestionIndex;
+import sk.baka.aedict.dict.WordIndex;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link EdictDelta} class.
+ * @author Martin Vysny
+ */
+public class EdictDeltaTest {
+
+    private static List<String> lines;
+
+    @BeforeClass
+    public static void index() throws Exception {
+        Utils.index(null, "edict.gz", FileTypeEnum.Edict);
+        final BufferedReader in = new BufferedReader(new InputStreamReader(new GZIPInputStream(Utils.getResource("edict.gz").openStream()), "EUC_JP"));
+        try {
+            lines = new ArrayList<String>();
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                if (!line.startsWith("#") && line.trim().length() > 0 && !line.startsWith("　？？？")) {
+                    lines.add(line);
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private static BufferedReader toReader(final List<String> lines) {
+        final StringBuilder sb = new StringBuilder();
+        for (final String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return new BufferedReader(new StringReader(sb.toString()));
+    }
+
+    private static Set<String> getContents() throws Exception {
+        final Directory directory = FSDirectory.open(new File(Main.LUCENE_INDEX));
+        try {
+            final IndexReader reader = IndexReader.open(directory, true);
+            try {
+                final Set<String> result = new HashSet<String>();
+                for (int i = 0; i < reader.maxDoc(); i++) {
+                    if (!reader.isDeleted(i)) {
+                        result.add(reader.document(i).get("contents"));
+                    }
+                }
+                return result;
+            } finally {
+                reader.close();
+            }
+        } finally {
+            directory.close();
+        }
+    }
+
+    @Test
+    public void deltaUpdatesIndexInPlace() throws Exception {
+        final List<String> newLines = new ArrayList<String>(lines);
+        newLines.remove(10);
+        newLines.remove(5);
+        newLines.set(0, newLines.get(0) + "(P)/");
+        newLines.add("テスト [てすと] /(n) test/");
+        final EdictDelta delta = EdictDelta.diff(toReader(lines), "20100101", toReader(newLines), "20100202");
+        assertEquals(3, delta.removed.size());
+        assertEquals(2, delta.added.size());
+        // write and read back, as the client does
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        delta.write(out);
+        final EdictDelta read = EdictDelta.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("20100101", read.fromVersion);
+        assertEquals("20100202", read.toVersion);
+        assertEquals(delta.removed, read.removed);
+        assertEquals(delta.added, read.added);
+        read.apply(new File(Main.LUCENE_INDEX));
+        assertEquals(new HashSet<String>(newLines), getContents());
+        // the word and suggestion indexes are rebuilt
+        final WordIndex words = WordIndex.open(new File(Main.LUCENE_INDEX));
+        assertTrue(words.contains("テスト"));
+        final SuggestionIndex suggestions = SuggestionIndex.open(new File(Main.LUCENE_INDEX));
+        assertNotNull(suggestions);
+        final EdictEntry common = DictTypeEnum.parseEdictEntry(newLines.get(0));
+        final LuceneSearch s = new LuceneSearch(DictTypeEnum.Edict, Main.LUCENE_INDEX, false);
+        try {
+            boolean found = false;
+            for (final DictEntry e : suggestions.suggest(s, Collections.singletonList(common.kanji != null ? common.kanji : common.reading), 100)) {
+                found |= e.toExternal().equals(common.toExternal());
+            }
+            assertTrue(found);
+        } finally {
+            s.close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.indexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import sk.baka.aedict.dict.DictEntry;
+import sk.baka.aedict.dict.DictTypeEnum;
+import sk.baka.aedict.dict.FederatedSearch;
+import sk.baka.aedict.dict.LuceneSearch;
+import sk.baka.aedict.dict.SearchQuery;
+import sk.baka.aedict.dict.SearcherRegistry;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link FederatedSearch} class.
+ * @author Martin Vysny
+ */
+public class FederatedSearchTest {
+
+    private static final File INDEX = new File(Main.LUCENE_INDEX);
+    private static final File COPY = new File("target/federated-copy");
+    private static final File MISSING = new File("target/federated-missing");
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void index() throws Exception {
+        Utils.index(null, "edict.gz", FileTypeEnum.Edict);
+        executor = FederatedSearch.newExecutor();
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        executor.shutdown();
+    }
+
+    @After
+    public void closeIndices() throws IOException {
+        SearcherRegistry.invalidate(INDEX);
+        SearcherRegistry.invalidate(COPY);
+        SearcherRegistry.closeUnused();
+        FileUtils.deleteDirectory(COPY);
+    }
+
+    private static List<SearchQuery> mother() {
+        return Collections.singletonList(SearchQuery.searchEnEdict("mother", false));
+    }
+
+    /**
+     * Searches the index alone.
+     */
+    private static List<DictEntry> single() throws IOException {
+        final LuceneSearch lucene = SearcherRegistry.acquire(DictTypeEnum.Edict, INDEX, true);
+        try {
+            return lucene.search(mother().get(0), 100);
+        } finally {
+            lucene.close();
+        }
+    }
+
+    /**
+     * Collects the listener events.
+     */
+    private static class Events implements FederatedSearch.Listener {
+
+        final List<File> results = new ArrayList<File>();
+        final List<File> failures = new ArrayList<File>();
+        int entries = 0;
+
+        public synchronized void onResults(File location, List<DictEntry> entries) {
+            results.add(location);
+            this.entries += entries.size();
+        }
+
+        public synchronized void onFailure(File location, IOException ex) {
+            failures.add(location);
+        }
+    }
+
+    @Test
+    public void duplicatesAreRemoved() throws Exception {
+        FileUtils.copyDirectory(INDEX, COPY);
+        final Events events = new Events();
+        final List<DictEntry> result = new FederatedSearch(DictTypeEnum.Edict, Arrays.asList(INDEX, COPY), executor, true).search(mother(), 100, events);
+        final List<DictEntry> expected = single();
+        assertFalse(expected.isEmpty());
+        assertEquals(DictEntry.toExternalList(expected), DictEntry.toExternalList(result));
+        assertEquals(2, events.results.size());
+        assertTrue(events.results.containsAll(Arrays.asList(INDEX, COPY)));
+        assertEquals(result.size(), events.entries);
+        assertTrue(events.failures.isEmpty());
+    }
+
+    @Test
+    public void entriesOfSingleDictionaryAreKept() throws Exception {
+        final List<DictEntry> result = new FederatedSearch(DictTypeEnum.Edict, Arrays.asList(INDEX), executor, true).search(mother(), 100, null);
+        assertEquals(DictEntry.toExternalList(single()), DictEntry.toExternalList(result));
+    }
+
+    @Test
+    public void failedDictionaryDoesNotFailTheSearch() throws Exception {
+        final Events events = new Events();
+        final List<DictEntry> result = new FederatedSearch(DictTypeEnum.Edict, Arrays.asList(MISSING, INDEX), executor, true).search(mother(), 100, events);
+        assertEquals(DictEntry.toExternalList(single()), DictEntry.toExternalList(result));
+        assertEquals(Arrays.asList(INDEX), events.results);
+        assertEquals(Arrays.asList(MISSING), events.failures);
+    }
+
+    @Test(expected = IOException.class)
+    public void failsIfAllDictionariesFail() throws Exception {
+        new FederatedSearch(DictTypeEnum.Edict, Arrays.asList(MISSING), executor, true).search(mother(), 100, null);
+    }
+
+    @Test
+    public void maxResultsIsPerDictionary() throws Exception {
+        final List<DictEntry> result = new FederatedSearch(DictTypeEnum.Edict, Arrays.asList(INDEX), executor, true).search(mother(), 2, null);
+        assertEquals(2, result.size());
+    }
+}
@@ -17,9 +17,17 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 package sk.baka.aedict.indexer;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import sk.baka.aedict.dict.DictEntry;
+import sk.baka.aedict.dict.DictTypeEnum;
+import sk.baka.aedict.dict.KanjidicEntry;
+import sk.baka.aedict.dict.LuceneSearch;
+import sk.baka.aedict.dict.SearchQuery;
 import static org.junit.Assert.*;
 
 /**
@@ -62,4 +70,24 @@ public class KanjidicTest extends AbstractLuceneSearchTest {
         assertEquals(1, s.size());
         assertEquals("2-3-11", s.get(0));
     }
+
+    @Test
+    public void lookupKanjisMatchesSingleSearches() throws Exception {
+        final LuceneSearch s = new LuceneSearch(DictTypeEnum.Kanjidic, Main.LUCENE_INDEX, false);
+        try {
+            final Map<Character, KanjidicEntry> result = s.lookupKanjis(Arrays.asList('読', '慕', 'x'), null, null);
+            assertEquals(2, result.size());
+            for (final char kanji : new char[]{'読', '慕'}) {
+                final List<DictEntry> single = s.search(SearchQuery.kanjiSearch(kanji, null, null), 1);
+                assertEquals(single.get(0).toExternal(), result.get(kanji).toExternal());
+            }
+            assertEquals(14, result.get('読').strokes);
+            assertEquals(2, s.lookupKanjis(Arrays.asList('読', '慕'), 14, null).size());
+            assertEquals(1, s.lookupKanjis(Arrays.asList('読', '一'), 1, null).size());
+            assertTrue(s.lookupKanjis(Arrays.asList('読', '慕'), 5, 1).isEmpty());
+            assertTrue(s.lookupKanjis(Collections.<Character>emptyList(), null, null).isEmpty());
+        } finally {
+            s.close();
+        }
+    }
 }
@@ -0,0 +1,297 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.indexer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import sk.baka.aedict.dict.DictEntry;
+import sk.baka.aedict.dict.DictTypeEnum;
+import sk.baka.aedict.dict.EdictEntry;
+import sk.baka.aedict.dict.LuceneSearch;
+import sk.baka.aedict.dict.MatcherEnum;
+import sk.baka.aedict.dict.SearchCursor;
+import sk.baka.aedict.dict.SearchQuery;
+import sk.baka.aedict.dict.SuggestionIndex;
+import sk.baka.aedict.dict.WordIndex;
+import sk.baka.aedict.kanji.KanjiUtils;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link LuceneSearch} class against the EDICT test index.
+ * @author Martin Vysny
+ */
+public class LuceneSearchTest {
+
+    @BeforeClass
+    public static void index() throws Exception {
+        Utils.index(null, "edict.gz", FileTypeEnum.Edict);
+    }
+
+    /**
+     * The original search algorithm: runs the {@link DictTypeEnum#getQueries(SearchQuery)}
+     * restricted to <code>common:t</code> and then to <code>common:f</code>, one after another.
+     */
+    private static List<DictEntry> twoPassSearch(final SearchQuery query, final int maxResults) throws Exception {
+        final Directory directory = FSDirectory.open(new File(Main.LUCENE_INDEX));
+        final IndexReader reader = IndexReader.open(directory, true);
+        final IndexSearcher searcher = new IndexSearcher(reader);
+        try {
+            query.validate();
+            final List<DictEntry> r = new ArrayList<DictEntry>();
+            final int maxLuceneResults = (query.matcher != MatcherEnum.Substring) && (query.dictType == DictTypeEnum.Edict) && (!query.isJapanese) ? 5000 : maxResults;
+            int resultsToFind = maxLuceneResults;
+            final List<Query> queries = new ArrayList<Query>();
+            for (final Query q : query.dictType.getQueries(query)) {
+                if (q == null) {
+                    continue;
+                }
+                for (final String common : new String[]{"t", "f"}) {
+                    final BooleanQuery bq = new BooleanQuery();
+                    bq.add(q, BooleanClause.Occur.MUST);
+                    bq.add(new TermQuery(new Term("common", common)), BooleanClause.Occur.MUST);
+                    queries.add(bq);
+                }
+            }
+            for (final Query q : queries) {
+                final TopDocs result = searcher.search(q, null, resultsToFind);
+                for (final ScoreDoc sd : result.scoreDocs) {
+                    final Document doc = searcher.doc(sd.doc);
+                    final DictEntry entry = query.dictType.tryGetEntry(doc, query);
+                    if (entry != null) {
+                        r.add(entry);
+                        if (r.size() >= maxResults) {
+                            break;
+                        }
+                    }
+                }
+                resultsToFind = maxLuceneResults - r.size();
+                if (resultsToFind <= 0) {
+                    break;
+                }
+            }
+            return r;
+        } finally {
+            searcher.close();
+            reader.close();
+            directory.close();
+        }
+    }
+
+    private static void assertSameAsTwoPass(final SearchQuery query, final int maxResults) throws Exception {
+        final String expected = DictEntry.toExternalList(twoPassSearch(query, maxResults));
+        final LuceneSearch s = new LuceneSearch(DictTypeEnum.Edict, Main.LUCENE_INDEX, false);
+        try {
+            assertEquals(expected, DictEntry.toExternalList(s.search(query, maxResults)));
+        } finally {
+            s.close();
+        }
+    }
+
+    @Test
+    public void singlePassListsCommonEntriesFirst() throws Exception {
+        for (final int maxResults : new int[]{10, 100}) {
+            assertSameAsTwoPass(SearchQuery.searchJpEdict("はは", MatcherEnum.Substring), maxResults);
+            assertSameAsTwoPass(SearchQuery.searchJpEdict("はは", MatcherEnum.StartsWith), maxResults);
+            assertSameAsTwoPass(SearchQuery.searchJpEdict("きょう", MatcherEnum.Exact), maxResults);
+            assertSameAsTwoPass(SearchQuery.searchEnEdict("mother", false), maxResults);
+        }
+    }
+
+    @Test
+    public void exactEnglishSearchFindsAllExactMatches() throws Exception {
+        for (final String word : new String[]{"mother", "today", "cat", "one's mother"}) {
+            final SearchQuery query = SearchQuery.searchEnEdict(word, true);
+            final List<String> expected = toSortedExternal(twoPassSearch(query, 1000));
+            final LuceneSearch s = new LuceneSearch(DictTypeEnum.Edict, Main.LUCENE_INDEX, false);
+            try {
+                assertEquals(expected, toSortedExternal(s.search(query, 1000)));
+            } finally {
+                s.close();
+            }
+        }
+    }
+
+    @Test
+    public void exactEnglishSearchKeepsRelevanceOrder() throws Exception {
+        for (final String word : new String[]{"mother", "today", "cat"}) {
+            assertSameAsTwoPass(SearchQuery.searchEnEdict(word, true), 1000);
+        }
+    }
+
+    @Test
+    public void cursorReturnsAllResultsPageByPage() throws Exception {
+        final SearchQuery query = SearchQuery.searchJpEdict("はは", MatcherEnum.Substring);
+        final LuceneSearch s = new LuceneSearch(DictTypeEnum.Edict, Main.LUCENE_INDEX, false);
+        try {
+            final String expected = DictEntry.toExternalList(s.search(query, 1000));
+            final List<DictEntry> paged = new ArrayList<DictEntry>();
+            SearchCursor cursor = s.openCursor(query);
+            while (!cursor.isExhausted()) {
+                final List<DictEntry> page = cursor.next(7);
+                assertTrue(page.size() == 7 || cursor.isExhausted());
+                paged.addAll(page);
+                // continue with a new cursor, as the ResultActivity does
+                cursor = s.openCursor(query, cursor.getPosition());
+            }
+            assertEquals(expected, DictEntry.toExternalList(paged));
+        } finally {
+            s.close();
+        }
+    }
+
+    private static List<String> toSortedExternal(final List<DictEntry> entries) {
+        final List<String> result = new ArrayList<String>();
+        for (final DictEntry e : entries) {
+            result.add(e.toExternal());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    @Test
+    public void commonEntriesComeFirst() throws Exception {
+        final LuceneSearch s = new LuceneSearch(DictTypeEnum.Edict, Main.LUCENE_INDEX, false);
+        try {
+            final List<DictEntry> result = s.search(SearchQuery.searchEnEdict("mother", false));
+            assertFalse(result.isEmpty());
+            boolean commonSection = true;
+            for (final DictEntry e : result) {
+                final boolean common = Boolean.TRUE.equals(e.isCommon);
+                if (!commonSection) {
+                    assertFalse(e.toString(), common);
+                }
+                if (!common) {
+                    commonSection = false;
+                }
+            }
+        } finally {
+            s.close();
+        }
+    }
+
+    @Test
+    public void wordIndexFindsLongestWord() throws Exception {
+        final WordIndex words = WordIndex.open(new File(Main.LUCENE_INDEX));
+        assertNotNull(words);
+        assertTrue(words.contains("東京"));
+        assertTrue(words.contains("とうきょう"));
+        assertFalse(words.contains("東京都"));
+        assertEquals(2, words.longestMatch("東京都に", 0, 10));
+        assertEquals(1, words.longestMatch("東京都に", 2, 10));
+        assertEquals(1, words.longestMatch("東京都に", 0, 1));
+        assertEquals(0, words.longestMatch("ｘ", 0, 10));
+    }
+
+    private static boolean containsKanji(final List<DictEntry> entries, final String kanji) {
+        for (final DictEntry e : entries) {
+            if (kanji.equals(e.kanji)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void suggestionIndexFindsCommonEntriesByPrefix() throws Exception {
+        final SuggestionIndex index = SuggestionIndex.open(new File(Main.LUCENE_INDEX));
+        assertNotNull(index);
+        final LuceneSearch s = new LuceneSearch(DictTypeEnum.Edict, Main.LUCENE_INDEX, false);
+        try {
+            assertTrue(containsKanji(index.suggest(s, Arrays.asList("とうきょ"), 20), "東京"));
+            assertTrue(containsKanji(index.suggest(s, Arrays.asList("xyz", "東京"), 20), "東京"));
+            final List<DictEntry> tokyo = index.suggest(s, Arrays.asList("tokyo"), 20);
+            assertTrue(containsKanji(tokyo, "東京"));
+            for (final DictEntry e : tokyo) {
+                assertTrue(e.toString(), Boolean.TRUE.equals(e.isCommon));
+            }
+            assertEquals(3, index.suggest(s, Arrays.asList("a"), 3).size());
+            assertTrue(index.suggest(s, Arrays.asList("qqqqq", ""), 20).isEmpty());
+        } finally {
+            s.close();
+        }
+    }
+
+    /**
+     * Computes the best (lowest) weight of the common entries having a key
+     * starting with given prefix, by examining all entries.
+     */
+    private static int bestWeight(final String prefix) throws Exception {
+        final Directory directory = FSDirectory.open(new File(Main.LUCENE_INDEX));
+        final IndexReader reader = IndexReader.open(directory, true);
+        try {
+            int result = Integer.MAX_VALUE;
+            for (int i = 0; i < reader.maxDoc(); i++) {
+                if (reader.isDeleted(i)) {
+                    continue;
+                }
+                final EdictEntry entry = DictTypeEnum.parseEdictEntry(reader.document(i).get("contents"));
+                if (!Boolean.TRUE.equals(entry.isCommon)) {
+                    continue;
+                }
+                final List<String> keys = new ArrayList<String>();
+                keys.add(entry.kanji == null ? "" : entry.kanji);
+                keys.add(entry.reading);
+                for (final String gloss : entry.english.toLowerCase().replaceAll("\\([^)]*\\)", "").split("/")) {
+                    keys.add(gloss.trim().replaceAll("\\s+", " "));
+                }
+                for (final String key : keys) {
+                    if (key.startsWith(prefix)) {
+                        result = Math.min(result, Math.min(Short.MAX_VALUE, KanjiUtils.getCommonality(entry.getJapanese())));
+                    }
+                }
+            }
+            return result;
+        } finally {
+            reader.close();
+            directory.close();
+        }
+    }
+
+    @Test
+    public void suggestionsOfShortPrefixesAreTheMostCommonEntries() throws Exception {
+        final SuggestionIndex index = SuggestionIndex.open(new File(Main.LUCENE_INDEX));
+        assertNotNull(index);
+        final LuceneSearch s = new LuceneSearch(DictTypeEnum.Edict, Main.LUCENE_INDEX, false);
+        try {
+            for (final String prefix : new String[]{"a", "c", "s", "t", "た"}) {
+                final List<DictEntry> suggestions = index.suggest(s, Arrays.asList(prefix), 1);
+                assertEquals(prefix, 1, suggestions.size());
+                assertEquals(prefix, bestWeight(prefix), Math.min(Short.MAX_VALUE, KanjiUtils.getCommonality(suggestions.get(0).getJapanese())));
+            }
+        } finally {
+            s.close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.indexer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link ParallelIndexer}.
+ * @author Martin Vysny
+ */
+public class ParallelIndexerTest {
+
+    private static List<String> getContents() throws Exception {
+        final Directory directory = FSDirectory.open(new File(Main.LUCENE_INDEX));
+        try {
+            final IndexReader reader = IndexReader.open(directory, true);
+            try {
+                final List<String> result = new ArrayList<String>(reader.maxDoc());
+                for (int i = 0; i < reader.maxDoc(); i++) {
+                    result.add(reader.document(i).get("contents"));
+                }
+                return result;
+            } finally {
+                reader.close();
+            }
+        } finally {
+            directory.close();
+        }
+    }
+
+    @Test
+    public void parallelIndexIsIdenticalToSingleThreadedIndex() throws Exception {
+        Utils.index(null, "edict.gz", FileTypeEnum.Edict, "-j", "1");
+        final List<String> expected = getContents();
+        assertFalse(expected.isEmpty());
+        Utils.index(null, "edict.gz", FileTypeEnum.Edict, "-j", "4");
+        assertEquals(expected, getContents());
+    }
+}
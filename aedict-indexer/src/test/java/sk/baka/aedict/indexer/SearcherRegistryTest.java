@@ -0,0 +1,156 @@
+/**
+ *     Aedict - an EDICT browser for Android
+Copyright (C) 2009 Martin Vysny
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.baka.aedict.indexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import sk.baka.aedict.dict.DictEntry;
+import sk.baka.aedict.dict.DictTypeEnum;
+import sk.baka.aedict.dict.EdictDelta;
+import sk.baka.aedict.dict.LuceneSearch;
+import sk.baka.aedict.dict.MatcherEnum;
+import sk.baka.aedict.dict.SearchQuery;
+import sk.baka.aedict.dict.SearcherRegistry;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link SearcherRegistry} class.
+ * @author Martin Vysny
+ */
+public class SearcherRegistryTest {
+
+    private static final File INDEX = new File(Main.LUCENE_INDEX);
+    private static final File TARGET = new File("target/registry-install");
+    private static final File STAGING = new File("target/registry-install.staging");
+
+    @BeforeClass
+    public static void index() throws Exception {
+        Utils.index(null, "edict.gz", FileTypeEnum.Edict);
+    }
+
+    @After
+    public void closeIndices() throws IOException {
+        SearcherRegistry.invalidate(INDEX);
+        SearcherRegistry.invalidate(TARGET);
+        SearcherRegistry.closeUnused();
+        FileUtils.deleteDirectory(TARGET);
+        FileUtils.deleteDirectory(STAGING);
+    }
+
+    private static SearchQuery mother() {
+        return SearchQuery.searchEnEdict("mother", false);
+    }
+
+    @Test
+    public void pooledSearchReturnsSameResults() throws Exception {
+        final LuceneSearch own = new LuceneSearch(DictTypeEnum.Edict, Main.LUCENE_INDEX, true);
+        final String expected;
+        try {
+            expected = DictEntry.toExternalList(own.search(mother()));
+        } finally {
+            own.close();
+        }
+        final LuceneSearch s1 = SearcherRegistry.acquire(DictTypeEnum.Edict, INDEX, true);
+        final LuceneSearch s2 = SearcherRegistry.acquire(DictTypeEnum.Edict, INDEX, true);
+        try {
+            assertEquals(expected, DictEntry.toExternalList(s1.search(mother())));
+            assertEquals(expected, DictEntry.toExternalList(s2.search(mother())));
+        } finally {
+            s1.close();
+        }
+        // s2 must still be usable after s1 has been closed
+        assertEquals(expected, DictEntry.toExternalList(s2.search(mother())));
+        s2.close();
+        // closing twice must not release the index twice
+        s2.close();
+    }
+
+    @Test
+    public void searchSurvivesInvalidation() throws Exception {
+        final LuceneSearch s1 = SearcherRegistry.acquire(DictTypeEnum.Edict, INDEX, true);
+        try {
+            SearcherRegistry.invalidate(INDEX);
+            assertFalse(s1.search(SearchQuery.searchJpEdict("はは", MatcherEnum.Substring)).isEmpty());
+            final LuceneSearch s2 = SearcherRegistry.acquire(DictTypeEnum.Edict, INDEX, true);
+            try {
+                assertEquals(DictEntry.toExternalList(s1.search(mother())), DictEntry.toExternalList(s2.search(mother())));
+            } finally {
+                s2.close();
+            }
+        } finally {
+            s1.close();
+        }
+    }
+
+    @Test
+    public void installSwapsIndexUnderOpenedSearcher() throws Exception {
+        FileUtils.copyDirectory(INDEX, TARGET);
+        FileUtils.copyDirectory(INDEX, STAGING);
+        // the new index contains an additional entry
+        final EdictDelta delta = new EdictDelta("20100101", "20100202");
+        delta.added.add("ズィズックス [ずぃずっくす] /(n) zzyzx/");
+        delta.apply(STAGING);
+        final SearchQuery zzyzx = SearchQuery.searchEnEdict("zzyzx", false);
+        final LuceneSearch s1 = SearcherRegistry.acquire(DictTypeEnum.Edict, TARGET, true);
+        try {
+            final String expected = DictEntry.toExternalList(s1.search(mother()));
+            assertTrue(s1.search(zzyzx).isEmpty());
+            SearcherRegistry.install(STAGING, TARGET);
+            assertFalse(STAGING.exists());
+            assertFalse(SearcherRegistry.getBackupDir(TARGET).exists());
+            // the opened searcher keeps using the old index files
+            assertEquals(expected, DictEntry.toExternalList(s1.search(mother())));
+            assertTrue(s1.search(zzyzx).isEmpty());
+            final LuceneSearch s2 = SearcherRegistry.acquire(DictTypeEnum.Edict, TARGET, true);
+            try {
+                final List<DictEntry> result = s2.search(zzyzx);
+                assertEquals(1, result.size());
+                assertEquals("ズィズックス", result.get(0).kanji);
+                assertEquals(expected, DictEntry.toExternalList(s2.search(mother())));
+            } finally {
+                s2.close();
+            }
+        } finally {
+            s1.close();
+        }
+    }
+
+    @Test
+    public void corruptedIndexIsNotInstalled() throws Exception {
+        FileUtils.copyDirectory(INDEX, TARGET);
+        STAGING.mkdirs();
+        FileUtils.writeStringToFile(new File(STAGING, "segments.gen"), "garbage");
+        try {
+            SearcherRegistry.install(STAGING, TARGET);
+            fail("Corrupted index must not be installed");
+        } catch (IOException ex) {
+            // okay
+        }
+        final LuceneSearch s = SearcherRegistry.acquire(DictTypeEnum.Edict, TARGET, true);
+        try {
+            assertFalse(s.search(mother()).isEmpty());
+        } finally {
+            s.close();
+        }
+    }
+}
@@ -39,12 +39,13 @@ public class Utils {
         return edictGz;
     }
 
-    public static void index(final String sw, final String res, final FileTypeEnum fileType) throws Exception {
+    public static void index(final String sw, final String res, final FileTypeEnum fileType, final String... options) throws Exception {
         final URL dictGz = Utils.getResource(res);
         final List<String> params = new ArrayList<String>(Arrays.asList("-u", dictGz.toString(), "-g"));
         if (sw != null) {
             params.add(sw);
         }
+        params.addAll(Arrays.asList(options));
         new Main(params.toArray(new String[0])).run();
         // check that the target file exists
         assertTrue(new File(fileType.getTargetFileName(null)).exists());